@@ -0,0 +1,96 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a pool of 4 threads fed by 8 submitting threads, bare, as a
+ * {@link MonitoredThreadPoolExecutor}, and monitored while a {@link PoolSampler} samples it every
+ * 100ms. Each operation is a trivial task so the numbers are the overhead of the executor and its
+ * instrumentation, not of any work.
+ *
+ * @author Bill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@Threads(8)
+public class ExecutorBenchmark {
+
+    private static final int   BATCH = 100;
+
+    @Param({
+        "bare", "monitored", "sampled"
+    })
+    public String              mode;
+
+    private ThreadPoolExecutor mExecutor;
+    private Thread             mSampling;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mExecutor = "bare".equals(mode)
+            ? new ThreadPoolExecutor(4, 4, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>())
+            : new MonitoredThreadPoolExecutor(4,
+                    4,
+                    0,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    Executors.defaultThreadFactory());
+        mExecutor.prestartAllCoreThreads();
+        if ("sampled".equals(mode)) {
+            final PoolSampler sampler = new PoolSampler();
+            sampler.register("Pool", mExecutor);
+            mSampling = sampler.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (mSampling != null) {
+            mSampling.interrupt();
+            mSampling.join();
+        }
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Submit a batch and wait for it, so the queue can't grow without bound while the submitting
+     * threads contend on it.
+     *
+     * @throws InterruptedException
+     *             interrupted
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void submit() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            mExecutor.execute(done::countDown);
+        }
+        done.await();
+    }
+}
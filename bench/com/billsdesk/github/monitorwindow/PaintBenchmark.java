@@ -0,0 +1,76 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to paint a {@link JStatusComponent} of three bars with thresholds into an offscreen image,
+ * vertical and horizontal, as the paint allocation test of JStatusComponentTest does. Runs
+ * headless, so it measures the UI delegate rather than the screen.
+ *
+ * @author Bill
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--enable-preview", "-Djava.awt.headless=true"
+})
+public class PaintBenchmark {
+
+    @Param({
+        "true", "false"
+    })
+    public boolean           vertical;
+
+    private BufferedImage    mImage;
+    private Graphics2D       mGraphics;
+    private JStatusComponent mStatus;
+    private int              mValue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mImage = new BufferedImage(120, 200, BufferedImage.TYPE_INT_ARGB);
+        mGraphics = mImage.createGraphics();
+        mStatus = new JStatusComponent(vertical, "Pool");
+        mStatus.getThreshold().alert().setValue(40);
+        mStatus.getThreshold().warning().setValue(30);
+        mStatus.setGridLines(20);
+        mStatus.addValue(10);
+        mStatus.addValue(35);
+        mStatus.addValue(50);
+        mStatus.setSize(mImage.getWidth(), mImage.getHeight());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mGraphics.dispose();
+    }
+
+    /**
+     * Paint with a value changed as each sample would, so no cached layout hides the cost.
+     */
+    @Benchmark
+    public void paint() {
+        mValue = (mValue + 1) % 50;
+        mStatus.setValueAt(mValue, 1);
+        mStatus.getUI().paint(mGraphics, mStatus);
+    }
+}
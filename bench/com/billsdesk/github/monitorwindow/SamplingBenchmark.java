@@ -0,0 +1,93 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one pass of the {@link PoolSampler} over N pools of M idle threads. A plain
+ * ThreadPoolExecutor is read through its getters, getActiveCount and getTaskCount take the main
+ * lock and walk the workers, a {@link MonitoredThreadPoolExecutor} through its striped counters.
+ * Both use the default thread factory so neither reports the CPU time of its threads.
+ *
+ * @author Bill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class SamplingBenchmark {
+
+    @Param({
+        "1", "10", "100"
+    })
+    public int                             pools;
+
+    @Param({
+        "4", "64"
+    })
+    public int                             threads;
+
+    @Param({
+        "plain", "monitored"
+    })
+    public String                          executor;
+
+    private final List<ThreadPoolExecutor> mExecutors = new ArrayList<>();
+    private PoolSampler                    mSampler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mSampler = new PoolSampler();
+        for (int i = 0; i < pools; i++) {
+            final ThreadPoolExecutor pool = "plain".equals(executor)
+                ? new ThreadPoolExecutor(threads,
+                        threads,
+                        0,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>())
+                : new MonitoredThreadPoolExecutor(threads,
+                        threads,
+                        0,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        Executors.defaultThreadFactory());
+            pool.prestartAllCoreThreads();
+            mSampler.register("Pool" + i, pool);
+            mExecutors.add(pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        for (final ThreadPoolExecutor pool : mExecutors) {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        mExecutors.clear();
+    }
+
+    @Benchmark
+    public List<PoolSnapshot> sample() {
+        return mSampler.sample();
+    }
+}
@@ -0,0 +1,108 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Streams the flight recorder events of threads that are pinned or blocked and adds their
+ * durations to the {@link CountingThreadFactory} whose threads they are, matched by the prefix of
+ * the thread name. Watches jdk.VirtualThreadPinned on JDK 21 and later, and jdk.JavaMonitorEnter
+ * and jdk.ThreadPark, e.g. a task waiting on a semaphore. Only waits longer than the threshold are
+ * recorded, the events arrive about once a second.
+ *
+ * <pre>
+ * final BlockingEvents blocking = new BlockingEvents(Duration.ofMillis(1));
+ * blocking.watch("Requests-", threads);
+ * blocking.start();
+ * </pre>
+ *
+ * @author Bill
+ */
+public class BlockingEvents
+    implements
+        Closeable {
+
+    private static final String                      PINNED   = "jdk.VirtualThreadPinned";
+    private static final String                      MONITOR  = "jdk.JavaMonitorEnter";
+    private static final String                      PARK     = "jdk.ThreadPark";
+
+    private final RecordingStream                    mStream  = new RecordingStream();
+    private final Map<String, CountingThreadFactory> mWatched = new ConcurrentHashMap<>();
+
+    /**
+     * Create the stream, {@link #start()} it after watching the threads.
+     *
+     * @param threshold
+     *            shortest pinned or blocked time recorded
+     */
+    public BlockingEvents(final Duration threshold) {
+        // an event the JDK does not know is ignored
+        mStream.enable(PINNED).withThreshold(threshold);
+        mStream.enable(MONITOR).withThreshold(threshold);
+        mStream.enable(PARK).withThreshold(threshold);
+        mStream.onEvent(PINNED, event -> add(event, true));
+        mStream.onEvent(MONITOR, event -> add(event, false));
+        mStream.onEvent(PARK, event -> add(event, false));
+    }
+
+    /**
+     * Count the blocking of threads.
+     *
+     * @param prefix
+     *            prefix of the names of the threads
+     * @param threads
+     *            factory the time is added to
+     * @return this
+     */
+    public BlockingEvents watch(final String prefix, final CountingThreadFactory threads) {
+        mWatched.put(prefix, threads);
+        return this;
+    }
+
+    /**
+     * Stop counting the blocking of threads.
+     *
+     * @param prefix
+     *            prefix passed to {@link #watch(String, CountingThreadFactory)}
+     */
+    public void unwatch(final String prefix) {
+        mWatched.remove(prefix);
+    }
+
+    /**
+     * Start streaming on a thread of the flight recorder.
+     */
+    public void start() {
+        mStream.startAsync();
+    }
+
+    @Override
+    public void close() {
+        mStream.close();
+    }
+
+    private void add(final RecordedEvent event, final boolean pinned) {
+        final RecordedThread thread = event.getThread();
+        final String name = thread == null ? null : thread.getJavaName();
+        if (name == null) {
+            return;
+        }
+        for (final Map.Entry<String, CountingThreadFactory> watched : mWatched.entrySet()) {
+            if (name.startsWith(watched.getKey())) {
+                final long nanos = event.getDuration().toNanos();
+                if (pinned) {
+                    watched.getValue().addPinned(nanos);
+                } else {
+                    watched.getValue().addBlocked(nanos);
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ThreadFactory which counts the threads it creates while they run, in the spirit of
+ * {@link MonitorWindow.NamedThreadFactory} but wrapping any factory, including a virtual thread
+ * factory. For an executor that starts a thread per task the counts are the tasks: live threads
+ * are the tasks in flight and the lifetime of a thread is the run time of its task. None of the
+ * counters take a lock.
+ * <p>
+ * Time the threads spent pinned or blocked is not visible to the factory, it is added by
+ * {@link BlockingEvents} from the flight recorder where the JDK records it.
+ *
+ * @author Bill
+ */
+public class CountingThreadFactory
+    implements
+        ThreadFactory {
+
+    private final ThreadFactory mFactory;
+    private final Counters      mCounters;
+
+    /**
+     * Count the threads of a factory.
+     *
+     * @param factory
+     *            factory creating the threads
+     */
+    public CountingThreadFactory(final ThreadFactory factory) {
+        this(factory, new Counters());
+    }
+
+    private CountingThreadFactory(final ThreadFactory factory, final Counters counters) {
+        mFactory = Objects.requireNonNull(factory);
+        mCounters = counters;
+    }
+
+    /**
+     * @param factory
+     *            factory creating the threads from now on
+     * @return factory wrapping another factory into the same counters
+     */
+    CountingThreadFactory share(final ThreadFactory factory) {
+        return new CountingThreadFactory(factory, mCounters);
+    }
+
+    /**
+     * @return the factory wrapped, e.g. a NamedThreadFactory naming the threads
+     */
+    public ThreadFactory getFactory() {
+        return mFactory;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final Counters counters = mCounters;
+        return mFactory.newThread(() -> {
+            final long start = System.nanoTime();
+            counters.mLive.incrementAndGet();
+            counters.mStarted.increment();
+            try {
+                runnable.run();
+            } finally {
+                counters.mLive.decrementAndGet();
+                counters.mCompleted.increment();
+                counters.mLifetime.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * @return threads started and not yet finished
+     */
+    public int getLive() {
+        return mCounters.mLive.get();
+    }
+
+    /**
+     * @return threads which started running
+     */
+    public long getStarted() {
+        return mCounters.mStarted.sum();
+    }
+
+    /**
+     * @return threads which finished running
+     */
+    public long getCompleted() {
+        return mCounters.mCompleted.sum();
+    }
+
+    /**
+     * @return nanoseconds each finished thread ran
+     */
+    public LatencyHistogram getLifetime() {
+        return mCounters.mLifetime;
+    }
+
+    /**
+     * @return nanoseconds the threads were pinned to their carrier, as reported by
+     *         {@link BlockingEvents}
+     */
+    public long getPinned() {
+        return mCounters.mPinned.sum();
+    }
+
+    /**
+     * @return nanoseconds the threads were blocked on a monitor or parked, as reported by
+     *         {@link BlockingEvents}
+     */
+    public long getBlocked() {
+        return mCounters.mBlocked.sum();
+    }
+
+    /**
+     * @param nanos
+     *            time one of the threads was pinned
+     */
+    public void addPinned(final long nanos) {
+        mCounters.mPinned.add(nanos);
+    }
+
+    /**
+     * @param nanos
+     *            time one of the threads was blocked
+     */
+    public void addBlocked(final long nanos) {
+        mCounters.mBlocked.add(nanos);
+    }
+
+    /**
+     * Shared by every factory wrapped by {@link CountingThreadFactory#share(ThreadFactory)}.
+     */
+    private static final class Counters {
+
+        private final AtomicInteger    mLive      = new AtomicInteger();
+        private final LongAdder        mStarted   = new LongAdder();
+        private final LongAdder        mCompleted = new LongAdder();
+        private final LongAdder        mPinned    = new LongAdder();
+        private final LongAdder        mBlocked   = new LongAdder();
+        private final LatencyHistogram mLifetime  = new LatencyHistogram();
+    }
+}
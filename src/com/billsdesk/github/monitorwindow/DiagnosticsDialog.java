@@ -0,0 +1,65 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.awt.Font;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.annotation.Nullable;
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+
+/**
+ * Window showing the {@link MonitorDiagnostics} of a sampler as text, refreshed once a second while
+ * it is open.
+ *
+ * @author Bill
+ */
+final class DiagnosticsDialog
+    extends
+        JDialog {
+
+    private static final long        serialVersionUID = 1L;
+
+    private static final int         REFRESH          = 1000;
+
+    private final MonitorDiagnostics mDiagnostics;
+    private final JTextArea          mText            = new JTextArea(24, 80);
+    private final Timer              mTimer;
+
+    /**
+     * Create the window, {@link #setVisible(boolean)} shows it.
+     *
+     * @param owner
+     *            window of the monitors or null
+     * @param diagnostics
+     *            diagnostics of the sampler
+     */
+    DiagnosticsDialog(@Nullable final Window owner, final MonitorDiagnostics diagnostics) {
+        super(owner, "Monitor - Diagnostics");
+        mDiagnostics = diagnostics;
+        mText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        mText.setEditable(false);
+        getContentPane().add(new JScrollPane(mText));
+        refresh();
+        mTimer = new Timer(REFRESH, event -> refresh());
+        addWindowListener(new WindowAdapter() {
+
+            @Override
+            public void windowClosed(final WindowEvent event) {
+                mTimer.stop();
+            }
+        });
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        pack();
+        mTimer.start();
+    }
+
+    private void refresh() {
+        mText.setText(mDiagnostics.format());
+        mText.setCaretPosition(0);
+    }
+}
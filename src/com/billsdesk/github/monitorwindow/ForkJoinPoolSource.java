@@ -0,0 +1,66 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Source of a ForkJoinPool, including {@link ForkJoinPool#commonPool()} which runs parallel streams
+ * and the default async stages of CompletableFuture. The bars are the parallelism, the queued
+ * submissions plus tasks, and the threads active. A ForkJoinPool does not count tasks, the totals
+ * are 0. Adds:
+ * <ul>
+ * <li>{@value #STEALS}: tasks stolen from another worker's queue, a total</li>
+ * <li>{@value #SUBMISSIONS}: tasks submitted from outside the pool not yet started</li>
+ * <li>{@value #TASKS}: tasks forked by workers not yet started</li>
+ * <li>{@value #RUNNING}: active threads not blocked in a join or a managed block</li>
+ * </ul>
+ * The counts are estimates the pool computes without locking by walking its work queues.
+ *
+ * @author Bill
+ */
+public class ForkJoinPoolSource
+    implements
+        PoolSource {
+
+    public static final String STEALS      = "steals";
+    public static final String SUBMISSIONS = "submissions";
+    public static final String TASKS       = "tasks";
+    public static final String RUNNING     = "running";
+
+    private final ForkJoinPool mPool;
+
+    public ForkJoinPoolSource(final ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    @Override
+    public ForkJoinPool getExecutor() {
+        return mPool;
+    }
+
+    @Override
+    public PoolSnapshot sample(final int id, final String name) {
+        final int submissions = mPool.getQueuedSubmissionCount();
+        final long tasks = mPool.getQueuedTaskCount();
+        final Map<String, Long> extras = new LinkedHashMap<>(8);
+        extras.put(STEALS, mPool.getStealCount());
+        extras.put(SUBMISSIONS, (long) submissions);
+        extras.put(TASKS, tasks);
+        extras.put(RUNNING, (long) mPool.getRunningThreadCount());
+        return new PoolSnapshot(id,
+                name,
+                System.currentTimeMillis(),
+                System.nanoTime(),
+                mPool.getParallelism(),
+                mPool.getPoolSize(),
+                (int) Math.min(Integer.MAX_VALUE, submissions + tasks),
+                mPool.getActiveThreadCount(),
+                0,
+                0,
+                mPool.isShutdown(),
+                null,
+                null,
+                extras);
+    }
+}
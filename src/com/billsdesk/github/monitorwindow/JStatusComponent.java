@@ -1,17 +1,20 @@
 package com.billsdesk.github.monitorwindow;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import javax.swing.JButton;
 import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
 import javax.swing.plaf.basic.BasicButtonUI;
 
 /**
@@ -29,7 +32,16 @@ public class JStatusComponent
     extends
         JButton {
 
-    private static final long  serialVersionUID = 1L;
+    private static final long     serialVersionUID = 1L;
+
+    /** Value labels for small integers, painting a bar does not create a string. */
+    private static final String[] LABELS           = new String[1024];
+
+    static {
+        for (int i = 0; i < LABELS.length; i++) {
+            LABELS[i] = Integer.toString(i);
+        }
+    }
 
     private boolean            mVertical        = false;
     private double             mMaxAxisValue;
@@ -38,7 +50,11 @@ public class JStatusComponent
     private Color              mBarColor;
     private ThresholdData      mThreshold;
     private int                mGridLines       = -1;
-    private final List<Double> mBars            = new ArrayList<Double>();
+    private double[]           mBars            = new double[4];
+    private int                mBarCount;
+    private SampleRing[]       mHistory         = new SampleRing[0];
+    private boolean            mHistoryVisible  = false;
+    private int                mLayerVersion;      // no initializer, changed during super()
 
     /**
      * Create component with title.
@@ -57,12 +73,46 @@ public class JStatusComponent
         setBarColor(Color.DARK_GRAY);
         setFont(new Font("SansSerif", Font.BOLD, 12));
         setOpaque(false);
-        setUI(mVertical ? new StatusVerticalUI() : new StatusHorizontalUI());
+        updateUI();
+        // the tooltip is built by getToolTipText() only when it is shown
+        ToolTipManager.sharedInstance().registerComponent(this);
     }
 
     @Override
     public void updateUI() {
-        setUI(mVertical ? new StatusVerticalUI() : new StatusHorizontalUI());
+        if (mHistoryVisible) {
+            setUI(new StatusSparklineUI());
+        } else {
+            setUI(mVertical ? new StatusVerticalUI() : new StatusHorizontalUI());
+        }
+    }
+
+    /**
+     * Set the series drawn when the history is visible, one line per ring and one value per pixel.
+     * Rings of a {@link PoolHistory} with a step have a uniform time axis.
+     *
+     * @param history
+     *            recent samples, typically one ring per bar
+     */
+    public void setHistory(final SampleRing... history) {
+        mHistory = history.clone();
+        repaint();
+    }
+
+    /**
+     * @param value
+     *            true then draw the history as a sparkline instead of the bars
+     */
+    public void setHistoryVisible(final boolean value) {
+        if (mHistoryVisible != value) {
+            mHistoryVisible = value;
+            updateUI();
+            repaint();
+        }
+    }
+
+    public boolean isHistoryVisible() {
+        return mHistoryVisible;
     }
 
     /**
@@ -73,6 +123,9 @@ public class JStatusComponent
      *            value
      */
     public void setAxisMax(final double value) {
+        if (mMaxAxisValue != value) {
+            invalidateLayers();
+        }
         mMaxAxisValue = value;
         adjustScale((int) value);
     }
@@ -97,7 +150,7 @@ public class JStatusComponent
      * @return number of bars in component.
      */
     public int getBarCount() {
-        return mBars.size();
+        return mBarCount;
     }
 
     /**
@@ -110,11 +163,14 @@ public class JStatusComponent
      *             invalid index
      */
     public double getValueAt(final int index) throws IndexOutOfBoundsException {
-        return mBars.get(index);
+        if (index >= mBarCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return mBars[index];
     }
 
     /**
-     * Set the value for a bar. Bar must exist.
+     * Set the value for a bar. Bar must exist. Nothing is repainted if the value is unchanged.
      *
      * @param value
      *            value
@@ -124,15 +180,17 @@ public class JStatusComponent
      *             invalid index
      */
     public void setValueAt(final double value, final int index) throws IndexOutOfBoundsException {
-        if (index < mBars.size()) {
-            mBars.set(index, value);
+        if (index < mBarCount) {
+            if (mBars[index] == value) {
+                return;
+            }
+            mBars[index] = value;
             if (value > 0) {
                 adjustScale((int) value);
             }
-            setToolTipText(toString());
             repaint();
         } else {
-            throw new IndexOutOfBoundsException();
+            throw new IndexOutOfBoundsException(index);
         }
     }
 
@@ -143,16 +201,20 @@ public class JStatusComponent
      *            value
      */
     public void addValue(final double value) {
-        mBars.add(value);
+        if (mBarCount == mBars.length) {
+            mBars = Arrays.copyOf(mBars, mBarCount * 2);
+        }
+        mBars[mBarCount++] = value;
+        invalidateLayers();
         if (value > 0) {
             adjustScale((int) value);
         }
-        setToolTipText(toString());
         repaint();
     }
 
     public void setThreshold(final ThresholdData threshold) {
         mThreshold = threshold;
+        invalidateLayers();
         repaint();
     }
 
@@ -168,6 +230,7 @@ public class JStatusComponent
      */
     public void setGridLines(final int value) {
         mGridLines = value;
+        invalidateLayers();
     }
 
     /**
@@ -178,6 +241,7 @@ public class JStatusComponent
      */
     public final void setBarBackground(final Color color) {
         mBarBackground = color;
+        invalidateLayers();
         repaint();
     }
 
@@ -192,6 +256,39 @@ public class JStatusComponent
         repaint();
     }
 
+    @Override
+    public void setText(final String text) {
+        super.setText(text);
+        invalidateLayers();
+    }
+
+    @Override
+    public void setFont(final Font font) {
+        super.setFont(font);
+        invalidateLayers();
+    }
+
+    @Override
+    public void setBackground(final Color color) {
+        super.setBackground(color);
+        invalidateLayers();
+    }
+
+    @Override
+    public void setForeground(final Color color) {
+        super.setForeground(color);
+        invalidateLayers();
+    }
+
+    /**
+     * Redraw the cached background and threshold layers on the next paint. Changes to the values of
+     * the {@link ThresholdData} are detected without this.
+     */
+    protected void invalidateLayers() {
+        mLayerVersion++;
+        repaint();
+    }
+
     protected void adjustScale(final int value) {
         final int max = (int) getAxisMax();
         if (mAdjustable && value > max) {
@@ -203,155 +300,283 @@ public class JStatusComponent
         return ((value / 100) + (value % 100 == 0 ? 0 : 1)) * 100;
     }
 
+    /**
+     * @return the title and values, built only when the tooltip is shown
+     */
+    @Override
+    public String getToolTipText() {
+        return toString();
+    }
+
+    /**
+     * Label for a bar value.
+     *
+     * @param value
+     *            value
+     * @return the integer part, cached for small values
+     */
+    static String label(final double value) {
+        final int number = (int) value;
+        return number >= 0 && number < LABELS.length ? LABELS[number] : Integer.toString(number);
+    }
+
     @Override
     public String toString() {
-        return String.format("%s %s",
-                             getText(),
-                             mBars.stream()
-                                  .map((number) -> String.format("%,.2f", number))
-                                  .collect(Collectors.joining(", ")));
+        final StringBuilder result = new StringBuilder(getText());
+        result.append(' ');
+        for (int i = 0; i < mBarCount; i++) {
+            if (i != 0) {
+                result.append(", ");
+            }
+            result.append(String.format("%,.2f", mBars[i]));
+        }
+        return result.toString();
     }
 
-    private static class StatusVerticalUI
+    /**
+     * Base of the delegates. The background, bar area, grid lines and title are drawn below the
+     * bars and the threshold lines above them. Both layers only change on resize or
+     * reconfiguration so they are cached in compatible images, each paint draws the two images and
+     * the bars in between. The rectangles are reused and no Graphics is created so a steady-state
+     * paint creates no garbage.
+     */
+    private abstract static class LayeredStatusUI
         extends
             BasicButtonUI {
 
+        protected final Rectangle mTextRect = new Rectangle();
+        protected final Rectangle mBarRect  = new Rectangle();
+        private BufferedImage     mBelow;
+        private BufferedImage     mAbove;
+        private int               mLayerVersion;
+        private ThresholdData     mLayerThreshold;
+        private int               mLayerThresholdVersion;
+
         @Override
-        public void paint(final Graphics oldGraphics,
+        public void paint(final Graphics graphics,
                           final JComponent component) throws IllegalArgumentException {
-            final Graphics2D graphics = (Graphics2D) oldGraphics.create();
             try {
                 final JStatusComponent status = (JStatusComponent) component;
+                final int width = component.getWidth();
+                final int height = component.getHeight();
+                if (width <= 0 || height <= 0) {
+                    return;
+                }
+                final Color oldColor = graphics.getColor();
                 // layout
-                final FontMetrics metrics = graphics.getFontMetrics();
-                final int topOfText = component.getHeight() - metrics.getHeight() - 3;
-                final Rectangle textRect = new Rectangle(2,
-                        topOfText,
-                        component.getWidth() - 4,
-                        metrics.getHeight());
-                final Rectangle barRect = new Rectangle(5,
-                        5,
-                        component.getWidth() - 10,
-                        component.getHeight() - textRect.height - 10);
+                final FontMetrics metrics = component.getFontMetrics(component.getFont());
+                final int topOfText = height - metrics.getHeight() - 3;
+                mTextRect.setBounds(2, topOfText, width - 4, metrics.getHeight());
+                mBarRect.setBounds(5, 5, width - 10, height - mTextRect.height - 10);
+                layout(status);
                 // paint
-                graphics.setColor(status.getBackground());
-                graphics.fillRect(0, 0, component.getWidth(), component.getHeight());
-                paintGraph(graphics, status, barRect);
-                paintText(graphics, status, textRect, status.getText(), Color.BLACK);
+                if (isStale(status, width, height)) {
+                    renderLayers(status, width, height);
+                }
+                graphics.drawImage(mBelow, 0, 0, null);
+                paintBars(graphics, status);
+                graphics.drawImage(mAbove, 0, 0, null);
+                // restore
+                graphics.setColor(oldColor);
             } catch (final Exception error) {
                 throw new IllegalArgumentException(error);
-            } finally {
-                graphics.dispose();
             }
         }
 
-        private void paintGraph(final Graphics oldGraphics,
-                                final JStatusComponent status,
-                                final Rectangle barRect) {
-            final Graphics2D graphics = (Graphics2D) oldGraphics.create();
-            graphics.setClip(barRect.x, barRect.y, barRect.width, barRect.height);
+        /**
+         * Compute the geometry used by all layers from {@link #mBarRect}.
+         *
+         * @param status
+         *            JStatusComponent
+         */
+        protected abstract void layout(JStatusComponent status);
+
+        /**
+         * Paint the cached layer below the bars.
+         *
+         * @param graphics
+         *            graphics of the layer image
+         * @param status
+         *            JStatusComponent
+         */
+        protected abstract void paintBelow(Graphics graphics, JStatusComponent status);
+
+        /**
+         * Paint the bars, called on every paint.
+         *
+         * @param graphics
+         *            graphics of the component
+         * @param status
+         *            JStatusComponent
+         */
+        protected abstract void paintBars(Graphics graphics, JStatusComponent status);
+
+        /**
+         * Paint the cached layer above the bars.
+         *
+         * @param graphics
+         *            graphics of the transparent layer image
+         * @param status
+         *            JStatusComponent
+         */
+        protected abstract void paintAbove(Graphics graphics, JStatusComponent status);
+
+        private boolean isStale(final JStatusComponent status, final int width, final int height) {
+            return mBelow == null
+                   || mBelow.getWidth() != width
+                   || mBelow.getHeight() != height
+                   || mLayerVersion != status.mLayerVersion
+                   || mLayerThreshold != status.mThreshold
+                   || (mLayerThreshold != null
+                       && mLayerThresholdVersion != mLayerThreshold.version());
+        }
+
+        private void renderLayers(final JStatusComponent status,
+                                  final int width,
+                                  final int height) {
+            if (mBelow == null || mBelow.getWidth() != width || mBelow.getHeight() != height) {
+                mBelow = createLayer(status, width, height);
+                mAbove = createLayer(status, width, height);
+            }
+            final Graphics2D below = mBelow.createGraphics();
             try {
-                final Rectangle barArea = new Rectangle(barRect);
-                final int individualBarWidth = status.getBarCount() == 0 ? barArea.width
-                                                                         : barArea.width
-                                                                           / status.getBarCount();
-                barArea.width = individualBarWidth * status.getBarCount();
-                // draw bar area background draw box around it
-                graphics.setColor(status.mBarBackground);
-                graphics.fillRect(barArea.x, barArea.y, barArea.width, barArea.height + 1);
-                graphics.setColor(Color.DARK_GRAY);
-                graphics.drawRect(barArea.x, barArea.y, barArea.width, barArea.height + 1);
-                // draw each bar
-                barArea.setBounds(barArea.x + 1,
-                                  barArea.y + 1,
-                                  barArea.width - 2,
-                                  barArea.height - 2);
-                int individualBarLeft = 0;
-                for (int i = 0; i < status.getBarCount(); i++) {
-                    graphics.setColor(status.getThreshold() == null ? status.mBarColor
-                                                                    : status.getThreshold()
-                                                                            .getColor(status.getValueAt(i)));
-                    final Rectangle bar = new Rectangle(barArea.x + individualBarLeft + 5,
-                            barTop(status, barArea, status.getValueAt(i)),
-                            individualBarWidth - 10,
-                            barHeight(status, barArea, status.getValueAt(i)));
-                    final Rectangle value = new Rectangle(bar.x, bar.y, bar.width, 15);
-                    graphics.fillRect(bar.x, bar.y, bar.width, bar.height);
-                    paintText(graphics,
-                              status,
-                              value,
-                              Integer.toString((int) status.getValueAt(i)),
-                              status.getThreshold().getColorReversed(status.getValueAt(i)));
-                    individualBarLeft += individualBarWidth;
-                }
-                // draw threshold lines
-                if (status.mThreshold != null) {
-                    drawThresholdLine(graphics,
-                                      status,
-                                      barArea,
-                                      status.mThreshold.crisis().getValue());
-                    drawThresholdLine(graphics,
-                                      status,
-                                      barArea,
-                                      status.mThreshold.alert().getValue());
-                    drawThresholdLine(graphics,
-                                      status,
-                                      barArea,
-                                      status.mThreshold.warning().getValue());
-                } else if (status.mGridLines != -1) {
-                    for (int i = 0; i < status.getAxisMax(); i += status.mGridLines) {
-                        graphics.drawLine(barArea.x,
-                                          barTop(status, barArea, i),
-                                          barArea.x + barArea.width,
-                                          barTop(status, barArea, i));
-                    }
-                }
+                below.setFont(status.getFont());
+                below.setComposite(AlphaComposite.Clear);
+                below.fillRect(0, 0, width, height);
+                below.setComposite(AlphaComposite.SrcOver);
+                paintBelow(below, status);
             } finally {
-                graphics.dispose();
+                below.dispose();
             }
+            final Graphics2D above = mAbove.createGraphics();
+            try {
+                above.setFont(status.getFont());
+                above.setComposite(AlphaComposite.Clear);
+                above.fillRect(0, 0, width, height);
+                above.setComposite(AlphaComposite.SrcOver);
+                paintAbove(above, status);
+            } finally {
+                above.dispose();
+            }
+            mLayerVersion = status.mLayerVersion;
+            mLayerThreshold = status.mThreshold;
+            mLayerThresholdVersion = mLayerThreshold == null ? 0 : mLayerThreshold.version();
         }
 
-        private void paintText(final Graphics oldGraphics,
-                               final JStatusComponent status,
-                               final Rectangle textRect,
-                               final String text,
-                               final Color color) {
-            final Graphics2D graphics = (Graphics2D) oldGraphics.create();
-            try {
-                if (text != null && !text.equals("")) {
-                    //graphics.setFont(UIManager.getFont("SmallLabel.font"));
-                    final FontMetrics metrics = graphics.getFontMetrics();
-                    graphics.setColor(color);
-                    final int stringWidth = metrics.stringWidth(text);
-                    // vertically center text
-                    final int topSpacing = (textRect.height
-                                            - (metrics.getAscent() + metrics.getDescent()))
-                                           / 2;
-                    final int offset = (textRect.width - stringWidth) / 2;
-                    graphics.drawString(text,
-                                        textRect.x + offset,
-                                        textRect.y + topSpacing + metrics.getAscent());
+        private static BufferedImage createLayer(final JComponent component,
+                                                 final int width,
+                                                 final int height) {
+            final GraphicsConfiguration configuration = component.getGraphicsConfiguration();
+            if (configuration == null) {
+                return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            return configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+
+        protected void paintText(final Graphics graphics,
+                                 final Rectangle textRect,
+                                 final String text,
+                                 final Color color) {
+            if (text != null && !text.isEmpty()) {
+                //graphics.setFont(UIManager.getFont("SmallLabel.font"));
+                final FontMetrics metrics = graphics.getFontMetrics();
+                graphics.setColor(color);
+                final int stringWidth = metrics.stringWidth(text);
+                // vertically center text
+                final int topSpacing = (textRect.height
+                                        - (metrics.getAscent() + metrics.getDescent()))
+                                       / 2;
+                final int offset = (textRect.width - stringWidth) / 2;
+                graphics.drawString(text,
+                                    textRect.x + offset,
+                                    textRect.y + topSpacing + metrics.getAscent());
+            }
+        }
+    }
+
+    /**
+     * Bars drawn vertically.
+     */
+    private static class StatusVerticalUI
+        extends
+            LayeredStatusUI {
+
+        private final Rectangle mBarArea = new Rectangle();
+        private final Rectangle mBar     = new Rectangle();
+        private final Rectangle mValue   = new Rectangle();
+        private int             mIndividualBarWidth;
+
+        @Override
+        protected void layout(final JStatusComponent status) {
+            mBarArea.setBounds(mBarRect);
+            mIndividualBarWidth = status.getBarCount() == 0 ? mBarArea.width
+                                                            : mBarArea.width / status.getBarCount();
+            mBarArea.width = mIndividualBarWidth * status.getBarCount();
+        }
+
+        @Override
+        protected void paintBelow(final Graphics graphics, final JStatusComponent status) {
+            graphics.setColor(status.getBackground());
+            graphics.fillRect(0, 0, status.getWidth(), status.getHeight());
+            // draw bar area background draw box around it
+            final Rectangle barArea = mBarArea;
+            graphics.setColor(status.mBarBackground);
+            graphics.fillRect(barArea.x, barArea.y, barArea.width, barArea.height + 1);
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.drawRect(barArea.x, barArea.y, barArea.width, barArea.height + 1);
+            paintText(graphics, mTextRect, status.getText(), Color.BLACK);
+        }
+
+        @Override
+        protected void paintBars(final Graphics graphics, final JStatusComponent status) {
+            final int areaX = mBarArea.x + 1;
+            final int areaY = mBarArea.y + 1;
+            final int areaHeight = mBarArea.height - 2;
+            int individualBarLeft = 0;
+            for (int i = 0; i < status.getBarCount(); i++) {
+                final double value = status.getValueAt(i);
+                graphics.setColor(status.getThreshold() == null ? status.mBarColor
+                                                                : status.getThreshold()
+                                                                        .getColor(value));
+                mBar.setBounds(areaX + individualBarLeft + 5,
+                               barTop(status, areaY, areaHeight, value),
+                               mIndividualBarWidth - 10,
+                               barHeight(status, areaHeight, value));
+                mValue.setBounds(mBar.x, mBar.y, mBar.width, 15);
+                graphics.fillRect(mBar.x, mBar.y, mBar.width, mBar.height);
+                paintText(graphics,
+                          mValue,
+                          label(value),
+                          status.getThreshold() == null ? Color.BLACK
+                                                        : status.getThreshold()
+                                                                .getColorReversed(value));
+                individualBarLeft += mIndividualBarWidth;
+            }
+        }
+
+        @Override
+        protected void paintAbove(final Graphics graphics, final JStatusComponent status) {
+            // draw threshold lines, otherwise grid lines, over the bars
+            if (status.mThreshold != null) {
+                drawThresholdLine(graphics, status, status.mThreshold.crisis().getValue());
+                drawThresholdLine(graphics, status, status.mThreshold.alert().getValue());
+                drawThresholdLine(graphics, status, status.mThreshold.warning().getValue());
+            } else if (status.mGridLines != -1) {
+                graphics.setColor(Color.BLACK);
+                for (int i = 0; i < status.getAxisMax(); i += status.mGridLines) {
+                    final int top = barTop(status, mBarArea.y + 1, mBarArea.height - 2, i);
+                    graphics.drawLine(mBarArea.x + 1, top, mBarArea.x + mBarArea.width - 1, top);
                 }
-            } finally {
-                graphics.dispose();
             }
         }
 
-        private void drawThresholdLine(final Graphics g,
+        private void drawThresholdLine(final Graphics graphics,
                                        final JStatusComponent status,
-                                       final Rectangle barArea,
                                        final double threshold) {
-            final Graphics2D graphics = (Graphics2D) g.create();
-            try {
-                if ((int) threshold != ThresholdData.IGNORE) {
-                    graphics.setColor(Color.black);
-                    graphics.drawLine(barArea.x,
-                                      barTop(status, barArea, threshold),
-                                      barArea.x + barArea.width + 1,
-                                      barTop(status, barArea, threshold));
-                }
-            } finally {
-                graphics.dispose();
+            if ((int) threshold != ThresholdData.IGNORE) {
+                graphics.setColor(Color.black);
+                final int top = barTop(status, mBarArea.y + 1, mBarArea.height - 2, threshold);
+                graphics.drawLine(mBarArea.x + 1, top, mBarArea.x + mBarArea.width, top);
             }
         }
 
@@ -360,16 +585,19 @@ public class JStatusComponent
          *
          * @param status
          *            JStatusComponent
-         * @param barArea
-         *            rectangle where the bar will be drawn
+         * @param areaY
+         *            top of the area where the bar will be drawn
+         * @param areaHeight
+         *            height of the area where the bar will be drawn
          * @param value
          *            value
          * @return the top of the rectangle
          */
         private int barTop(final JStatusComponent status,
-                           final Rectangle barArea,
+                           final int areaY,
+                           final int areaHeight,
                            final double value) {
-            return barArea.y + barArea.height + 1 - barHeight(status, barArea, value);
+            return areaY + areaHeight + 1 - barHeight(status, areaHeight, value);
         }
 
         /**
@@ -378,139 +606,190 @@ public class JStatusComponent
          *
          * @param status
          *            JStatusComponent
-         * @param barArea
-         *            rectangle where the bar will be drawn
+         * @param areaHeight
+         *            height of the area where the bar will be drawn
          * @param value
          *            value
          * @return the height
          */
         private int barHeight(final JStatusComponent status,
-                              final Rectangle barArea,
+                              final int areaHeight,
                               final double value) {
-            return (int) (barArea.height
+            return (int) (areaHeight
                           * (Math.min(value, status.getAxisMax()) / status.getAxisMax()));
-
         }
     }
 
+    /**
+     * Bars drawn horizontally.
+     */
     private static class StatusHorizontalUI
         extends
-            BasicButtonUI {
+            LayeredStatusUI {
+
+        private final Rectangle mBarArea = new Rectangle();
+        private int             mIndividualBarHeight;
 
         @Override
-        public void paint(final Graphics graphics,
-                          final JComponent component) throws IllegalArgumentException {
-            try {
-                final JStatusComponent status = (JStatusComponent) component;
-                final Color oldColor = graphics.getColor();
-                // layout
-                Rectangle barRect = null;
-                Rectangle textRect = null;
-                final FontMetrics metrics = graphics.getFontMetrics();
-                final int topOfText = component.getHeight() - metrics.getHeight() - 3;
-                textRect = new Rectangle(2,
-                        topOfText,
-                        component.getWidth() - 4,
-                        metrics.getHeight());
-                barRect = new Rectangle(5,
-                        5,
-                        component.getWidth() - 10,
-                        component.getHeight() - textRect.height - 10);
-                // paint
-                graphics.setColor(status.getBackground());
-                graphics.fillRect(0, 0, component.getWidth(), component.getHeight());
-                paintGraph(graphics, status, barRect);
-                paintText(graphics, status, textRect, status.getText());
-                // restore
-                graphics.setColor(oldColor);
-            } catch (final Exception error) {
-                throw new IllegalArgumentException(error);
-            }
+        protected void layout(final JStatusComponent status) {
+            mBarArea.setBounds(mBarRect);
+            mIndividualBarHeight = status.getBarCount() == 0 ? mBarArea.height
+                                                             : mBarArea.height
+                                                               / status.getBarCount();
+            mBarArea.height = mIndividualBarHeight * status.getBarCount();
         }
 
-        protected void paintGraph(final Graphics graphics,
-                                  final JStatusComponent status,
-                                  final Rectangle barRect) {
-            final Rectangle barArea = new Rectangle(barRect);
-            final int individualBarHeight = status.getBarCount() == 0 ? barArea.height
-                                                                      : barArea.height
-                                                                        / status.getBarCount();
-            barArea.height = individualBarHeight * status.getBarCount();
+        @Override
+        protected void paintBelow(final Graphics graphics, final JStatusComponent status) {
+            graphics.setColor(status.getBackground());
+            graphics.fillRect(0, 0, status.getWidth(), status.getHeight());
             // draw bar area background draw box around it
             graphics.setColor(status.mBarBackground);
-            graphics.fillRect(barArea.x, barArea.y, barArea.width, barArea.height + 1);
+            graphics.fillRect(mBarArea.x, mBarArea.y, mBarArea.width, mBarArea.height + 1);
             graphics.setColor(Color.DARK_GRAY);
-            graphics.drawRect(barArea.x, barArea.y, barArea.width, barArea.height + 1);
-            // draw each bar
-            barArea.setBounds(barArea.x + 1, barArea.y + 1, barArea.width - 2, barArea.height - 2);
+            graphics.drawRect(mBarArea.x, mBarArea.y, mBarArea.width, mBarArea.height + 1);
+            paintText(graphics, mTextRect, status.getText(), status.getForeground());
+        }
+
+        @Override
+        protected void paintBars(final Graphics graphics, final JStatusComponent status) {
+            final int areaWidth = mBarArea.width - 2;
             int individualBarTop = 0;
             for (int i = 0; i < status.getBarCount(); i++) {
+                final double value = status.getValueAt(i);
                 graphics.setColor(status.getThreshold() == null ? status.mBarColor
                                                                 : status.getThreshold()
-                                                                        .getColor(status.getValueAt(i)));
-                graphics.fillRect(barArea.x,
-                                  barArea.y + individualBarTop,
-                                  value2offset(status, barArea, status.getValueAt(i)),
-                                  individualBarHeight);
-                if (i != 0) {
-                    // draw a line at top of bar to provide some separation
-                    graphics.setColor(Color.LIGHT_GRAY);
-                    graphics.drawLine(barArea.x,
-                                      barArea.y + individualBarTop,
-                                      barArea.x + barArea.width,
-                                      barArea.y + individualBarTop);
-                }
-                individualBarTop += individualBarHeight;
+                                                                        .getColor(value));
+                graphics.fillRect(mBarArea.x + 1,
+                                  mBarArea.y + 1 + individualBarTop,
+                                  value2offset(status, areaWidth, value),
+                                  mIndividualBarHeight);
+                individualBarTop += mIndividualBarHeight;
+            }
+        }
+
+        @Override
+        protected void paintAbove(final Graphics graphics, final JStatusComponent status) {
+            final int areaX = mBarArea.x + 1;
+            final int areaY = mBarArea.y + 1;
+            final int areaWidth = mBarArea.width - 2;
+            // draw a line at top of each bar to provide some separation
+            graphics.setColor(Color.LIGHT_GRAY);
+            for (int i = 1; i < status.getBarCount(); i++) {
+                final int top = areaY + i * mIndividualBarHeight;
+                graphics.drawLine(areaX, top, areaX + areaWidth, top);
             }
             // draw threshold lines
             if (status.mThreshold != null) {
-                drawThresholdLine(graphics, status, barArea, status.mThreshold.crisis().getValue());
-                drawThresholdLine(graphics, status, barArea, status.mThreshold.alert().getValue());
-                drawThresholdLine(graphics,
-                                  status,
-                                  barArea,
-                                  status.mThreshold.warning().getValue());
+                drawThresholdLine(graphics, status, status.mThreshold.crisis().getValue());
+                drawThresholdLine(graphics, status, status.mThreshold.alert().getValue());
+                drawThresholdLine(graphics, status, status.mThreshold.warning().getValue());
             }
         }
 
-        protected void paintText(final Graphics graphics,
-                                 final JStatusComponent status,
-                                 final Rectangle textRect,
-                                 final String text) {
-            if (text != null && !text.equals("")) {
-                //graphics.setFont(UIManager.getFont("SmallLabel.font"));
-                final FontMetrics metrics = graphics.getFontMetrics();
-                graphics.setColor(status.getForeground());
-                final int stringWidth = metrics.stringWidth(text);
-                // vertically center text
-                final int topSpacing = (textRect.height
-                                        - (metrics.getAscent() + metrics.getDescent()))
-                                       / 2;
-                final int offset = (textRect.width - stringWidth) / 2;
-                graphics.drawString(text,
-                                    textRect.x + offset,
-                                    textRect.y + topSpacing + metrics.getAscent());
+        private void drawThresholdLine(final Graphics graphics,
+                                       final JStatusComponent status,
+                                       final double threshold) {
+            if ((int) threshold != ThresholdData.IGNORE) {
+                graphics.setColor(Color.black);
+                final int offset = value2offset(status, mBarArea.width - 2, threshold);
+                graphics.drawLine(mBarArea.x + 1 + offset,
+                                  mBarArea.y + 1,
+                                  mBarArea.x + 1 + offset,
+                                  mBarArea.y + mBarArea.height);
+            }
+        }
+
+        protected int value2offset(final JStatusComponent status,
+                                   final int areaWidth,
+                                   final double value) {
+            return (int) (areaWidth * (Math.min(value, status.getAxisMax()) / status.getAxisMax()));
+        }
+    }
+
+    /**
+     * Draw the last samples of each history ring as a line, newest at the right, one sample per
+     * pixel. The scratch buffer is reused so painting does not allocate unless the component is
+     * resized.
+     */
+    private static class StatusSparklineUI
+        extends
+            LayeredStatusUI {
+
+        private static final Color[] SERIES_COLOR = {
+                                                     Color.GRAY, Color.BLUE, new Color(0, 128, 0),
+                                                     Color.MAGENTA, Color.ORANGE
+        };
+
+        private long[]               mScratch     = new long[0];
+
+        @Override
+        protected void layout(final JStatusComponent status) {
+            // the whole bar rectangle is used
+        }
+
+        @Override
+        protected void paintBelow(final Graphics graphics, final JStatusComponent status) {
+            graphics.setColor(status.getBackground());
+            graphics.fillRect(0, 0, status.getWidth(), status.getHeight());
+            graphics.setColor(status.mBarBackground);
+            graphics.fillRect(mBarRect.x, mBarRect.y, mBarRect.width, mBarRect.height + 1);
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.drawRect(mBarRect.x, mBarRect.y, mBarRect.width, mBarRect.height + 1);
+            paintText(graphics, mTextRect, status.getText(), status.getForeground());
+        }
+
+        @Override
+        protected void paintBars(final Graphics graphics, final JStatusComponent status) {
+            final int width = mBarRect.width - 2;
+            if (width <= 1) {
+                return;
+            }
+            if (mScratch.length != width) {
+                mScratch = new long[width];
+            }
+            final int bottom = mBarRect.y + mBarRect.height;
+            final int right = mBarRect.x + mBarRect.width - 1;
+            for (int s = 0; s < status.mHistory.length; s++) {
+                final int count = status.mHistory[s].copyLast(mScratch);
+                graphics.setColor(SERIES_COLOR[s % SERIES_COLOR.length]);
+                int lastX = -1;
+                int lastY = -1;
+                for (int i = 0; i < count; i++) {
+                    final int x = right - (count - 1 - i);
+                    final int y = bottom - value2height(status, mScratch[i]);
+                    if (lastX != -1) {
+                        graphics.drawLine(lastX, lastY, x, y);
+                    }
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+
+        @Override
+        protected void paintAbove(final Graphics graphics, final JStatusComponent status) {
+            // draw threshold lines
+            if (status.mThreshold != null) {
+                drawLevelLine(graphics, status, status.mThreshold.crisis().getValue());
+                drawLevelLine(graphics, status, status.mThreshold.alert().getValue());
+                drawLevelLine(graphics, status, status.mThreshold.warning().getValue());
             }
         }
 
-        protected void drawThresholdLine(final Graphics graphics,
-                                         final JStatusComponent status,
-                                         final Rectangle barRect,
-                                         final double threshold) {
+        private void drawLevelLine(final Graphics graphics,
+                                   final JStatusComponent status,
+                                   final double threshold) {
             if ((int) threshold != ThresholdData.IGNORE) {
                 graphics.setColor(Color.black);
-                final int offset = value2offset(status, barRect, threshold);
-                graphics.drawLine(barRect.x + offset,
-                                  barRect.y,
-                                  barRect.x + offset,
-                                  barRect.y + barRect.height + 1);
+                final int y = mBarRect.y + mBarRect.height - value2height(status, threshold);
+                graphics.drawLine(mBarRect.x, y, mBarRect.x + mBarRect.width, y);
             }
         }
 
-        protected int value2offset(final JStatusComponent status,
-                                   final Rectangle barRect,
-                                   final double value) {
-            return (int) (barRect.width * (value / status.getAxisMax()));
+        private int value2height(final JStatusComponent status, final double value) {
+            return (int) (mBarRect.height
+                          * (Math.min(value, status.getAxisMax()) / status.getAxisMax()));
         }
     }
 
@@ -578,6 +857,13 @@ public class JStatusComponent
             return mName;
         }
 
+        /**
+         * @return changes whenever one of the values changes, used to invalidate cached drawings
+         */
+        int version() {
+            return mWarning.mVersion + mAlert.mVersion + mCrisis.mVersion;
+        }
+
         public void setName(final String value) {
             mName = value;
         }
@@ -615,6 +901,7 @@ public class JStatusComponent
         public static class ThresholdValue {
 
             private double mValue = ThresholdData.IGNORE;
+            private int    mVersion;
 
             public double getValue() {
                 return mValue;
@@ -622,6 +909,7 @@ public class JStatusComponent
 
             public void setValue(final double value) {
                 mValue = value;
+                mVersion++;
             }
 
             public boolean isTriggered(final double value) {
@@ -1,14 +1,22 @@
 package com.billsdesk.github.monitorwindow;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.GridLayout;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
 
 import javax.swing.JFrame;
 
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 
 import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+import com.sun.management.ThreadMXBean;
 
 @TestMethodOrder(MethodOrderer.Alphanumeric.class)
 public class JStatusComponentTest {
@@ -79,6 +87,70 @@ public class JStatusComponentTest {
         frame.dispose();
     }
 
+    @Test
+    public void gridLines() {
+        final BufferedImage plain = paintFullBar(-1);
+        final BufferedImage grid = paintFullBar(20);
+        // the lines are drawn over the bar, not hidden by it
+        int crossing = 0;
+        for (int y = 0; y < plain.getHeight(); y++) {
+            for (int x = 0; x < plain.getWidth(); x++) {
+                if (plain.getRGB(x, y) == Color.BLUE.getRGB()
+                    && grid.getRGB(x, y) == Color.BLACK.getRGB()) {
+                    crossing++;
+                }
+            }
+        }
+        assertTrue(crossing > 0);
+    }
+
+    private static BufferedImage paintFullBar(final int gridLines) {
+        final BufferedImage image = new BufferedImage(120, 200, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        final JStatusComponent status = new JStatusComponent(true, "Pool");
+        status.setThreshold(null);
+        status.setBarColor(Color.BLUE);
+        status.setAxisMax(100);
+        status.setGridLines(gridLines);
+        status.addValue(100);
+        status.setSize(image.getWidth(), image.getHeight());
+        status.getUI().paint(graphics, status);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void paintAllocation() {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final BufferedImage image = new BufferedImage(120, 200, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        for (final boolean vertical : new boolean[] {
+                                                      true, false
+        }) {
+            final JStatusComponent status = new JStatusComponent(vertical, "Pool");
+            status.getThreshold().alert().setValue(40);
+            status.getThreshold().warning().setValue(30);
+            status.setGridLines(20);
+            status.addValue(10);
+            status.addValue(35);
+            status.addValue(50);
+            status.setSize(image.getWidth(), image.getHeight());
+            for (int i = 0; i < 20_000; i++) {
+                status.getUI().paint(graphics, status);
+            }
+            final long id = Thread.currentThread().getId();
+            final long before = threads.getThreadAllocatedBytes(id);
+            for (int i = 0; i < 10_000; i++) {
+                status.getUI().paint(graphics, status);
+            }
+            final long allocated = threads.getThreadAllocatedBytes(id) - before;
+            assertTrue(allocated < 1024, () -> String.format("%,d bytes allocated", allocated));
+        }
+        graphics.dispose();
+    }
+
     public static void pause(final long milliseconds) {
         try {
             Thread.sleep(milliseconds);
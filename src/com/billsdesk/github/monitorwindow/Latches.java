@@ -0,0 +1,34 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test tasks that hold a pool thread until the test releases them. The wait is bounded so a test
+ * that fails before its release cannot leave pool threads parked forever.
+ *
+ * @author Bill
+ */
+final class Latches {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Latches() {
+    }
+
+    /**
+     * Wait for the latch to open, failing if it is still closed after five seconds.
+     *
+     * @param latch
+     *            latch the test counts down to release the caller
+     */
+    static void await(final CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "latch was not released");
+        } catch (final InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed memory histogram of durations in nanoseconds. Each power of two is split into eight
+ * buckets so a percentile is within about 12% of the recorded value, from 1ns to the range of a
+ * long, in 496 counters.
+ * <p>
+ * Recording is lock-free. Each bucket is a {@link LongAdder}, created the first time a duration
+ * falls in it, and the max a {@link LongAccumulator}, so the workers of a pool recording at once
+ * do not contend on a shared counter and a histogram holds only the buckets its durations use.
+ * <p>
+ * The percentiles are over a rolling window, by default the last minute, so they show the
+ * latency of the pool now rather than since it started. The window is split into six intervals.
+ * At the start of each the reader keeps the counts of the buckets, the percentiles are taken from
+ * the counts since the oldest interval, and each interval has its own max. The window therefore
+ * covers between five and six intervals and the recording threads do not take part in moving it.
+ * The arrays the reader keeps the counts in are allocated on its first read and then reused.
+ *
+ * @author Bill
+ */
+public final class LatencyHistogram {
+
+    private static final int                      SUB_BITS     = 3;
+    private static final int                      SUB_BUCKETS  = 1 << SUB_BITS;
+    private static final int                      BUCKET_COUNT = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+    private static final int                      INTERVALS    = 6;
+
+    private final AtomicReferenceArray<LongAdder> mCounts      =
+            new AtomicReferenceArray<>(BUCKET_COUNT);
+    private final LongAccumulator                 mMax         = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator[]               mMaxes       = new LongAccumulator[INTERVALS];
+    private final long                            mInterval;
+    // interval the durations are recorded in
+    private volatile int                          mCurrent;
+    // guarded by this, counts at the start of each interval, null before the first
+    private final long[][]                        mStarts      = new long[INTERVALS][];
+    private long                                  mStarted     = System.nanoTime();
+    // guarded by this, reused by each read, null before the first
+    private long[]                                mRead;
+    private long[]                                mWindow;
+
+    /**
+     * Create a histogram with percentiles over the last minute.
+     */
+    public LatencyHistogram() {
+        this(60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a histogram.
+     *
+     * @param window
+     *            time covered by the percentiles
+     * @param unit
+     *            unit of the window
+     */
+    public LatencyHistogram(final long window, final TimeUnit unit) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        mInterval = Math.max(1, unit.toNanos(window) / INTERVALS);
+        for (int i = 0; i < INTERVALS; i++) {
+            mMaxes[i] = new LongAccumulator(Math::max, 0);
+        }
+    }
+
+    /**
+     * Record one duration.
+     *
+     * @param nanos
+     *            duration, negative values are counted as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        final int index = index(value);
+        LongAdder bucket = mCounts.get(index);
+        if (bucket == null) {
+            bucket = bucket(index);
+        }
+        bucket.increment();
+        mMax.accumulate(value);
+        mMaxes[mCurrent].accumulate(value);
+    }
+
+    private LongAdder bucket(final int index) {
+        final LongAdder created = new LongAdder();
+        final LongAdder existing = mCounts.compareAndExchange(index, null, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * @return durations recorded since the histogram was created
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final LongAdder bucket = mCounts.get(i);
+            if (bucket != null) {
+                count += bucket.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return longest duration recorded since the histogram was created
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Compute a summary of the percentiles which the SLOs are written against.
+     *
+     * @return summary of the durations within the window, all in nanoseconds, the count is since
+     *         the histogram was created
+     */
+    public synchronized LatencySummary summarize() {
+        final long[] counts = window();
+        final long total = sum(mRead);
+        final long count = sum(counts);
+        final long max = windowMax();
+        return new LatencySummary(Math.max(total, count),
+                valueAt(counts, count, 0.50, max),
+                valueAt(counts, count, 0.99, max),
+                valueAt(counts, count, 0.999, max),
+                max);
+    }
+
+    /**
+     * Value at a percentile of the durations within the window.
+     *
+     * @param percentile
+     *            0.0 to 1.0, e.g. 0.99
+     * @return upper bound of the bucket holding the percentile, never more than the max recorded
+     *         within the window, 0 if none
+     */
+    public synchronized long getValueAtPercentile(final double percentile) {
+        final long[] counts = window();
+        return valueAt(counts, sum(counts), percentile, windowMax());
+    }
+
+    /**
+     * Move the window to now. Guarded by this.
+     *
+     * @return counts within the window, valid until the next read, {@link #mRead} holds the
+     *         counts since the histogram was created
+     */
+    private long[] window() {
+        final long now = System.nanoTime();
+        if (mRead == null) {
+            mRead = new long[BUCKET_COUNT];
+            mWindow = new long[BUCKET_COUNT];
+        }
+        read(mRead);
+        final long elapsed = (now - mStarted) / mInterval;
+        if (elapsed >= INTERVALS) {
+            // nothing read for a whole window, it starts again
+            for (int i = 0; i < INTERVALS; i++) {
+                start(i, mRead);
+            }
+            mStarted = now;
+        } else if (elapsed > 0) {
+            // the intervals not read in start together
+            int current = mCurrent;
+            for (int i = 0; i < elapsed; i++) {
+                current = (current + 1) % INTERVALS;
+                start(current, mRead);
+            }
+            mCurrent = current;
+            mStarted += elapsed * mInterval;
+        }
+        final long[] oldest = mStarts[(mCurrent + 1) % INTERVALS];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mWindow[i] = oldest == null ? mRead[i] : mRead[i] - oldest[i];
+        }
+        return mWindow;
+    }
+
+    // the interval reuses the counts of the interval it replaces
+    private void start(final int interval, final long[] counts) {
+        if (mStarts[interval] == null) {
+            mStarts[interval] = new long[BUCKET_COUNT];
+        }
+        System.arraycopy(counts, 0, mStarts[interval], 0, BUCKET_COUNT);
+        mMaxes[interval].reset();
+    }
+
+    private long windowMax() {
+        long result = 0;
+        for (final LongAccumulator max : mMaxes) {
+            result = Math.max(result, max.get());
+        }
+        return result;
+    }
+
+    // the buckets are read once so the percentiles of a summary agree with each other
+    private void read(final long[] counts) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final LongAdder bucket = mCounts.get(i);
+            counts[i] = bucket == null ? 0 : bucket.sum();
+        }
+    }
+
+    private static long sum(final long[] counts) {
+        long result = 0;
+        for (final long count : counts) {
+            result += count;
+        }
+        return result;
+    }
+
+    private static long valueAt(final long[] counts,
+                                final long count,
+                                final double percentile,
+                                final long max) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = index % SUB_BUCKETS;
+        final long lower = (1L << exponent) + (sub << (exponent - SUB_BITS));
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Immutable percentiles of a histogram.
+     */
+    public static final class LatencySummary {
+
+        private final long mCount;
+        private final long mP50;
+        private final long mP99;
+        private final long mP999;
+        private final long mMax;
+
+        public LatencySummary(final long count,
+                              final long p50,
+                              final long p99,
+                              final long p999,
+                              final long max) {
+            mCount = count;
+            mP50 = p50;
+            mP99 = p99;
+            mP999 = p999;
+            mMax = max;
+        }
+
+        /**
+         * @return durations recorded since the histogram was created
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getP50() {
+            return mP50;
+        }
+
+        public long getP99() {
+            return mP99;
+        }
+
+        public long getP999() {
+            return mP999;
+        }
+
+        /**
+         * @return longest duration recorded within the window
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof LatencySummary)) {
+                return false;
+            }
+            final LatencySummary summary = (LatencySummary) other;
+            return mCount == summary.mCount && mP50 == summary.mP50 && mP99 == summary.mP99
+                && mP999 == summary.mP999 && mMax == summary.mMax;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mCount, mP50, mP99, mP999, mMax);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n %,d p50 %,d p99 %,d p99.9 %,d max %,d ns",
+                                 mCount,
+                                 mP50,
+                                 mP99,
+                                 mP999,
+                                 mMax);
+        }
+    }
+}
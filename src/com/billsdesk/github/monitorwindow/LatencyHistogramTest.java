@@ -0,0 +1,95 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class LatencyHistogramTest {
+
+    @Test
+    public void allocation() {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            histogram.summarize();
+        }
+        final long id = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 1000; i++) {
+            histogram.summarize();
+        }
+        // only the summaries, the counts are read into arrays kept by the histogram
+        final long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue(allocated < 1000 * 100, () -> String.format("%,d bytes allocated", allocated));
+    }
+
+    @Test
+    public void buckets() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.upperBound(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.upperBound(index - 1) < value);
+        }
+        assertEquals(Long.MAX_VALUE,
+                     LatencyHistogram.upperBound(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        final LatencySummary summary = histogram.summarize();
+        assertEquals(1000, summary.getCount());
+        assertEquals(1_000_000, summary.getMax());
+        assertNear(500_000, summary.getP50());
+        assertNear(990_000, summary.getP99());
+        assertNear(999_000, summary.getP999());
+    }
+
+    @Test
+    public void window() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram(60, TimeUnit.MILLISECONDS);
+        histogram.record(5_000_000);
+        assertEquals(5_000_000, histogram.summarize().getMax());
+        // the slow duration falls out of the window, the count is kept
+        Thread.sleep(100);
+        LatencySummary summary = histogram.summarize();
+        assertEquals(1, summary.getCount());
+        assertEquals(0, summary.getP99());
+        assertEquals(0, summary.getMax());
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        summary = histogram.summarize();
+        assertEquals(101, summary.getCount());
+        assertEquals(100_000, summary.getMax());
+        assertNear(99_000, summary.getP99());
+        assertEquals(5_000_000, histogram.getMax());
+    }
+
+    private static void assertNear(final long expected, final long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.125,
+                   () -> String.format("expected about %,d but was %,d", expected, actual));
+    }
+}
@@ -0,0 +1,296 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the latest snapshot of every pool of a {@link PoolSampler} in the OpenMetrics text format
+ * so the pools can be scraped by Prometheus. Uses the JDK's embedded HTTP server, no dependencies
+ * are added. A scrape never touches the executors, the text is rendered from the snapshots of the
+ * last pass into a reused buffer.
+ *
+ * <pre>
+ * final MetricsExporter exporter = new MetricsExporter(sampler).start(new InetSocketAddress(9404));
+ * // curl http://host:9404/metrics
+ * </pre>
+ *
+ * @author Bill
+ */
+public class MetricsExporter
+    implements
+        PoolSampler.Listener {
+
+    public static final String               CONTENT_TYPE = "application/openmetrics-text; "
+                                                            + "version=1.0.0; charset=utf-8";
+
+    private static final String[]            STATUS_NAME  = {
+                                                             "notset", "good", "warning", "alert",
+                                                             "crisis"
+    };
+
+    private final PoolSampler                mSampler;
+    private final Map<Integer, PoolSnapshot> mLatest      = new ConcurrentSkipListMap<>();
+    // reused by every scrape, guarded by this
+    private final StringBuilder              mText        = new StringBuilder(4096);
+    private final CharsetEncoder             mEncoder     = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer                       mBytes       = ByteBuffer.allocate(4096);
+    @Nullable
+    private HttpServer                       mServer;
+
+    /**
+     * Create the exporter and start listening to the sampler.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     */
+    public MetricsExporter(final PoolSampler sampler) {
+        mSampler = sampler;
+        mSampler.addListener(this);
+    }
+
+    /**
+     * Serve the metrics at /metrics.
+     *
+     * @param address
+     *            address to listen on, port 0 picks a free port
+     * @return this
+     * @throws IOException
+     *             the server could not be started
+     */
+    public MetricsExporter start(final InetSocketAddress address) throws IOException {
+        final HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        // the default executor is a single dispatcher thread, scrapes are rendered one at a time
+        server.setExecutor(null);
+        server.start();
+        mServer = server;
+        return this;
+    }
+
+    /**
+     * @return address the server is listening on or null if not started
+     */
+    @Nullable
+    public InetSocketAddress getAddress() {
+        return mServer == null ? null : mServer.getAddress();
+    }
+
+    /**
+     * Stop serving and listening to the sampler.
+     */
+    public void stop() {
+        mSampler.removeListener(this);
+        if (mServer != null) {
+            mServer.stop(0);
+            mServer = null;
+        }
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                mLatest.remove(snapshot.getId());
+            } else {
+                mLatest.put(snapshot.getId(), snapshot);
+            }
+        }
+    }
+
+    /**
+     * Write the metrics of the latest snapshots.
+     *
+     * @param out
+     *            destination
+     * @throws IOException
+     *             failed to write
+     */
+    public synchronized void scrape(final OutputStream out) throws IOException {
+        final ByteBuffer bytes = render();
+        out.write(bytes.array(), 0, bytes.limit());
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            synchronized (this) {
+                final ByteBuffer bytes = render();
+                exchange.sendResponseHeaders(200, bytes.limit());
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(bytes.array(), 0, bytes.limit());
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render the text into the reused buffer.
+     *
+     * @return buffer holding the UTF-8 text from 0 to the limit
+     */
+    private ByteBuffer render() {
+        mText.setLength(0);
+        gauge("threadpool_threads", "Threads in the pool.", Metric.THREADS);
+        gauge("threadpool_core_threads", "Core pool size.", Metric.CORE);
+        gauge("threadpool_queued", "Tasks waiting in the queue.", Metric.QUEUED);
+        gauge("threadpool_active", "Threads executing tasks.", Metric.ACTIVE);
+        counter("threadpool_tasks", "Tasks submitted.", Metric.TASKS);
+        counter("threadpool_tasks_completed", "Tasks completed.", Metric.COMPLETED);
+        summary("threadpool_queue_wait_seconds",
+                "Time tasks waited in the queue, quantiles over the last minute.",
+                true);
+        summary("threadpool_run_seconds", "Time tasks ran, quantiles over the last minute.", false);
+        thresholdStatus();
+        mText.append("# EOF\n");
+        return encode();
+    }
+
+    private enum Metric {
+        THREADS, CORE, QUEUED, ACTIVE, TASKS, COMPLETED
+    };
+
+    private static long value(final PoolSnapshot snapshot, final Metric metric) {
+        switch (metric) {
+            case THREADS:
+                return snapshot.getThreads();
+            case CORE:
+                return snapshot.getCorePoolSize();
+            case QUEUED:
+                return snapshot.getQueued();
+            case ACTIVE:
+                return snapshot.getActive();
+            case TASKS:
+                return snapshot.getTaskCount();
+            case COMPLETED:
+                return snapshot.getCompletedCount();
+            default:
+                throw new IllegalArgumentException(metric.name());
+        }
+    }
+
+    private void gauge(final String name, final String help, final Metric metric) {
+        header(name, "gauge", help);
+        for (final PoolSnapshot snapshot : mLatest.values()) {
+            sample(name, snapshot).append(value(snapshot, metric)).append('\n');
+        }
+    }
+
+    private void counter(final String name, final String help, final Metric metric) {
+        header(name, "counter", help);
+        for (final PoolSnapshot snapshot : mLatest.values()) {
+            sample(name + "_total", snapshot).append(value(snapshot, metric)).append('\n');
+        }
+    }
+
+    private void summary(final String name, final String help, final boolean queueWait) {
+        header(name, "summary", help);
+        for (final PoolSnapshot snapshot : mLatest.values()) {
+            final LatencySummary latency = queueWait ? snapshot.getQueueWait()
+                                                     : snapshot.getRunTime();
+            if (latency != null) {
+                quantile(name, snapshot, "0.5", latency.getP50());
+                quantile(name, snapshot, "0.99", latency.getP99());
+                quantile(name, snapshot, "0.999", latency.getP999());
+                quantile(name, snapshot, "1.0", latency.getMax());
+                sample(name + "_count", snapshot).append(latency.getCount()).append('\n');
+            }
+        }
+    }
+
+    private void quantile(final String name,
+                          final PoolSnapshot snapshot,
+                          final String quantile,
+                          final long nanos) {
+        labels(name, snapshot).append(",quantile=\"")
+                              .append(quantile)
+                              .append("\"} ")
+                              .append(nanos / 1e9)
+                              .append('\n');
+    }
+
+    private void thresholdStatus() {
+        final String name = "threadpool_threshold_status";
+        header(name,
+               "gauge",
+               "Threshold status of a metric: 1 good, 2 warning, 3 alert, 4 crisis, 0 not set.");
+        for (final PoolSnapshot snapshot : mLatest.values()) {
+            final ThresholdData threshold = mSampler.getThreshold(snapshot.getId());
+            // the same bars the Monitor colors
+            status(name, snapshot, threshold, Metric.CORE);
+            status(name, snapshot, threshold, Metric.QUEUED);
+            status(name, snapshot, threshold, Metric.ACTIVE);
+        }
+    }
+
+    private void status(final String name,
+                        final PoolSnapshot snapshot,
+                        @Nullable final ThresholdData threshold,
+                        final Metric metric) {
+        final int status = threshold == null ? ThresholdData.NOTSET
+                                             : threshold.getStatus(value(snapshot, metric));
+        labels(name, snapshot).append(",metric=\"")
+                              .append(metric.name().toLowerCase())
+                              .append("\",status=\"")
+                              .append(STATUS_NAME[status])
+                              .append("\"} ")
+                              .append(status)
+                              .append('\n');
+    }
+
+    private void header(final String name, final String type, final String help) {
+        mText.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        mText.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    private StringBuilder sample(final String name, final PoolSnapshot snapshot) {
+        return labels(name, snapshot).append("} ");
+    }
+
+    private StringBuilder labels(final String name, final PoolSnapshot snapshot) {
+        mText.append(name).append("{pool=\"");
+        final String pool = snapshot.getName();
+        for (int i = 0; i < pool.length(); i++) {
+            final char c = pool.charAt(i);
+            if (c == '\\' || c == '"') {
+                mText.append('\\').append(c);
+            } else if (c == '\n') {
+                mText.append("\\n");
+            } else {
+                mText.append(c);
+            }
+        }
+        return mText.append('"');
+    }
+
+    private ByteBuffer encode() {
+        while (true) {
+            mEncoder.reset();
+            mBytes.clear();
+            final CoderResult result = mEncoder.encode(CharBuffer.wrap(mText), mBytes, true);
+            if (!result.isOverflow()) {
+                mEncoder.flush(mBytes);
+                mBytes.flip();
+                return mBytes;
+            }
+            mBytes = ByteBuffer.allocate(mBytes.capacity() * 2);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class MetricsExporterTest {
+
+    @Test
+    public void scrape() throws IOException {
+        final PoolSampler sampler = new PoolSampler();
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 4, 4, "E\"1");
+        final MetricsExporter exporter = new MetricsExporter(sampler);
+        try {
+            final int id = sampler.register("E\"1", executor);
+            sampler.setThreshold(id, new ThresholdData(0, "E1", 2, 3, -1));
+            sampler.sample();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            exporter.scrape(out);
+            final String text = out.toString(StandardCharsets.UTF_8);
+            assertTrue(text.contains("# TYPE threadpool_core_threads gauge\n"));
+            assertTrue(text.contains("threadpool_core_threads{pool=\"E\\\"1\"} 4\n"));
+            assertTrue(text.contains("threadpool_tasks_total{pool=\"E\\\"1\"} 0\n"));
+            assertTrue(text.contains("threadpool_run_seconds_count{pool=\"E\\\"1\"} 0\n"));
+            // 4 core threads is above the alert threshold of 3
+            assertTrue(text.contains("threadpool_threshold_status{pool=\"E\\\"1\",metric=\"core\","
+                                     + "status=\"alert\"} 3\n"));
+            assertTrue(text.contains("threadpool_threshold_status{pool=\"E\\\"1\",metric=\"queued\","
+                                     + "status=\"good\"} 1\n"));
+            assertTrue(text.endsWith("# EOF\n"));
+        } finally {
+            exporter.stop();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void server() throws IOException {
+        final PoolSampler sampler = new PoolSampler();
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "E2");
+        final MetricsExporter exporter = new MetricsExporter(sampler);
+        exporter.start(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            sampler.register("E2", executor);
+            sampler.sample();
+            final URL url = new URL("http://127.0.0.1:" + exporter.getAddress().getPort() + "/metrics");
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsExporter.CONTENT_TYPE, connection.getContentType());
+            try (InputStream in = connection.getInputStream()) {
+                final String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(text.contains("threadpool_queued{pool=\"E2\"} 0\n"));
+            }
+        } finally {
+            exporter.stop();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * What monitoring costs, measured by the monitor itself: the interval between the passes of a
+ * {@link PoolSampler} and how late they start, the time each pass and each pool
+ * takes to sample, and for a {@link MonitorWindow} drawing the sampler the time a frame waits for
+ * the EDT, the time it holds the EDT and the passes merged into it. Recording takes no lock and
+ * does not allocate, the histograms cover the life of the sampler.
+ *
+ * <pre>
+ * final MonitorDiagnostics diagnostics = sampler.getDiagnostics();
+ * final double load = diagnostics.getSamplingLoad(); // share of one core spent sampling
+ * </pre>
+ *
+ * @author Bill
+ */
+public final class MonitorDiagnostics {
+
+    private final long                   mCreated    = System.nanoTime();
+    private final LatencyHistogram       mInterval   = new LatencyHistogram();
+    private final LatencyHistogram       mJitter     = new LatencyHistogram();
+    private final LatencyHistogram       mPass       = new LatencyHistogram();
+    private final LatencyHistogram       mFrameWait  = new LatencyHistogram();
+    private final LatencyHistogram       mFrameTime  = new LatencyHistogram();
+    private final LatencyHistogram       mBacklog    = new LatencyHistogram();
+    private final LongAdder              mPassNanos  = new LongAdder();
+    private final LongAdder              mFrameNanos = new LongAdder();
+    private final Map<Integer, PoolCost> mPools      = new ConcurrentHashMap<>();
+
+    /**
+     * Time to sample one pool.
+     */
+    public static final class PoolCost {
+
+        private final String           mName;
+        private final LatencyHistogram mTime = new LatencyHistogram();
+
+        private PoolCost(final String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return nanoseconds to read the pool and build its snapshot
+         */
+        public LatencySummary getTime() {
+            return mTime.summarize();
+        }
+    }
+
+    /**
+     * Record the start of a pass. Sampling thread only.
+     *
+     * @param interval
+     *            nanoseconds since the start of the previous pass
+     * @param late
+     *            nanoseconds the pass started after it was due, -1 if it was not scheduled
+     */
+    void tick(final long interval, final long late) {
+        mInterval.record(interval);
+        if (late >= 0) {
+            mJitter.record(late);
+        }
+    }
+
+    /**
+     * Record the sampling of one pool. Sampling thread only.
+     *
+     * @param id
+     *            id of the pool
+     * @param name
+     *            name of the pool
+     * @param nanos
+     *            time taken
+     */
+    void sampled(final int id, final String name, final long nanos) {
+        PoolCost cost = mPools.get(id);
+        if (cost == null) {
+            cost = mPools.computeIfAbsent(id, key -> new PoolCost(name));
+        }
+        cost.mTime.record(nanos);
+    }
+
+    /**
+     * Record a whole pass, the pools and the listeners. Sampling thread only.
+     *
+     * @param nanos
+     *            time taken
+     */
+    void passed(final long nanos) {
+        mPass.record(nanos);
+        mPassNanos.add(nanos);
+    }
+
+    /**
+     * Record a frame of a window. EDT only.
+     *
+     * @param wait
+     *            nanoseconds from scheduling the frame until the EDT ran it
+     * @param nanos
+     *            nanoseconds the frame held the EDT
+     * @param passes
+     *            passes of the sampler merged into the frame
+     */
+    void framed(final long wait, final long nanos, final int passes) {
+        mFrameWait.record(wait);
+        mFrameTime.record(nanos);
+        mFrameNanos.add(nanos);
+        mBacklog.record(passes);
+    }
+
+    /**
+     * Forget a pool which is no longer sampled.
+     *
+     * @param id
+     *            id of the pool
+     */
+    void removed(final int id) {
+        mPools.remove(id);
+    }
+
+    /**
+     * @return nanoseconds between the starts of two passes
+     */
+    public LatencySummary getTickInterval() {
+        return mInterval.summarize();
+    }
+
+    /**
+     * @return nanoseconds a scheduled pass started after the earliest pool in it was due
+     */
+    public LatencySummary getJitter() {
+        return mJitter.summarize();
+    }
+
+    /**
+     * @return nanoseconds of a pass, every pool and listener
+     */
+    public LatencySummary getPassTime() {
+        return mPass.summarize();
+    }
+
+    /**
+     * @param id
+     *            id of the pool
+     * @return cost of sampling the pool or null if never sampled
+     */
+    @Nullable
+    public PoolCost getPoolCost(final int id) {
+        return mPools.get(id);
+    }
+
+    /**
+     * @return cost of sampling each pool, in no particular order
+     */
+    public List<PoolCost> getPoolCosts() {
+        return new ArrayList<>(mPools.values());
+    }
+
+    /**
+     * @return nanoseconds a frame waited for the EDT after it was scheduled
+     */
+    public LatencySummary getFrameWait() {
+        return mFrameWait.summarize();
+    }
+
+    /**
+     * @return nanoseconds a frame held the EDT
+     */
+    public LatencySummary getFrameTime() {
+        return mFrameTime.summarize();
+    }
+
+    /**
+     * @return passes of the sampler drawn by one frame, more than one when the EDT falls behind
+     *         or the frame rate is below the sampling rate
+     */
+    public LatencySummary getBacklog() {
+        return mBacklog.summarize();
+    }
+
+    /**
+     * @return share of one core spent in passes since the sampler was created
+     */
+    public double getSamplingLoad() {
+        return load(mPassNanos);
+    }
+
+    /**
+     * @return share of the EDT spent drawing frames since the sampler was created
+     */
+    public double getEdtLoad() {
+        return load(mFrameNanos);
+    }
+
+    private double load(final LongAdder nanos) {
+        final long elapsed = System.nanoTime() - mCreated;
+        return elapsed <= 0 ? 0 : (double) nanos.sum() / elapsed;
+    }
+
+    /**
+     * Format everything as text, durations in microseconds.
+     *
+     * @return one line per measure, then one per pool, most expensive first
+     */
+    public String format() {
+        final StringBuilder text = new StringBuilder(1024);
+        text.append(String.format("sampling %.3f%% of a core, EDT %.3f%%%n%n",
+                                  getSamplingLoad() * 100,
+                                  getEdtLoad() * 100));
+        text.append(String.format("%-24s %10s %10s %10s %10s %10s%n",
+                                  "\u00b5s",
+                                  "count",
+                                  "p50",
+                                  "p99",
+                                  "p99.9",
+                                  "max"));
+        line(text, "tick interval", getTickInterval(), 1e3);
+        line(text, "tick jitter", getJitter(), 1e3);
+        line(text, "pass", getPassTime(), 1e3);
+        line(text, "frame wait for EDT", getFrameWait(), 1e3);
+        line(text, "frame on EDT", getFrameTime(), 1e3);
+        line(text, "passes per frame", getBacklog(), 1);
+        final List<PoolCost> pools = getPoolCosts();
+        pools.sort((first, second) -> Long.compare(second.mTime.getValueAtPercentile(0.99),
+                                                   first.mTime.getValueAtPercentile(0.99)));
+        if (!pools.isEmpty()) {
+            text.append(String.format("%nsample pool%n"));
+        }
+        for (final PoolCost pool : pools) {
+            line(text, pool.getName(), pool.getTime(), 1e3);
+        }
+        return text.toString();
+    }
+
+    private static void line(final StringBuilder text,
+                             final String name,
+                             final LatencySummary summary,
+                             final double scale) {
+        text.append(String.format("%-24.24s %,10d %,10.1f %,10.1f %,10.1f %,10.1f%n",
+                                  name,
+                                  summary.getCount(),
+                                  summary.getP50() / scale,
+                                  summary.getP99() / scale,
+                                  summary.getP999() / scale,
+                                  summary.getMax() / scale));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sampling %.3f%% EDT %.3f%% pass %s",
+                             getSamplingLoad() * 100,
+                             getEdtLoad() * 100,
+                             getPassTime());
+    }
+}
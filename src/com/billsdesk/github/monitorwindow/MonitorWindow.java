@@ -1,26 +1,62 @@
 package com.billsdesk.github.monitorwindow;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.GraphicsEnvironment;
 import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.Rectangle;
 import java.awt.Window;
-import java.util.Arrays;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
+import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JSlider;
+import javax.swing.JTextArea;
+import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+import com.billsdesk.github.monitorwindow.PoolAutoscaler.Decision;
+
 /**
  * Class for monitoring multiple thread pools. For each a bar graph will display number of threads,
  * queued tasks, and active tasks. Below a title is a count of total tasks submitted and completed.
@@ -52,17 +88,57 @@ public class MonitorWindow
      *            the maximum number of threads to allow in the pool
      * @param name
      *            prefix name for each thread in pool
-     * @return ThreadPoolExecutor
+     * @return executor, see {@link #getNamedMonitoredExecutor(MonitorWindow, int, int, String)}
      */
     public static ThreadPoolExecutor getNamedExecutor(@Nullable final MonitorWindow frame,
                                                       final int corePoolSize,
                                                       final int maximumPoolSize,
                                                       final String name) {
-        final ThreadPoolExecutor result = new ThreadPoolExecutor(corePoolSize,
-                maximumPoolSize,
-                500L,
-                TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>(),
+        return getNamedMonitoredExecutor(frame, corePoolSize, maximumPoolSize, name);
+    }
+
+    /**
+     * A factory for creating a named executor which records the queue wait and run time of each
+     * task.
+     *
+     * @param frame
+     *            if not null then add this monitor to the Monitor Window
+     * @param corePoolSize
+     *            the number of threads to keep in the pool, even if they are idle, unless
+     *            {@code allowCoreThreadTimeOut} is set
+     * @param maximumPoolSize
+     *            the maximum number of threads to allow in the pool
+     * @param name
+     *            prefix name for each thread in pool
+     * @return executor with an unbounded queue, see {@link NamedExecutorBuilder} for the other
+     *         options
+     */
+    public static MonitoredThreadPoolExecutor
+           getNamedMonitoredExecutor(@Nullable final MonitorWindow frame,
+                                     final int corePoolSize,
+                                     final int maximumPoolSize,
+                                     final String name) {
+        return new NamedExecutorBuilder(name).poolSize(corePoolSize, maximumPoolSize)
+                                             .monitor(frame)
+                                             .build();
+    }
+
+    /**
+     * A factory for creating a named scheduled executor.
+     *
+     * @param frame
+     *            if not null then add this monitor to the Monitor Window
+     * @param corePoolSize
+     *            the number of threads to keep in the pool
+     * @param name
+     *            prefix name for each thread in pool
+     * @return executor, monitored with the lateness of its scheduled tasks
+     */
+    public static ScheduledThreadPoolExecutor
+           getNamedScheduledExecutor(@Nullable final MonitorWindow frame,
+                                     final int corePoolSize,
+                                     final String name) {
+        final ScheduledThreadPoolExecutor result = new ScheduledThreadPoolExecutor(corePoolSize,
                 new NamedThreadFactory(name));
         if (frame != null) {
             frame.addMonitor(name, result);
@@ -70,59 +146,172 @@ public class MonitorWindow
         return result;
     }
 
-    private final ThreadPoolExecutor mExecutor;
-    private long                     mUpdateFrequency = 100;
-    private double                   mScale           = 1;
-    private double                   mAlert           = -1;
-    private double                   mWarning         = -1;
+    /**
+     * A factory for creating a named executor which starts a virtual thread per task, or a
+     * platform thread on a JDK without virtual threads. The monitor shows the live threads against
+     * their peak and the start and completion rates.
+     *
+     * @param frame
+     *            if not null then add this monitor to the Monitor Window
+     * @param name
+     *            prefix name for each thread
+     * @return executor
+     */
+    public static ExecutorService getNamedVirtualExecutor(@Nullable final MonitorWindow frame,
+                                                          final String name) {
+        return getNamedVirtualExecutor(frame, name, false);
+    }
+
+    /**
+     * A factory for creating a named executor which starts a virtual thread per task, optionally
+     * showing the time its threads were pinned or blocked. The blocking is streamed from a flight
+     * recording which records every thread of the JVM parked or waiting on a monitor for over
+     * 1ms, not only the threads of this executor. The recording runs while the window is open and
+     * any executor capturing blocking is not yet shutdown.
+     *
+     * @param frame
+     *            if not null then add this monitor to the Monitor Window
+     * @param name
+     *            prefix name for each thread
+     * @param captureBlocking
+     *            true to record the time the threads were pinned or blocked, ignored without a
+     *            frame
+     * @return executor
+     */
+    public static ExecutorService getNamedVirtualExecutor(@Nullable final MonitorWindow frame,
+                                                          final String name,
+                                                          final boolean captureBlocking) {
+        final NamedThreadFactory named = new NamedThreadFactory(name);
+        final ThreadFactory virtual = ThreadPerTaskSource.virtualThreadFactory(named.getPrefix());
+        final CountingThreadFactory threads = new CountingThreadFactory(virtual == null ? named
+                                                                                        : virtual);
+        final ExecutorService result = ThreadPerTaskSource.newThreadPerTaskExecutor(threads);
+        if (frame != null) {
+            final int id = frame.mSampler.register(name, new ThreadPerTaskSource(result, threads));
+            if (captureBlocking) {
+                frame.watchBlocking(id, named.getPrefix(), threads);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A factory for creating a named ForkJoinPool.
+     *
+     * @param frame
+     *            if not null then add this monitor to the Monitor Window
+     * @param parallelism
+     *            the target number of active threads
+     * @param name
+     *            prefix name for each thread in pool
+     * @return pool, monitored with its steals and queued submissions and tasks
+     */
+    public static ForkJoinPool getNamedForkJoinPool(@Nullable final MonitorWindow frame,
+                                                    final int parallelism,
+                                                    final String name) {
+        final NamedThreadFactory names = new NamedThreadFactory(name);
+        final ForkJoinPool result = new ForkJoinPool(parallelism, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                                                            .newThread(pool);
+            thread.setName(names.nextThreadName());
+            return thread;
+        }, null, false);
+        if (frame != null) {
+            frame.addMonitor(name, result);
+        }
+        return result;
+    }
+
+    private final PoolSampler                mSampler;
+    private final PoolSampler.Listener       mListener;
+    @Nullable
+    private final ThreadPoolExecutor         mExecutor;
+    @Nullable
+    private final PoolMXBeans                mMXBeans;
+    @Nullable
+    private final PoolEvents                 mEvents;
+    @Nullable
+    private final StallDetector              mStalls;
+    private final Map<Integer, Monitor>      mMonitors       = new HashMap<>();       // EDT only
+    private final JPanel                     mGrid           = new JPanel(new GridLayout(1, 0));
+    private final JScrollPane                mScroll;
+    private int                              mMaxVisible     = 12;
+    private double                           mScale          = 1;
+    private double                           mAlert          = -1;
+    private double                           mWarning        = -1;
 
-    private final Dimension          mEmptySize       = new Dimension(120, 200);
+    // render pipeline, the latest snapshot of each pool waiting for the next frame
+    private final Map<Integer, PoolSnapshot> mPending        = new LinkedHashMap<>(); // guarded
+    private final List<PoolSnapshot>         mFrame          = new ArrayList<>();     // EDT only
+    private final AtomicBoolean              mFrameScheduled = new AtomicBoolean();
+    private volatile long                    mFrameInterval  = TimeUnit.MILLISECONDS.toNanos(50);
+    private volatile long                    mLastFrame;
+    private volatile long                    mScheduledAt;
+    private int                              mPendingPasses;                          // guarded
+
+    private final Dimension                  mEmptySize      = new Dimension(120, 200);
+    @Nullable
+    private ReplayControls                   mReplay;
+    @Nullable
+    private BlockingEvents                   mBlocking;                               // guarded
+    private final Map<Integer, String>       mWatched        = new HashMap<>();       // guarded
+    @Nullable
+    private volatile PoolAutoscaler          mAutoscaler;
 
     /**
-     * Create the window for the monitor. Forms a horizontal grid of individual monitors.
+     * Create the window for the monitor. Forms a horizontal grid of individual monitors. The window
+     * runs its own {@link PoolSampler} on the "Monitor" pool, registers a
+     * {@link PoolMXBeans.ThreadPoolMXBean} for every monitored pool and emits
+     * {@link PoolEvents.PoolSample} flight recorder events while a recording enables them.
      */
     public MonitorWindow() {
+        this(new PoolSampler(), true);
+    }
+
+    /**
+     * Create the window as one more consumer of a sampler that is run elsewhere, e.g. by
+     * {@link PoolSampler#start()}.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     */
+    public MonitorWindow(final PoolSampler sampler) {
+        this(sampler, false);
+    }
+
+    private MonitorWindow(final PoolSampler sampler, final boolean runSampler) {
         super("Monitor");
         setType(Window.Type.UTILITY);
         setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
         setSize(mEmptySize);
         toRightEdge();
-        getContentPane().setLayout(new GridLayout(1, 0));
-
-        mExecutor = getNamedExecutor(this, 1, 1, "Monitor");
-        mExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    while (true) {
-                        final List<Monitor> components = //
-                                Arrays.asList(getContentPane().getComponents())
-                                      .stream()
-                                      .map(c -> (Monitor) c)
-                                      .collect(Collectors.toList());
-                        components.stream().forEach(m -> {
-                            if (m.isShutdown()) {
-                                getContentPane().remove(m);
-                                getContentPane().invalidate();
-                                getContentPane().repaint();
-                                if (getContentPane().getComponentCount() == 0) {
-                                    setSize(MonitorWindow.this.mEmptySize);
-                                } else {
-                                    pack();
-                                    toRightEdge();
-                                }
-                            } else {
-                                m.update();
-                            }
-                        });
-                        Thread.sleep(mUpdateFrequency);
-                    }
-                } catch (final InterruptedException error) {
-                    // Ignore
-                }
-            }
-        });
+        // only the monitors in the viewport are painted and sampled at the full rate
+        mScroll = new JScrollPane(mGrid,
+                ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        mScroll.setBorder(null);
+        mScroll.getHorizontalScrollBar().setUnitIncrement(mEmptySize.width);
+        mScroll.getViewport().addChangeListener(event -> updateVisibility());
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(mScroll, BorderLayout.CENTER);
 
+        mSampler = sampler;
+        // the sampler never touches Swing, passes are coalesced into frames on the EDT
+        mListener = this::publish;
+        mSampler.addListener(mListener);
+        if (runSampler) {
+            mExecutor = getNamedExecutor(this, 1, 1, "Monitor");
+            mExecutor.submit(mSampler);
+            mMXBeans = new PoolMXBeans(mSampler);
+            mEvents = new PoolEvents(mSampler);
+            mStalls = new StallDetector(mSampler, 30, TimeUnit.SECONDS);
+        } else {
+            // the owner of the sampler decides whether to publish the pools over JMX and JFR
+            mExecutor = null;
+            mMXBeans = null;
+            mEvents = null;
+            mStalls = null;
+        }
     }
 
     /**
@@ -143,25 +332,122 @@ public class MonitorWindow
                                  final double scale,
                                  final double alert,
                                  final double warning) {
-        mUpdateFrequency = updateFrequency;
+        mSampler.setUpdateFrequency(updateFrequency);
         mScale = scale;
         mAlert = alert;
         mWarning = warning;
         return this;
     }
 
+    /**
+     * Limit how often the window is updated, independent of the sampling frequency. Passes of the
+     * sampler that arrive between frames are merged, only the latest snapshot of each pool is
+     * drawn.
+     *
+     * @param framesPerSecond
+     *            maximum frames per second. Default 20.
+     * @return this
+     */
+    public MonitorWindow setFrameRate(final int framesPerSecond) {
+        mFrameInterval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, framesPerSecond);
+        return this;
+    }
+
+    /**
+     * @param count
+     *            number of monitors shown side by side before the window scrolls. Default 12.
+     * @return this
+     */
+    public MonitorWindow setMaxVisible(final int count) {
+        mMaxVisible = Math.max(1, count);
+        return this;
+    }
+
+    /**
+     * Open a window replaying a recording written by {@link SampleRecorder}. The window shows the
+     * recorded pools as they were sampled, with controls to pause, seek and change the speed.
+     *
+     * @param directory
+     *            directory of the recording
+     * @return the window, not yet visible
+     * @throws IOException
+     *             the recording could not be read
+     */
+    public static MonitorWindow replay(final Path directory) throws IOException {
+        final MonitorWindow window = new MonitorWindow(new PoolSampler());
+        final SampleReplay replay = new SampleReplay(new SampleRecording(directory),
+                window.mSampler);
+        window.setTitle("Monitor - " + directory.getFileName());
+        window.mReplay = new ReplayControls(replay);
+        window.getContentPane().add(window.mReplay, BorderLayout.SOUTH);
+        window.resizeToFit();
+        window.mReplay.start();
+        return window;
+    }
+
+    public PoolSampler getSampler() {
+        return mSampler;
+    }
+
+    /**
+     * Open the cost of the monitoring itself, the tick interval and jitter of the sampler, the
+     * time to sample each pool and the time frames wait for and hold the EDT. Also opened from
+     * the popup of the window's own "Monitor" pool.
+     */
+    public void showDiagnostics() {
+        final DiagnosticsDialog dialog = new DiagnosticsDialog(this, mSampler.getDiagnostics());
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    /**
+     * @return detector of stuck tasks, with a limit of 30 seconds unless changed, or null if the
+     *         window does not run its own sampler
+     */
+    @Nullable
+    public StallDetector getStallDetector() {
+        return mStalls;
+    }
+
     public void close() {
         dispose();
     }
 
     @Override
     public void dispose() {
-        mExecutor.shutdownNow();
+        mSampler.removeListener(mListener);
+        if (mMXBeans != null) {
+            mMXBeans.close();
+        }
+        if (mEvents != null) {
+            mEvents.close();
+        }
+        if (mStalls != null) {
+            mStalls.close();
+        }
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+        }
+        if (mReplay != null) {
+            mReplay.stop();
+        }
+        synchronized (this) {
+            if (mBlocking != null) {
+                mBlocking.close();
+                mBlocking = null;
+                mWatched.clear();
+            }
+            if (mAutoscaler != null) {
+                mAutoscaler.close();
+                mAutoscaler = null;
+            }
+        }
         super.dispose();
     }
 
     /**
-     * Add new monitor.
+     * Add new monitor. The monitor is displayed, and registered with JMX when the window runs its
+     * own sampler, after the next sample.
      *
      * @param name
      *            name to display
@@ -169,15 +455,254 @@ public class MonitorWindow
      *            ThreadPoolExecutor to monitor
      */
     public void addMonitor(final String name, final ThreadPoolExecutor executor) {
-        if (Arrays.asList(getContentPane().getComponents())
-                  .stream()
-                  .filter(c -> ((Monitor) c).sameExecutor(executor))
-                  .count() == 0) {
-            final Monitor monitor = new Monitor(name, executor, mScale, mAlert, mWarning);
-            monitor.setPreferredSize(mEmptySize);
-            getContentPane().add(monitor);
-            pack();
-            toRightEdge();
+        mSampler.register(name, executor);
+    }
+
+    /**
+     * Add new monitor of a ForkJoinPool, e.g. {@link ForkJoinPool#commonPool()}.
+     *
+     * @param name
+     *            name to display
+     * @param pool
+     *            ForkJoinPool to monitor
+     */
+    public void addMonitor(final String name, final ForkJoinPool pool) {
+        mSampler.register(name, pool);
+    }
+
+    /**
+     * Add new monitor of any kind of pool.
+     *
+     * @param name
+     *            name to display
+     * @param source
+     *            source reading the pool
+     */
+    public void addMonitor(final String name, final PoolSource source) {
+        mSampler.register(name, source);
+    }
+
+    /**
+     * Add new monitor of a pool whose core size is adjusted by a {@link PoolAutoscaler} on the
+     * window's sampler. Every decision is shown above the bars of the pool, the recent ones in its
+     * tooltip.
+     *
+     * @param name
+     *            name to display
+     * @param executor
+     *            ThreadPoolExecutor to monitor and resize
+     * @param policy
+     *            bounds and tuning of the core pool size
+     */
+    public void autoscale(final String name,
+                          final ThreadPoolExecutor executor,
+                          final PoolAutoscaler.Policy policy) {
+        final int id = mSampler.register(name, executor);
+        synchronized (this) {
+            if (mAutoscaler == null) {
+                mAutoscaler = new PoolAutoscaler(mSampler);
+            }
+            mAutoscaler.manage(id, policy);
+        }
+    }
+
+    /**
+     * Count the time threads are pinned or blocked, streamed from the flight recorder while the
+     * window is open and the pool is not shutdown.
+     *
+     * @param id
+     *            id of the pool
+     * @param prefix
+     *            prefix of the names of the threads
+     * @param threads
+     *            factory of the threads
+     */
+    private synchronized void watchBlocking(final int id,
+                                            final String prefix,
+                                            final CountingThreadFactory threads) {
+        if (mBlocking == null) {
+            mBlocking = new BlockingEvents(Duration.ofMillis(1));
+            mBlocking.start();
+        }
+        mBlocking.watch(prefix, threads);
+        mWatched.put(id, prefix);
+    }
+
+    /**
+     * Stop counting the blocking of a pool which has been shutdown, and stop the recording once no
+     * pool is watched.
+     *
+     * @param id
+     *            id of the pool
+     */
+    private synchronized void unwatchBlocking(final int id) {
+        final String prefix = mWatched.remove(id);
+        if (prefix == null || mBlocking == null) {
+            return;
+        }
+        mBlocking.unwatch(prefix);
+        if (mWatched.isEmpty()) {
+            mBlocking.close();
+            mBlocking = null;
+        }
+    }
+
+    /**
+     * Merge a pass of the sampler into the pending frame and schedule the frame on the EDT unless
+     * one is already scheduled. A pass which would exceed the frame rate is drawn by a trailing
+     * frame once the frame interval has passed, the next pass may be seconds away or never come.
+     * Runs on the sampling thread.
+     *
+     * @param snapshots
+     *            snapshots of every pool
+     */
+    private void publish(final List<PoolSnapshot> snapshots) {
+        synchronized (mPending) {
+            for (final PoolSnapshot snapshot : snapshots) {
+                mPending.put(snapshot.getId(), snapshot);
+            }
+            mPendingPasses++;
+        }
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                unwatchBlocking(snapshot.getId());
+            }
+        }
+        if (mFrameScheduled.compareAndSet(false, true)) {
+            final long now = System.nanoTime();
+            final long wait = mLastFrame + mFrameInterval - now;
+            if (wait <= 0) {
+                mScheduledAt = now;
+                SwingUtilities.invokeLater(this::frame);
+            } else {
+                mScheduledAt = now + wait;
+                final int delay = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+                final Timer trailing = new Timer(delay, event -> frame());
+                trailing.setRepeats(false);
+                trailing.start();
+            }
+        }
+    }
+
+    /**
+     * Draw everything pending with one pass over the monitors. Runs on the EDT.
+     */
+    private void frame() {
+        final long start = System.nanoTime();
+        mLastFrame = start;
+        mFrameScheduled.set(false);
+        final int passes;
+        synchronized (mPending) {
+            mFrame.addAll(mPending.values());
+            mPending.clear();
+            passes = mPendingPasses;
+            mPendingPasses = 0;
+        }
+        update(mFrame);
+        mFrame.clear();
+        if (mReplay != null) {
+            mReplay.update();
+        }
+        // the layout and painting the frame caused come later, only its own work is counted
+        mSampler.getDiagnostics().framed(start - mScheduledAt, System.nanoTime() - start, passes);
+    }
+
+    /**
+     * Apply the snapshots of a frame. Runs on the EDT.
+     *
+     * @param snapshots
+     *            snapshots of every pool
+     */
+    private void update(final List<PoolSnapshot> snapshots) {
+        boolean layout = false;
+        for (final PoolSnapshot snapshot : snapshots) {
+            Monitor monitor = mMonitors.get(snapshot.getId());
+            if (snapshot.isShutdown()) {
+                if (monitor != null) {
+                    mMonitors.remove(snapshot.getId());
+                    mGrid.remove(monitor);
+                    layout = true;
+                }
+            } else {
+                if (monitor == null) {
+                    final Executor executor = mSampler.getExecutor(snapshot.getId());
+                    monitor = new Monitor(snapshot,
+                            mSampler.getHistory(snapshot.getId()),
+                            executor instanceof MonitoredThreadPoolExecutor
+                                ? ((MonitoredThreadPoolExecutor) executor).getTaskTypes()
+                                : null,
+                            mScale,
+                            mAlert,
+                            mWarning);
+                    monitor.setPreferredSize(mEmptySize);
+                    // thresholds set on the sampler win, otherwise share the ones from options()
+                    final ThresholdData threshold = mSampler.getThreshold(snapshot.getId());
+                    if (threshold == null) {
+                        mSampler.setThreshold(snapshot.getId(), monitor.getThreshold());
+                    } else {
+                        monitor.setThreshold(threshold);
+                    }
+                    if (executor != null && executor == mExecutor) {
+                        final JMenuItem diagnostics = new JMenuItem("Diagnostics...");
+                        diagnostics.addActionListener(event -> showDiagnostics());
+                        monitor.addMenuItem(diagnostics);
+                    }
+                    mMonitors.put(snapshot.getId(), monitor);
+                    mGrid.add(monitor);
+                    layout = true;
+                }
+                monitor.setRates(mSampler.getRates(snapshot.getId()));
+                monitor.setSnapshot(snapshot);
+                final PoolAutoscaler autoscaler = mAutoscaler;
+                if (autoscaler != null) {
+                    monitor.setDecisions(autoscaler.getDecisions(snapshot.getId()));
+                }
+                if (mStalls != null) {
+                    monitor.setReport(mStalls.getReport(snapshot.getId()));
+                }
+            }
+        }
+        if (layout) {
+            resizeToFit();
+        }
+    }
+
+    /**
+     * Size the window for the monitors up to the maximum visible, more are reached by scrolling.
+     * Avoids {@link #pack()} which would lay out every monitor.
+     */
+    private void resizeToFit() {
+        mGrid.revalidate();
+        mGrid.repaint();
+        final int count = mGrid.getComponentCount();
+        final Dimension controls = mReplay == null ? new Dimension() : mReplay.getPreferredSize();
+        if (count == 0 && mReplay == null) {
+            setSize(mEmptySize);
+        } else {
+            final Insets insets = getInsets();
+            final int scrollBar = count > mMaxVisible ? mScroll.getHorizontalScrollBar()
+                                                               .getPreferredSize().height
+                                                      : 0;
+            setSize(Math.max(Math.min(count, mMaxVisible) * mEmptySize.width, controls.width)
+                    + insets.left
+                    + insets.right,
+                    mEmptySize.height + scrollBar + controls.height + insets.top + insets.bottom);
+        }
+        toRightEdge();
+        updateVisibility();
+    }
+
+    /**
+     * Only monitors in the viewport are updated, the others are sampled at a reduced rate and
+     * catch up with their latest snapshot when scrolled into view. Runs on the EDT.
+     */
+    private void updateVisibility() {
+        final Rectangle view = mScroll.getViewport().getViewRect();
+        for (final Monitor monitor : mMonitors.values()) {
+            final boolean visible = monitor.getWidth() == 0 || monitor.getBounds().intersects(view);
+            if (monitor.setInView(visible)) {
+                mSampler.setReducedRate(monitor.mId, !visible);
+            }
         }
     }
 
@@ -190,6 +715,30 @@ public class MonitorWindow
                     getMenuBarHeight());
     }
 
+    /**
+     * A labelled rate of a {@link Monitor} of a total from the extras of a pool.
+     */
+    private static final class Readout {
+
+        private final String mKey;
+        private final String mLabel;
+        private final double mUnit;
+        private final String mFormat;
+        private long         mTotal;
+
+        private Readout(final String key,
+                        final String label,
+                        final double unit,
+                        final String format,
+                        final long total) {
+            mKey = key;
+            mLabel = label;
+            mUnit = unit;
+            mFormat = format;
+            mTotal = total;
+        }
+    }
+
     public static int getMenuBarHeight() {
         return 22;
     }
@@ -199,64 +748,666 @@ public class MonitorWindow
             JPanel {
 
         private static final long serialVersionUID = 1L;
+        // rates shown as text are measured over at least this long so they do not flicker
+        private static final long READOUT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
 
         private enum Metric {
             THREADS, QUEUED, ACTIVE
         };
 
-        private final String             mName;
-        private final ThreadPoolExecutor mExecutor;
-        private final JStatusComponent   mStatus;
-        private final JLabel             mCounts;
+        private final int              mId;
+        private final String           mName;
+        private final double           mScale;
+        private final JStatusComponent mStatus;
+        // thread per task pools only: starts and completions per second on an axis of their own
+        @Nullable
+        private final JStatusComponent mRateStatus;
+        private final int              mActiveBar;
+        private final JLabel           mCounts;
+        private final JLabel           mLatency;
+        private final JLabel           mExtras;
+        private final JLabel           mReadout;
+        private final JLabel           mDecision;
+        private final JLabel           mStuck;
+        private final JMenuItem        mShowStuck;
+        private final JPopupMenu       mMenu;
+        private final List<Readout>    mReadouts       = new ArrayList<>(4);
+        private long                   mTaskCount      = -1;
+        private long                   mCompletedCount = -1;
+        @Nullable
+        private LatencySummary         mQueueWaitShown;
+        @Nullable
+        private LatencySummary         mRunTimeShown;
+        private boolean                mInView         = true;
+        @Nullable
+        private PoolSnapshot           mSnapshot;
+        private Map<String, Long>      mExtraValues    = Collections.emptyMap();
+        private long                   mReadoutTime;
+        @Nullable
+        private PoolRates              mFlow;
+        @Nullable
+        private PoolRates              mFlowShown;
+        // identity of the list shown, the autoscaler replaces it on each decision
+        private List<Decision>         mDecisions      = Collections.emptyList();
+        @Nullable
+        private StallDetector.Report   mReport;
 
-        public Monitor(final String name,
-                       final ThreadPoolExecutor executor,
+        /**
+         * Create the monitor of a pool.
+         *
+         * @param first
+         *            first snapshot of the pool
+         * @param history
+         *            history of the pool or null if not kept
+         * @param types
+         *            tasks of the pool by type or null if the pool does not count them
+         * @param scale
+         *            scale of the core pool size for the axis max
+         * @param alert
+         *            percentage of the axis max to be displayed red or -1
+         * @param warning
+         *            percentage of the axis max to be displayed yellow or -1
+         */
+        public Monitor(final PoolSnapshot first,
+                       @Nullable final PoolHistory history,
+                       @Nullable final TaskTypes types,
                        final double scale,
                        final double alert,
                        final double warning) {
-            mName = name;
-            mExecutor = executor;
+            mId = first.getId();
+            mName = first.getName();
+            mScale = scale;
             mStatus = new JStatusComponent(true, mName);
             mStatus.setGridLines(20);
             mStatus.setAdjustable(false);
-            mStatus.setAxisMax(mExecutor.getCorePoolSize() * scale);
-            mStatus.addValue(mExecutor.getCorePoolSize());
-            mStatus.addValue(mExecutor.getQueue().size());
-            mStatus.addValue(mExecutor.getActiveCount());
+            mStatus.setAxisMax(axisMax(first));
+            mStatus.addValue(first.getCorePoolSize());
+            if (ThreadPerTaskSource.isThreadPerTask(first)) {
+                // nothing is ever queued, the live threads follow the peak, beside the rates
+                mActiveBar = 1;
+                mRateStatus = new JStatusComponent(true, "/s");
+                mRateStatus.setAxisMax(100);
+                mRateStatus.addValue(0);
+                mRateStatus.addValue(0);
+                mRateStatus.setToolTipText("Threads started and finished per second");
+            } else {
+                mActiveBar = Metric.ACTIVE.ordinal();
+                mRateStatus = null;
+                mStatus.addValue(0);
+            }
+            mStatus.addValue(0);
+            // the rates of the totals the pool reports have no common scale with the bars:
+            // rejected and caller-runs per second, CPU cores used and MB allocated per second
+            addReadout(first, ThreadPoolSource.REJECTED, "rejected", 1, "%,.1f/s");
+            addReadout(first, ThreadPoolSource.CALLER_RUNS, "caller runs", 1, "%,.1f/s");
+            addReadout(first, ThreadPoolSource.CPU, "cpu", 1e9, "%.2f cores");
+            addReadout(first, ThreadPoolSource.ALLOCATED, "alloc", 1e6, "%,.1f MB/s");
+            mReadoutTime = first.getNanoTime();
             if (alert != -1) {
                 mStatus.getThreshold().alert().setValue(mStatus.getAxisMax() * alert);
             }
             if (warning != -1) {
                 mStatus.getThreshold().warning().setValue(mStatus.getAxisMax() * warning);
             }
+            if (history != null && mRateStatus != null) {
+                mStatus.setHistory(history.get(PoolHistory.Series.THREADS));
+            } else if (history != null) {
+                mStatus.setHistory(history.get(PoolHistory.Series.THREADS),
+                                   history.get(PoolHistory.Series.QUEUED),
+                                   history.get(PoolHistory.Series.ACTIVE));
+            }
+            final JPopupMenu menu = new JPopupMenu();
+            mMenu = menu;
+            final JCheckBoxMenuItem showHistory = new JCheckBoxMenuItem("History");
+            showHistory.setEnabled(history != null);
+            showHistory.addActionListener(event -> {
+                mStatus.setHistoryVisible(showHistory.isSelected());
+            });
+            menu.add(showHistory);
+            mShowStuck = new JMenuItem("Stuck Threads...");
+            mShowStuck.setEnabled(false);
+            mShowStuck.addActionListener(event -> showReport());
+            menu.add(mShowStuck);
+            final JMenuItem showTypes = new JMenuItem("Task Types...");
+            showTypes.setEnabled(types != null);
+            showTypes.addActionListener(event -> {
+                final Window owner = SwingUtilities.getWindowAncestor(this);
+                final TaskTypeTable table = new TaskTypeTable(owner, mName, types);
+                table.setLocationRelativeTo(this);
+                table.setVisible(true);
+            });
+            menu.add(showTypes);
+            mStatus.setComponentPopupMenu(menu);
+            mStatus.addActionListener(event -> menu.show(mStatus, 0, mStatus.getHeight()));
             mCounts = new JLabel();
             mCounts.setHorizontalAlignment(SwingConstants.CENTER);
             mCounts.setFont(mStatus.getFont());
+            mLatency = new JLabel();
+            mLatency.setHorizontalAlignment(SwingConstants.CENTER);
+            mLatency.setFont(mStatus.getFont().deriveFont(Font.PLAIN, 10f));
+            mLatency.setToolTipText("Queue wait (W) and run time (R): p50/p99/p99.9/max");
+            mLatency.setVisible(false);
+            mExtras = new JLabel();
+            mExtras.setHorizontalAlignment(SwingConstants.CENTER);
+            mExtras.setFont(mLatency.getFont());
+            mExtras.setVisible(false);
+            mReadout = new JLabel();
+            mReadout.setHorizontalAlignment(SwingConstants.CENTER);
+            mReadout.setFont(mLatency.getFont());
+            mReadout.setToolTipText("Per second, averaged over at least a second");
+            mReadout.setVisible(false);
+            final JPanel bottom = new JPanel(new BorderLayout());
+            bottom.add(mExtras, BorderLayout.NORTH);
+            bottom.add(mReadout, BorderLayout.SOUTH);
+            final JPanel south = new JPanel(new BorderLayout());
+            south.add(mCounts, BorderLayout.NORTH);
+            south.add(mLatency, BorderLayout.CENTER);
+            south.add(bottom, BorderLayout.SOUTH);
+            mDecision = new JLabel();
+            mDecision.setHorizontalAlignment(SwingConstants.CENTER);
+            mDecision.setFont(mLatency.getFont());
+            mDecision.setVisible(false);
+            mStuck = new JLabel();
+            mStuck.setHorizontalAlignment(SwingConstants.CENTER);
+            mStuck.setFont(mStatus.getFont());
+            mStuck.setForeground(Color.RED);
+            mStuck.setToolTipText("Click for the stacks of the threads");
+            mStuck.setVisible(false);
+            mStuck.addMouseListener(new MouseAdapter() {
+
+                @Override
+                public void mouseClicked(final MouseEvent event) {
+                    showReport();
+                }
+            });
+            final JPanel north = new JPanel(new BorderLayout());
+            north.add(mStuck, BorderLayout.NORTH);
+            north.add(mDecision, BorderLayout.SOUTH);
             setLayout(new BorderLayout());
-            add(mStatus, BorderLayout.CENTER);
-            add(mCounts, BorderLayout.SOUTH);
+            add(north, BorderLayout.NORTH);
+            if (mRateStatus == null) {
+                add(mStatus, BorderLayout.CENTER);
+            } else {
+                final JPanel bars = new JPanel(new GridLayout(1, 2));
+                bars.add(mStatus);
+                bars.add(mRateStatus);
+                add(bars, BorderLayout.CENTER);
+            }
+            add(south, BorderLayout.SOUTH);
         }
 
-        public void update() {
-            mStatus.setValueAt(mExecutor.getCorePoolSize(), Metric.THREADS.ordinal());
-            mStatus.setValueAt(mExecutor.getQueue().size(), Metric.QUEUED.ordinal());
-            mStatus.setValueAt(mExecutor.getActiveCount(), Metric.ACTIVE.ordinal());
-            mCounts.setText(String.format("T: %,d C: %,d",
-                                          mExecutor.getTaskCount(),
-                                          mExecutor.getCompletedTaskCount()));
+        /**
+         * @param item
+         *            item added to the end of the popup menu
+         */
+        public void addMenuItem(final JMenuItem item) {
+            mMenu.add(item);
         }
 
-        public boolean isShutdown() {
-            return mExecutor.isShutdown() || mExecutor.isTerminated();
+        public ThresholdData getThreshold() {
+            return mStatus.getThreshold();
+        }
+
+        public void setThreshold(final ThresholdData threshold) {
+            mStatus.setThreshold(threshold);
+        }
+
+        /**
+         * Keep the latest snapshot, it is only shown while the monitor is in view.
+         *
+         * @param snapshot
+         *            latest snapshot of the pool
+         */
+        public void setSnapshot(final PoolSnapshot snapshot) {
+            mSnapshot = snapshot;
+            if (mInView) {
+                update(snapshot);
+            }
+        }
+
+        /**
+         * @param inView
+         *            true if the monitor is in the viewport
+         * @return true if changed
+         */
+        public boolean setInView(final boolean inView) {
+            if (mInView == inView) {
+                return false;
+            }
+            mInView = inView;
+            if (mInView && mSnapshot != null) {
+                update(mSnapshot);
+            }
+            return true;
+        }
+
+        /**
+         * Show a snapshot, components are only changed if their value moved.
+         *
+         * @param snapshot
+         *            latest snapshot of the pool
+         */
+        public void update(final PoolSnapshot snapshot) {
+            // the core size of a resized pool or the peak of a thread per task pool grows
+            final double axis = axisMax(snapshot);
+            if (axis > mStatus.getAxisMax()) {
+                mStatus.setAxisMax(axis);
+            }
+            if (!mReadouts.isEmpty()
+                && snapshot.getNanoTime() - mReadoutTime >= READOUT_INTERVAL) {
+                final double seconds = (snapshot.getNanoTime() - mReadoutTime) / 1e9;
+                mReadoutTime = snapshot.getNanoTime();
+                mReadout.setText(formatReadouts(snapshot.getExtras(), seconds));
+                mReadout.setVisible(true);
+            }
+            mStatus.setValueAt(snapshot.getCorePoolSize(), Metric.THREADS.ordinal());
+            if (mRateStatus == null) {
+                mStatus.setValueAt(snapshot.getQueued(), Metric.QUEUED.ordinal());
+            } else if (mFlow != null) {
+                // windowed rates, the starts between two samples milliseconds apart are noise
+                mRateStatus.setValueAt(mFlow.getArrivalRate(), 0);
+                mRateStatus.setValueAt(mFlow.getCompletionRate(), 1);
+            }
+            mStatus.setValueAt(snapshot.getActive(), mActiveBar);
+            if (mStatus.isHistoryVisible()) {
+                // the sparkline scrolls even when the latest values are unchanged
+                mStatus.repaint();
+            }
+            if (snapshot.getTaskCount() != mTaskCount
+                || snapshot.getCompletedCount() != mCompletedCount
+                || mFlow != mFlowShown) {
+                mTaskCount = snapshot.getTaskCount();
+                mCompletedCount = snapshot.getCompletedCount();
+                mFlowShown = mFlow;
+                final String totals = String.format("T: %,d C: %,d", mTaskCount, mCompletedCount);
+                // the totals only grow, the rates tell whether the pool keeps up
+                mCounts.setText(mFlowShown == null ? totals : formatFlow(mFlowShown));
+                mCounts.setToolTipText(mFlowShown == null
+                    ? null
+                    : String.format("%s, rates over %d s", totals, mFlowShown.getWindow() / 1000));
+                mCounts.setForeground(mFlowShown == null || mFlowShown.isKeepingUp()
+                    ? mLatency.getForeground()
+                    : Color.RED);
+            }
+            // the percentiles change when a task starts or finishes and as the window moves on
+            if (snapshot.getQueueWait() != null && snapshot.getRunTime() != null
+                && (!snapshot.getQueueWait().equals(mQueueWaitShown)
+                    || !snapshot.getRunTime().equals(mRunTimeShown))) {
+                mQueueWaitShown = snapshot.getQueueWait();
+                mRunTimeShown = snapshot.getRunTime();
+                mLatency.setText(String.format("<html>W %s<br>R %s</html>",
+                                               formatLatency(snapshot.getQueueWait()),
+                                               formatLatency(snapshot.getRunTime())));
+                mLatency.setVisible(true);
+            }
+            if (!snapshot.getExtras().equals(mExtraValues)) {
+                mExtraValues = snapshot.getExtras();
+                final String extras = formatExtras(mExtraValues);
+                mExtras.setText(extras);
+                mExtras.setVisible(extras != null);
+                // a pool which does not count tasks shows its own metrics instead
+                mCounts.setVisible(mExtraValues.isEmpty()
+                                   || mTaskCount != 0
+                                   || mCompletedCount != 0);
+            }
+        }
+
+        /**
+         * Keep the latest rates, shown with the next snapshot.
+         *
+         * @param rates
+         *            rates of the pool or null until it has been sampled twice
+         */
+        public void setRates(@Nullable final PoolRates rates) {
+            mFlow = rates;
+        }
+
+        /**
+         * Show the latest decision of the autoscaler, colored by its direction, and the recent
+         * ones in the tooltip.
+         *
+         * @param decisions
+         *            decisions of the pool, oldest first, never changed once returned
+         */
+        public void setDecisions(final List<Decision> decisions) {
+            if (decisions == mDecisions) {
+                return;
+            }
+            mDecisions = decisions;
+            mDecision.setVisible(!decisions.isEmpty());
+            if (decisions.isEmpty()) {
+                return;
+            }
+            final Decision last = decisions.get(decisions.size() - 1);
+            mDecision.setText(last.toString());
+            if (last.isHeld()) {
+                mDecision.setForeground(Color.ORANGE.darker());
+            } else {
+                mDecision.setForeground(last.getTo() > last.getFrom() ? Color.GREEN.darker()
+                                                                      : Color.BLUE);
+            }
+            final StringBuilder tip = new StringBuilder("<html>");
+            for (int i = decisions.size() - 1; i >= 0; i--) {
+                final Decision decision = decisions.get(i);
+                final Instant time = Instant.ofEpochMilli(decision.getTimestamp());
+                tip.append(ReplayControls.TIME.format(time))
+                   .append(' ')
+                   .append(decision)
+                   .append("<br>");
+            }
+            mDecision.setToolTipText(tip.append("</html>").toString());
+        }
+
+        /**
+         * Add a labelled rate of a total if the pool reports it.
+         *
+         * @param first
+         *            first snapshot of the pool
+         * @param key
+         *            name of the total in the extras
+         * @param label
+         *            label shown before the rate
+         * @param unit
+         *            the total divided by unit per second is shown
+         * @param format
+         *            format of the rate
+         */
+        private void addReadout(final PoolSnapshot first,
+                                final String key,
+                                final String label,
+                                final double unit,
+                                final String format) {
+            final Long total = first.getExtras().get(key);
+            if (total != null) {
+                mReadouts.add(new Readout(key, label, unit, format, total));
+            }
+        }
+
+        /**
+         * Format the rates of the totals with a readout, two per line, and keep the totals.
+         *
+         * @param extras
+         *            metrics by name
+         * @param seconds
+         *            time since the totals kept
+         * @return e.g. "cpu 1.25 cores alloc 48.0 MB/s"
+         */
+        private String formatReadouts(final Map<String, Long> extras, final double seconds) {
+            final StringBuilder text = new StringBuilder("<html>");
+            int count = 0;
+            for (final Readout readout : mReadouts) {
+                final Long total = extras.get(readout.mKey);
+                if (total == null) {
+                    continue;
+                }
+                final double perSecond = (total - readout.mTotal) / readout.mUnit / seconds;
+                readout.mTotal = total;
+                if (count > 0) {
+                    text.append(count % 2 == 0 ? "<br>" : " ");
+                }
+                text.append(readout.mLabel)
+                    .append(' ')
+                    .append(String.format(readout.mFormat, Math.max(0, perSecond)));
+                count++;
+            }
+            return text.append("</html>").toString();
+        }
+
+        /**
+         * Flag the pool while a task is stuck or the pool is stalled.
+         *
+         * @param report
+         *            latest capture of the stall detector or null if nothing is stuck
+         */
+        public void setReport(@Nullable final StallDetector.Report report) {
+            if (report == mReport) {
+                return;
+            }
+            mReport = report;
+            mStuck.setVisible(report != null);
+            mShowStuck.setEnabled(report != null);
+            if (report != null) {
+                mStuck.setText(report.isStalled() ? "STALLED"
+                                                  : String.format("STUCK %d",
+                                                                  report.getStuck().size()));
+            }
+        }
+
+        /**
+         * Open the stacks and lock owners of the stuck threads in a window of their own.
+         */
+        private void showReport() {
+            final StallDetector.Report report = mReport;
+            if (report == null) {
+                return;
+            }
+            final JTextArea text = new JTextArea(report.format(), 30, 100);
+            text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            text.setEditable(false);
+            text.setCaretPosition(0);
+            final Instant captured = Instant.ofEpochMilli(report.getTimestamp());
+            final JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this),
+                    mName + " - " + ReplayControls.TIME.format(captured));
+            dialog.getContentPane().add(new JScrollPane(text));
+            dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+            dialog.pack();
+            dialog.setLocationRelativeTo(this);
+            dialog.setVisible(true);
+        }
+
+        /**
+         * The axis covers the capacity of a bounded queue, otherwise the scaled core size.
+         *
+         * @param snapshot
+         *            snapshot of the pool
+         * @return axis max
+         */
+        private double axisMax(final PoolSnapshot snapshot) {
+            final Long capacity = snapshot.getExtras().get(ThreadPoolSource.CAPACITY);
+            final double core = snapshot.getCorePoolSize() * mScale;
+            return capacity == null ? core : Math.max(core, capacity);
+        }
+
+        /**
+         * Format the metrics particular to the type of pool, two per line, but for the totals
+         * shown as a readout.
+         *
+         * @param extras
+         *            metrics by name
+         * @return e.g. "steals 1,024 submissions 3" or null if there is nothing to show
+         */
+        @Nullable
+        private String formatExtras(final Map<String, Long> extras) {
+            final StringBuilder text = new StringBuilder("<html>");
+            int count = 0;
+            for (final Map.Entry<String, Long> extra : extras.entrySet()) {
+                final String name = extra.getKey();
+                if (isReadout(name)) {
+                    continue;
+                }
+                if (count > 0) {
+                    text.append(count % 2 == 0 ? "<br>" : " ");
+                }
+                if (name.endsWith(PoolSnapshot.NANOS)) {
+                    text.append(name, 0, name.length() - PoolSnapshot.NANOS.length())
+                        .append(' ')
+                        .append(formatValue(extra.getValue() / 1e6))
+                        .append(" ms");
+                } else {
+                    text.append(name).append(' ').append(String.format("%,d", extra.getValue()));
+                }
+                count++;
+            }
+            return count == 0 ? null : text.append("</html>").toString();
+        }
+
+        private boolean isReadout(final String key) {
+            for (final Readout readout : mReadouts) {
+                if (readout.mKey.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Format percentiles compactly in the unit suited to the max.
+         *
+         * @param summary
+         *            percentiles in nanoseconds
+         * @return e.g. "0.4/12/40/95 ms"
+         */
+        private static String formatLatency(final LatencySummary summary) {
+            final double scale;
+            final String unit;
+            if (summary.getMax() >= 10_000_000_000L) {
+                scale = 1e9;
+                unit = "s";
+            } else if (summary.getMax() >= 1_000_000L) {
+                scale = 1e6;
+                unit = "ms";
+            } else {
+                scale = 1e3;
+                unit = "\u00b5s";
+            }
+            return String.format("%s/%s/%s/%s %s",
+                                 formatValue(summary.getP50() / scale),
+                                 formatValue(summary.getP99() / scale),
+                                 formatValue(summary.getP999() / scale),
+                                 formatValue(summary.getMax() / scale),
+                                 unit);
+        }
+
+        /**
+         * Format the rates of a pool, the estimated wait and time to drain only while tasks are
+         * queued.
+         *
+         * @param rates
+         *            rates of the pool
+         * @return e.g. "In 1,204/s Out 1,198/s 87%"
+         */
+        private static String formatFlow(final PoolRates rates) {
+            final String flow = String.format("In %,.0f/s Out %,.0f/s %.0f%%",
+                                              rates.getArrivalRate(),
+                                              rates.getCompletionRate(),
+                                              rates.getUtilization() * 100);
+            if (rates.getQueued() == 0) {
+                return flow;
+            }
+            return String.format("<html>%s<br>Wait ~%s Drain %s</html>",
+                                 flow,
+                                 formatDuration(rates.getEstimatedWait()),
+                                 formatDuration(rates.getTimeToDrain()));
+        }
+
+        /**
+         * @param nanos
+         *            duration, infinite if it never ends
+         * @return duration in the unit suited to it
+         */
+        private static String formatDuration(final double nanos) {
+            if (Double.isInfinite(nanos)) {
+                return "\u221e";
+            } else if (nanos >= 1e9) {
+                return formatValue(nanos / 1e9) + " s";
+            } else if (nanos >= 1e6) {
+                return formatValue(nanos / 1e6) + " ms";
+            }
+            return formatValue(nanos / 1e3) + " \u00b5s";
+        }
+
+        private static String formatValue(final double value) {
+            return String.format(value < 10 ? "%.1f" : "%.0f", value);
         }
 
         @Override
         public String toString() {
             return String.format("%s: %s", mName, mStatus.toString());
         }
+    }
+
+    /**
+     * Pause, seek and speed controls of a replay. The position follows the replay once per frame.
+     */
+    private static class ReplayControls
+        extends
+            JPanel {
+
+        private static final long              serialVersionUID = 1L;
+        private static final int               SEEK_STEPS       = 1000;
+        private static final String[]          SPEEDS           = {
+                                                                   "0.25x", "1x", "2x", "5x",
+                                                                   "10x", "60x"
+        };
+        private static final DateTimeFormatter TIME             = DateTimeFormatter
+            .ofPattern("HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
 
-        public boolean sameExecutor(final ThreadPoolExecutor executor) {
-            return mExecutor == executor;
+        private final transient SampleReplay   mReplay;
+        private final transient Thread         mThread;
+        private final JButton                  mPlay            = new JButton("Pause");
+        private final JSlider                  mSeek            = new JSlider(0, SEEK_STEPS, 0);
+        private final JComboBox<String>        mSpeed           = new JComboBox<>(SPEEDS);
+        private final JLabel                   mTime            = new JLabel();
+        private boolean                        mUpdating;
+
+        private ReplayControls(final SampleReplay replay) {
+            super(new BorderLayout());
+            mReplay = replay;
+            mThread = new Thread(replay, "Replay");
+            mThread.setDaemon(true);
+            final Font small = mTime.getFont().deriveFont(10f);
+            mPlay.setFont(small);
+            mPlay.setMargin(new Insets(0, 2, 0, 2));
+            mPlay.addActionListener(event -> {
+                mReplay.setPaused(!mReplay.isPaused());
+                mPlay.setText(mReplay.isPaused() ? "Play" : "Pause");
+            });
+            mSpeed.setFont(small);
+            mSpeed.setSelectedItem("1x");
+            mSpeed.addActionListener(event -> {
+                final String speed = (String) mSpeed.getSelectedItem();
+                mReplay.setSpeed(Double.parseDouble(speed.substring(0, speed.length() - 1)));
+            });
+            mSeek.addChangeListener(event -> {
+                if (!mUpdating && !mSeek.getValueIsAdjusting()) {
+                    final long start = mReplay.getStartTime();
+                    final long range = mReplay.getEndTime() - start;
+                    mReplay.seek(start + range * mSeek.getValue() / SEEK_STEPS);
+                }
+            });
+            mTime.setFont(small);
+            mTime.setHorizontalAlignment(SwingConstants.CENTER);
+            final JPanel buttons = new JPanel(new BorderLayout());
+            buttons.add(mPlay, BorderLayout.WEST);
+            buttons.add(mTime, BorderLayout.CENTER);
+            buttons.add(mSpeed, BorderLayout.EAST);
+            add(mSeek, BorderLayout.NORTH);
+            add(buttons, BorderLayout.SOUTH);
+            update();
+        }
+
+        private void start() {
+            mThread.start();
+        }
+
+        private void stop() {
+            mThread.interrupt();
+        }
+
+        /**
+         * Move the slider to the time of the replay. Runs on the EDT.
+         */
+        private void update() {
+            final long start = mReplay.getStartTime();
+            final long range = Math.max(1, mReplay.getEndTime() - start);
+            final long time = mReplay.getTime();
+            if (!mSeek.getValueIsAdjusting()) {
+                mUpdating = true;
+                mSeek.setValue((int) ((time - start) * SEEK_STEPS / range));
+                mUpdating = false;
+            }
+            mTime.setText(TIME.format(Instant.ofEpochMilli(time)));
         }
     }
 
@@ -269,20 +1420,48 @@ public class MonitorWindow
         private final transient ThreadGroup   group;
         private final transient AtomicInteger threadNumber = new AtomicInteger(1);
         private final transient String        namePrefix;
+        private final transient String        poolName;
+        private final transient ThreadUsage   usage        = new ThreadUsage();
 
         public NamedThreadFactory(final String name) {
             final SecurityManager security = System.getSecurityManager();
             group = (security == null) ? Thread.currentThread().getThreadGroup() // NOPMD
                                        : security.getThreadGroup();
             namePrefix = name + POOL_NUMBER.getAndIncrement() + '-';
+            poolName = name;
+        }
+
+        /**
+         * @return prefix of the thread names, the name of the pool and its number
+         */
+        String getPrefix() {
+            return namePrefix;
+        }
+
+        /**
+         * @return name for the next thread of the pool
+         */
+        String nextThreadName() {
+            return namePrefix + threadNumber.getAndIncrement();
+        }
+
+        /**
+         * @return name of the pool, the thread names add a pool number and a thread number
+         */
+        public String getName() {
+            return poolName;
+        }
+
+        /**
+         * @return CPU time and allocated bytes of the threads created by this factory
+         */
+        public ThreadUsage getUsage() {
+            return usage;
         }
 
         @Override
         public Thread newThread(final Runnable runnable) {
-            final Thread thread = new Thread(group,
-                    runnable,
-                    namePrefix + threadNumber.getAndIncrement(),
-                    0);
+            final Thread thread = new Thread(group, usage.track(runnable), nextThreadName(), 0);
             if (thread.isDaemon()) {
                 thread.setDaemon(false);
             }
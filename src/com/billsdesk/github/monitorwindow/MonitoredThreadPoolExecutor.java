@@ -0,0 +1,549 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.EventType;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+import com.billsdesk.github.monitorwindow.PoolEvents.TaskExecution;
+
+/**
+ * ThreadPoolExecutor which records how long each task waited in the queue and how long it ran.
+ * Each task is stamped when submitted, {@link #beforeExecute(Thread, Runnable)} records the queue
+ * wait and {@link #afterExecute(Runnable, Throwable)} the run time into fixed memory
+ * {@link LatencyHistogram}s.
+ * <p>
+ * The queue holds the tasks as submitted, so {@link #purge()} and a priority queue work as they do
+ * for a ThreadPoolExecutor. The Future made by submit carries its own stamp. A runnable passed to
+ * {@link #execute(Runnable)} is stamped in a map until a worker takes it,
+ * {@link #remove(Runnable)}, {@link #purge()} and {@link #shutdownNow()} drop the stamps of the
+ * tasks they take off the queue. A task taken off the queue directly keeps its stamp until the pool
+ * terminates.
+ * <p>
+ * The executor also keeps striped counters of submitted, queued, running and completed tasks and
+ * of live threads. Unlike {@link #getActiveCount()}, {@link #getTaskCount()} and
+ * {@link #getCompletedTaskCount()}, which take the executor's main lock and walk every worker,
+ * these are read without a lock so a monitor polling them does not compete with
+ * {@link #execute(Runnable)} or with workers exiting. Threads are counted by wrapping the thread
+ * factory in a {@link CountingThreadFactory}, {@link #getThreadFactory()} returns the wrapper.
+ * <p>
+ * Tasks are also counted by type, the {@link TaskType} of a task or otherwise its class, see
+ * {@link #getTaskTypes()}. The task each worker is running is kept with its start time so a
+ * {@link StallDetector} can find the tasks running too long and the threads running them. The task
+ * is kept in a slot of the worker, found through a thread local and registered once per thread, so
+ * starting a task writes only to its own worker's slot.
+ * <p>
+ * While a flight recording has {@link TaskExecution} enabled each task emits one, from submission
+ * to completion, tagged with the name of the pool. The JFR threshold of the event, 10 ms by
+ * default, filters out the fast tasks.
+ *
+ * @author Bill
+ */
+public class MonitoredThreadPoolExecutor
+    extends
+        ThreadPoolExecutor {
+
+    private static final EventType      TASK_EVENT  = EventType.getEventType(TaskExecution.class);
+
+    private final LatencyHistogram      mQueueWait  = new LatencyHistogram();
+    private final LatencyHistogram      mRunTime    = new LatencyHistogram();
+    private final LongAdder             mSubmitted  = new LongAdder();
+    private final LongAdder             mStarted    = new LongAdder();
+    // taken off the queue without running
+    private final LongAdder             mUnqueued   = new LongAdder();
+    private final LongAdder             mRunning    = new LongAdder();
+    private final LongAdder             mCompleted  = new LongAdder();
+    private final LongAdder             mRejected   = new LongAdder();
+    private final LongAdder             mCallerRuns = new LongAdder();
+    private final Map<Runnable, Timing> mStamps     = new ConcurrentHashMap<>();
+    private final Set<Worker>           mWorkers    = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Worker>   mWorker     = ThreadLocal.withInitial(this::register);
+    private final TaskTypes             mTypes      = new TaskTypes(64);
+    private final CountingThreadFactory mThreads;
+    private volatile String             mName;
+
+    public MonitoredThreadPoolExecutor(final int corePoolSize,
+                                       final int maximumPoolSize,
+                                       final long keepAliveTime,
+                                       final TimeUnit unit,
+                                       final BlockingQueue<Runnable> workQueue,
+                                       final ThreadFactory threadFactory) {
+        super(corePoolSize,
+                maximumPoolSize,
+                keepAliveTime,
+                unit,
+                workQueue,
+                new CountingThreadFactory(threadFactory),
+                new CountingRejectionHandler(new AbortPolicy()));
+        mThreads = (CountingThreadFactory) super.getThreadFactory();
+        mName = poolName(threadFactory);
+    }
+
+    public MonitoredThreadPoolExecutor(final int corePoolSize,
+                                       final int maximumPoolSize,
+                                       final long keepAliveTime,
+                                       final TimeUnit unit,
+                                       final BlockingQueue<Runnable> workQueue,
+                                       final ThreadFactory threadFactory,
+                                       final RejectedExecutionHandler handler) {
+        super(corePoolSize,
+                maximumPoolSize,
+                keepAliveTime,
+                unit,
+                workQueue,
+                new CountingThreadFactory(threadFactory),
+                new CountingRejectionHandler(handler));
+        mThreads = (CountingThreadFactory) super.getThreadFactory();
+        mName = poolName(threadFactory);
+    }
+
+    /**
+     * @return name of the pool, taken from a {@link NamedThreadFactory}, otherwise empty
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @param name
+     *            name of the pool used to tag the flight recorder events
+     */
+    public void setName(final String name) {
+        mName = Objects.requireNonNull(name);
+    }
+
+    /**
+     * @return nanoseconds tasks waited in the queue before starting
+     */
+    public LatencyHistogram getQueueWait() {
+        return mQueueWait;
+    }
+
+    /**
+     * @return nanoseconds tasks took to run
+     */
+    public LatencyHistogram getRunTime() {
+        return mRunTime;
+    }
+
+    /**
+     * @return counters and latencies of the tasks by type, for the 64 types seen first
+     */
+    public TaskTypes getTaskTypes() {
+        return mTypes;
+    }
+
+    /**
+     * @return tasks accepted by {@link #execute(Runnable)}, read without a lock
+     */
+    public long getSubmitted() {
+        return mSubmitted.sum();
+    }
+
+    /**
+     * Tasks waiting in the queue, counted rather than read from the queue, whose size() takes the
+     * lock of an ArrayBlockingQueue or a PriorityBlockingQueue. A task taken off the queue other
+     * than by {@link #remove(Runnable)}, {@link #purge()} or {@link #shutdownNow()} is still
+     * counted.
+     *
+     * @return tasks accepted and neither started nor taken off the queue, read without a lock
+     */
+    public int getQueued() {
+        return (int) Math.max(0, mSubmitted.sum() - mStarted.sum() - mUnqueued.sum());
+    }
+
+    /**
+     * @return tasks currently running, read without a lock
+     */
+    public int getRunning() {
+        return (int) Math.max(0, mRunning.sum());
+    }
+
+    /**
+     * @return tasks which finished running, read without a lock
+     */
+    public long getCompleted() {
+        return mCompleted.sum();
+    }
+
+    /**
+     * @return tasks rejected or discarded by the rejection policy, read without a lock
+     */
+    public long getRejected() {
+        return mRejected.sum();
+    }
+
+    /**
+     * @return rejected tasks which a caller-runs policy ran on the submitting thread, read
+     *         without a lock
+     */
+    public long getCallerRuns() {
+        return mCallerRuns.sum();
+    }
+
+    /**
+     * @return threads started by the pool and not yet exited, read without a lock
+     */
+    public int getLiveThreads() {
+        return mThreads.getLive();
+    }
+
+    /**
+     * Find the tasks which have been running for at least a given time.
+     *
+     * @param nanos
+     *            minimum running time
+     * @return tasks in no particular order, empty if none
+     */
+    public List<RunningTask> getRunningLongerThan(final long nanos) {
+        final long now = System.nanoTime();
+        List<RunningTask> result = Collections.emptyList();
+        for (final Worker worker : mWorkers) {
+            final Timing task = worker.mRunning;
+            if (task == null) {
+                if (!worker.mThread.isAlive()) {
+                    mWorkers.remove(worker);
+                }
+            } else if (now - task.mStarted >= nanos) {
+                if (result.isEmpty()) {
+                    result = new ArrayList<>();
+                }
+                result.add(new RunningTask(worker.mThread, task.mTask, task.mStarted));
+            }
+        }
+        return result;
+    }
+
+    // first task of a thread, the workers which exited since the last one are dropped
+    private Worker register() {
+        mWorkers.removeIf(worker -> !worker.mThread.isAlive());
+        final Worker result = new Worker(Thread.currentThread());
+        mWorkers.add(result);
+        return result;
+    }
+
+    @Override
+    public void setThreadFactory(final ThreadFactory threadFactory) {
+        super.setThreadFactory(mThreads.share(threadFactory));
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        mSubmitted.increment();
+        final Timing timing;
+        if (command instanceof TaskTypes.TypedFuture) {
+            timing = ((TaskTypes.TypedFuture<?>) command).mTiming;
+        } else {
+            timing = new Timing();
+            // the same runnable may be queued more than once, its stamps are kept in order
+            mStamps.merge(command, timing, (queued, added) -> queued.append(added));
+        }
+        timing.mSubmitted = System.nanoTime();
+        if (TASK_EVENT.isEnabled()) {
+            timing.mEvent = new TaskExecution();
+            timing.mEvent.begin();
+        }
+        // a rejected task is taken off the counts and its stamp dropped by the
+        // CountingRejectionHandler
+        super.execute(command);
+    }
+
+    /**
+     * Take the oldest stamp of a runnable passed to {@link #execute(Runnable)}.
+     *
+     * @param runnable
+     *            task leaving the queue
+     * @param worker
+     *            slot of the calling thread
+     * @return stamp or null if the task was not stamped
+     */
+    private Timing unstamp(final Runnable runnable, final Worker worker) {
+        if (runnable instanceof TaskTypes.TypedFuture) {
+            return ((TaskTypes.TypedFuture<?>) runnable).mTiming;
+        }
+        mStamps.computeIfPresent(runnable, (key, oldest) -> {
+            worker.mTaken = oldest;
+            return oldest.mNext;
+        });
+        final Timing result = worker.mTaken;
+        worker.mTaken = null;
+        return result;
+    }
+
+    // a task which will not run, by any thread
+    private void unstamp(final Runnable runnable) {
+        mStamps.computeIfPresent(runnable, (key, oldest) -> oldest.mNext);
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(final RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectionHandler(handler));
+    }
+
+    @Override
+    protected void beforeExecute(final Thread thread, final Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        mStarted.increment();
+        mRunning.increment();
+        final Worker worker = mWorker.get();
+        final Timing task = unstamp(runnable, worker);
+        if (task != null) {
+            task.mTask = runnable;
+            task.mStarted = System.nanoTime();
+            mQueueWait.record(task.mStarted - task.mSubmitted);
+            // the type is looked up by the worker rather than the submitter
+            task.mType = mTypes.of(runnable);
+            task.mType.started(task.mStarted - task.mSubmitted);
+            // published with the start time by the volatile write
+            worker.mRunning = task;
+        }
+    }
+
+    @Override
+    protected void afterExecute(final Runnable runnable, final Throwable error) {
+        final Worker worker = mWorker.get();
+        final Timing task = worker.mRunning;
+        if (task != null) {
+            worker.mRunning = null;
+            final long runTime = System.nanoTime() - task.mStarted;
+            final boolean failed = error != null || failed(runnable);
+            mRunTime.record(runTime);
+            task.mType.completed(runTime, failed);
+            if (task.mEvent != null) {
+                commit(task, runTime, failed);
+            }
+        }
+        mRunning.decrement();
+        mCompleted.increment();
+        super.afterExecute(runnable, error);
+    }
+
+    /**
+     * @param runnable
+     *            task which returned normally
+     * @return true if the task is a Future which completed with an exception, it is kept by the
+     *         Future rather than thrown to the worker
+     */
+    private static boolean failed(final Runnable runnable) {
+        if (!(runnable instanceof Future) || !((Future<?>) runnable).isDone()) {
+            return false;
+        }
+        try {
+            ((Future<?>) runnable).get();
+            return false;
+        } catch (final ExecutionException error) {
+            return true;
+        } catch (final CancellationException error) {
+            return false;
+        } catch (final InterruptedException error) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void commit(final Timing task, final long runTime, final boolean failed) {
+        final TaskExecution event = task.mEvent;
+        event.end();
+        if (event.shouldCommit()) {
+            event.pool = mName;
+            event.taskClass = TaskTypes.unwrap(task.mTask).getClass();
+            event.taskType = task.mType.getName();
+            event.queueWait = task.mStarted - task.mSubmitted;
+            event.runTime = runTime;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+        return new TaskTypes.TypedFuture<>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+        return new TaskTypes.TypedFuture<>(callable);
+    }
+
+    @Override
+    public boolean remove(final Runnable task) {
+        if (!super.remove(task)) {
+            return false;
+        }
+        mUnqueued.increment();
+        unstamp(task);
+        return true;
+    }
+
+    @Override
+    public void purge() {
+        // removed here rather than by super, which does not tell what it removed
+        for (final Object task : getQueue().toArray()) {
+            if (task instanceof Future && ((Future<?>) task).isCancelled()
+                && getQueue().remove(task)) {
+                mUnqueued.increment();
+                unstamp((Runnable) task);
+            }
+        }
+        // lets a shutdown pool terminate
+        super.purge();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> result = super.shutdownNow();
+        mUnqueued.add(result.size());
+        for (final Runnable runnable : result) {
+            unstamp(runnable);
+        }
+        return result;
+    }
+
+    @Override
+    protected void terminated() {
+        // the stamps of tasks taken off the queue directly
+        mStamps.clear();
+        super.terminated();
+    }
+
+    private static String poolName(final ThreadFactory threadFactory) {
+        return threadFactory instanceof NamedThreadFactory
+            ? ((NamedThreadFactory) threadFactory).getName()
+            : "";
+    }
+
+    /**
+     * Counts the tasks the pool did not accept before passing them to the policy. A task run by
+     * {@link CallerRunsPolicy} is counted as a caller run rather than a rejection, the policy
+     * {@link DiscardOldestPolicy} is applied here so the discarded task is the one counted.
+     */
+    private static final class CountingRejectionHandler
+        implements
+            RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler mHandler;
+
+        private CountingRejectionHandler(final RejectedExecutionHandler handler) {
+            mHandler = Objects.requireNonNull(handler);
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+            final MonitoredThreadPoolExecutor pool = (MonitoredThreadPoolExecutor) executor;
+            pool.mSubmitted.decrement();
+            pool.unstamp(runnable);
+            if (executor.isShutdown()) {
+                pool.mRejected.increment();
+                mHandler.rejectedExecution(runnable, executor);
+            } else if (mHandler instanceof CallerRunsPolicy) {
+                pool.mCallerRuns.increment();
+                mHandler.rejectedExecution(runnable, executor);
+            } else if (mHandler instanceof DiscardOldestPolicy) {
+                final Runnable oldest = executor.getQueue().poll();
+                if (oldest != null) {
+                    pool.mSubmitted.decrement();
+                    pool.unstamp(oldest);
+                }
+                pool.mRejected.increment();
+                executor.execute(runnable);
+            } else {
+                pool.mRejected.increment();
+                mHandler.rejectedExecution(runnable, executor);
+            }
+        }
+    }
+
+    /**
+     * A task in progress and the worker running it.
+     */
+    public static final class RunningTask {
+
+        private final Thread   mThread;
+        private final Runnable mTask;
+        private final long     mStarted;
+
+        private RunningTask(final Thread thread, final Runnable task, final long started) {
+            mThread = thread;
+            mTask = task;
+            mStarted = started;
+        }
+
+        public Thread getThread() {
+            return mThread;
+        }
+
+        /**
+         * @return the task as submitted
+         */
+        public Runnable getTask() {
+            return mTask;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} the task started
+         */
+        public long getStarted() {
+            return mStarted;
+        }
+    }
+
+    /**
+     * Slot of one worker thread, written only by that thread.
+     */
+    private static final class Worker {
+
+        private final Thread    mThread;
+        private volatile Timing mRunning;
+        // handed out of the stamps map
+        private Timing          mTaken;
+
+        private Worker(final Thread thread) {
+            mThread = thread;
+        }
+    }
+
+    /**
+     * Times of a task, stamped when submitted. The times are only written and read by the
+     * submitting and the worker thread, the queue hand-off orders them.
+     */
+    static final class Timing {
+
+        private long            mSubmitted;
+        private long            mStarted;
+        private Runnable        mTask;
+        private TaskTypes.Stats mType;
+        // only while the flight recorder event is enabled
+        private TaskExecution   mEvent;
+        // the next stamp of the same runnable queued again
+        private Timing          mNext;
+
+        private Timing append(final Timing added) {
+            Timing last = this;
+            while (last.mNext != null) {
+                last = last.mNext;
+            }
+            last.mNext = added;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class MonitoredThreadPoolExecutorTest {
+
+    @Test
+    public void counters() throws InterruptedException {
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 2, 2, "C1");
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 5; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (final InterruptedException error) {
+                        // Ignore
+                    }
+                });
+            }
+            while (executor.getRunning() < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, executor.getSubmitted());
+            assertEquals(3, executor.getQueued());
+            assertEquals(2, executor.getLiveThreads());
+            assertEquals(executor.getActiveCount(), executor.getRunning());
+            assertEquals(0, executor.getCompleted());
+            release.countDown();
+            while (executor.getCompleted() < 5) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, executor.getRunning());
+            assertEquals(executor.getTaskCount(), executor.getSubmitted());
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        // the count drops as each thread leaves the pool, just after termination
+        while (executor.getLiveThreads() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void latency() throws InterruptedException {
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "H1");
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable queued = () -> {
+        };
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (final InterruptedException error) {
+                    // Ignore
+                }
+            });
+            executor.execute(queued);
+            executor.execute(queued);
+            assertTrue(executor.remove(queued));
+            while (executor.getRunning() < 1) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(20);
+            release.countDown();
+            while (executor.getCompleted() < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, executor.getQueueWait().getCount());
+            assertEquals(2, executor.getRunTime().getCount());
+            assertTrue(executor.getRunTime().getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertTrue(executor.getQueueWait().getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void priorityQueue() throws InterruptedException {
+        final MonitoredThreadPoolExecutor executor = new MonitoredThreadPoolExecutor(1,
+                1,
+                0,
+                TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                new MonitorWindow.NamedThreadFactory("P1"));
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+        try {
+            executor.execute(new Ranked(0, order, release));
+            while (executor.getRunning() < 1) {
+                Thread.sleep(1);
+            }
+            // the queue orders the tasks as submitted, not wrappers
+            executor.execute(new Ranked(3, order, null));
+            executor.execute(new Ranked(1, order, null));
+            executor.execute(new Ranked(2, order, null));
+            release.countDown();
+            while (executor.getCompleted() < 4) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(0, 1, 2, 3), order);
+            assertEquals(4, executor.getQueueWait().getCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void purge() throws InterruptedException {
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "P2");
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (final InterruptedException error) {
+                    // Ignore
+                }
+            });
+            while (executor.getRunning() < 1) {
+                Thread.sleep(1);
+            }
+            for (int i = 0; i < 5; i++) {
+                final Future<?> future = executor.submit(() -> {
+                });
+                future.cancel(false);
+            }
+            assertEquals(5, executor.getQueue().size());
+            assertEquals(5, executor.getQueued());
+            executor.purge();
+            assertEquals(0, executor.getQueue().size());
+            assertEquals(0, executor.getQueued());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownNow() throws InterruptedException {
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "H2");
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (final InterruptedException error) {
+                // Ignore
+            }
+        });
+        while (executor.getRunning() < 1) {
+            Thread.sleep(1);
+        }
+        final Runnable queued = () -> {
+        };
+        executor.execute(queued);
+        assertEquals(1, executor.getQueued());
+        final List<Runnable> pending = executor.shutdownNow();
+        assertEquals(1, pending.size());
+        assertSame(queued, pending.get(0));
+        assertEquals(0, executor.getQueued());
+    }
+
+    /**
+     * Task ordered by its rank in a priority queue.
+     */
+    private static final class Ranked
+        implements
+            Runnable,
+            Comparable<Ranked> {
+
+        private final int            mRank;
+        private final List<Integer>  mOrder;
+        private final CountDownLatch mRelease;
+
+        private Ranked(final int rank, final List<Integer> order, final CountDownLatch release) {
+            mRank = rank;
+            mOrder = order;
+            mRelease = release;
+        }
+
+        @Override
+        public void run() {
+            if (mRelease != null) {
+                try {
+                    mRelease.await();
+                } catch (final InterruptedException error) {
+                    // Ignore
+                }
+            }
+            mOrder.add(mRank);
+        }
+
+        @Override
+        public int compareTo(final Ranked other) {
+            return Integer.compare(mRank, other.mRank);
+        }
+    }
+}
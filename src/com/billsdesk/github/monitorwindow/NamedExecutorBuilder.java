@@ -0,0 +1,222 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+
+/**
+ * Options for a named {@link MonitoredThreadPoolExecutor}, the defaults are those of
+ * {@link MonitorWindow#getNamedMonitoredExecutor(MonitorWindow, int, int, String)}: an unbounded
+ * queue and tasks rejected with an exception. A bounded queue gives backpressure instead of a heap
+ * that grows until the JVM dies, the rejected and caller-runs tasks are counted and the Monitor
+ * shows their rates per second as a labelled readout below the bars, e.g. "rejected 12.0/s".
+ *
+ * <pre>
+ * final MonitoredThreadPoolExecutor executor = new NamedExecutorBuilder("Orders")
+ *         .poolSize(4, 8)
+ *         .arrayQueue(1000)
+ *         .rejection(NamedExecutorBuilder.Rejection.CALLER_RUNS)
+ *         .monitor(window)
+ *         .build();
+ * </pre>
+ *
+ * @author Bill
+ */
+public class NamedExecutorBuilder {
+
+    /**
+     * Policies of the JDK for a task the pool can't accept.
+     */
+    public enum Rejection {
+        /** Throw a RejectedExecutionException. */
+        ABORT,
+        /** Run the task on the thread submitting it, which slows the submitter down. */
+        CALLER_RUNS,
+        /** Drop the task. */
+        DISCARD,
+        /** Drop the oldest queued task and submit again. */
+        DISCARD_OLDEST
+    };
+
+    private final String             mName;
+    private int                      mCorePoolSize    = 1;
+    private int                      mMaximumPoolSize = 1;
+    private long                     mKeepAlive       = 500;
+    private TimeUnit                 mKeepAliveUnit   = TimeUnit.MILLISECONDS;
+    private int                      mCapacity        = Integer.MAX_VALUE;
+    private boolean                  mArray;
+    private RejectedExecutionHandler mRejection       = new ThreadPoolExecutor.AbortPolicy();
+    @Nullable
+    private MonitorWindow            mFrame;
+    @Nullable
+    private PoolAutoscaler.Policy    mAutoscale;
+
+    /**
+     * @param name
+     *            prefix name for each thread in pool
+     */
+    public NamedExecutorBuilder(final String name) {
+        mName = Objects.requireNonNull(name);
+    }
+
+    /**
+     * @param corePoolSize
+     *            the number of threads to keep in the pool, even if they are idle
+     * @param maximumPoolSize
+     *            the maximum number of threads, more than the core are only started when the queue
+     *            is full
+     * @return this
+     */
+    public NamedExecutorBuilder poolSize(final int corePoolSize, final int maximumPoolSize) {
+        mCorePoolSize = corePoolSize;
+        mMaximumPoolSize = maximumPoolSize;
+        return this;
+    }
+
+    /**
+     * @param time
+     *            time threads above the core size are kept idle. Default 500ms.
+     * @param unit
+     *            unit of the time
+     * @return this
+     */
+    public NamedExecutorBuilder keepAlive(final long time, final TimeUnit unit) {
+        mKeepAlive = time;
+        mKeepAliveUnit = Objects.requireNonNull(unit);
+        return this;
+    }
+
+    /**
+     * Queue tasks in an ArrayBlockingQueue, preallocated.
+     *
+     * @param capacity
+     *            number of tasks the queue holds
+     * @return this
+     */
+    public NamedExecutorBuilder arrayQueue(final int capacity) {
+        return queue(capacity, true);
+    }
+
+    /**
+     * Queue tasks in a LinkedBlockingQueue.
+     *
+     * @param capacity
+     *            number of tasks the queue holds, Integer.MAX_VALUE for unbounded. Default
+     *            unbounded.
+     * @return this
+     */
+    public NamedExecutorBuilder linkedQueue(final int capacity) {
+        return queue(capacity, false);
+    }
+
+    /**
+     * Hand each task directly to a thread through a SynchronousQueue, a task is rejected when the
+     * pool has no thread free and is at its maximum size.
+     *
+     * @return this
+     */
+    public NamedExecutorBuilder synchronousQueue() {
+        mCapacity = 0;
+        mArray = false;
+        return this;
+    }
+
+    /**
+     * @param rejection
+     *            policy for a task the pool can't accept. Default {@link Rejection#ABORT}.
+     * @return this
+     */
+    public NamedExecutorBuilder rejection(final Rejection rejection) {
+        switch (rejection) {
+            case ABORT:
+                return rejection(new ThreadPoolExecutor.AbortPolicy());
+            case CALLER_RUNS:
+                return rejection(new ThreadPoolExecutor.CallerRunsPolicy());
+            case DISCARD:
+                return rejection(new ThreadPoolExecutor.DiscardPolicy());
+            case DISCARD_OLDEST:
+                return rejection(new ThreadPoolExecutor.DiscardOldestPolicy());
+            default:
+                throw new IllegalArgumentException(rejection.name());
+        }
+    }
+
+    /**
+     * @param handler
+     *            custom policy for a task the pool can't accept, counted as a rejection
+     * @return this
+     */
+    public NamedExecutorBuilder rejection(final RejectedExecutionHandler handler) {
+        mRejection = Objects.requireNonNull(handler);
+        return this;
+    }
+
+    /**
+     * @param frame
+     *            if not null then add this monitor to the Monitor Window
+     * @return this
+     */
+    public NamedExecutorBuilder monitor(@Nullable final MonitorWindow frame) {
+        mFrame = frame;
+        return this;
+    }
+
+    /**
+     * Let the window resize the pool between the bounds of the policy instead of keeping the pool
+     * size. Only applies when a window is given to {@link #monitor(MonitorWindow)}.
+     *
+     * @param policy
+     *            bounds and tuning of the core pool size
+     * @return this
+     */
+    public NamedExecutorBuilder autoscale(@Nullable final PoolAutoscaler.Policy policy) {
+        mAutoscale = policy;
+        return this;
+    }
+
+    /**
+     * @return new executor, added to the window if one was given
+     */
+    public MonitoredThreadPoolExecutor build() {
+        final MonitoredThreadPoolExecutor result = new MonitoredThreadPoolExecutor(mCorePoolSize,
+                mMaximumPoolSize,
+                mKeepAlive,
+                mKeepAliveUnit,
+                createQueue(),
+                new NamedThreadFactory(mName),
+                mRejection);
+        if (mFrame != null) {
+            if (mAutoscale == null) {
+                mFrame.addMonitor(mName, result);
+            } else {
+                mFrame.autoscale(mName, result, mAutoscale);
+            }
+        }
+        return result;
+    }
+
+    private NamedExecutorBuilder queue(final int capacity, final boolean array) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+        mArray = array;
+        return this;
+    }
+
+    private BlockingQueue<Runnable> createQueue() {
+        if (mCapacity == 0) {
+            return new SynchronousQueue<>();
+        }
+        return mArray ? new ArrayBlockingQueue<>(mCapacity) : new LinkedBlockingQueue<>(mCapacity);
+    }
+}
@@ -0,0 +1,101 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class NamedExecutorBuilderTest {
+
+    @Test
+    public void abort() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final MonitoredThreadPoolExecutor executor = new NamedExecutorBuilder("B1").arrayQueue(2)
+                                                                                   .build();
+        try {
+            assertTrue(executor.getQueue() instanceof ArrayBlockingQueue);
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> Latches.await(release));
+            }
+            assertThrows(RejectedExecutionException.class,
+                         () -> executor.execute(() -> Latches.await(release)));
+            assertEquals(3, executor.getSubmitted());
+            assertEquals(1, executor.getRejected());
+            final PoolSnapshot snapshot = new ThreadPoolSource(executor).sample(1, "B1");
+            assertEquals(2, snapshot.getExtras().get(ThreadPoolSource.CAPACITY));
+            assertEquals(1, snapshot.getExtras().get(ThreadPoolSource.REJECTED));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callerRuns() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final MonitoredThreadPoolExecutor executor = new NamedExecutorBuilder("B2")
+            .synchronousQueue()
+            .rejection(NamedExecutorBuilder.Rejection.CALLER_RUNS)
+            .build();
+        try {
+            assertTrue(executor.getQueue() instanceof SynchronousQueue);
+            executor.execute(() -> Latches.await(release));
+            final AtomicInteger ranHere = new AtomicInteger();
+            final Thread caller = Thread.currentThread();
+            executor.execute(() -> {
+                if (Thread.currentThread() == caller) {
+                    ranHere.incrementAndGet();
+                }
+            });
+            assertEquals(1, ranHere.get());
+            assertEquals(1, executor.getCallerRuns());
+            assertEquals(0, executor.getRejected());
+            assertEquals(1, executor.getSubmitted());
+            final PoolSnapshot snapshot = new ThreadPoolSource(executor).sample(1, "B2");
+            assertEquals(0, snapshot.getExtras().get(ThreadPoolSource.CAPACITY));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void discardOldest() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final MonitoredThreadPoolExecutor executor = new NamedExecutorBuilder("B3")
+            .linkedQueue(1)
+            .rejection(NamedExecutorBuilder.Rejection.DISCARD_OLDEST)
+            .build();
+        final AtomicInteger ran = new AtomicInteger();
+        try {
+            executor.execute(() -> Latches.await(release));
+            executor.execute(() -> ran.addAndGet(1));
+            executor.execute(() -> ran.addAndGet(10));
+            assertEquals(1, executor.getRejected());
+            assertEquals(2, executor.getSubmitted());
+            release.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+            // the oldest queued task was dropped
+            assertEquals(10, ran.get());
+            assertEquals(2, executor.getCompleted());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData.ThresholdValue;
+import com.billsdesk.github.monitorwindow.PoolHistory.Series;
+
+/**
+ * Evaluates alert rules against every pass of a {@link PoolSampler} and tells the listeners when
+ * an alert starts or stops firing. The rules run on the sampling thread over the snapshots and the
+ * {@link PoolHistory} of each pool, independent of any window, so a saturated pool is noticed in
+ * time to shed load.
+ * <p>
+ * A rule fires once its value has been at or above the enter level for the minimum duration and
+ * stops once the value drops below the exit level, the band between the two keeps a value
+ * hovering at the level from flapping. The transitions are handed to the listeners by a single
+ * thread with a bounded queue, a slow listener never delays the sampler and when the queue is full
+ * the oldest transition is dropped and counted.
+ *
+ * <pre>
+ * final PoolAlerts alerts = new PoolAlerts(sampler);
+ * alerts.addRule(PoolAlerts.Rule.backlogGrowth("backlog", 5, TimeUnit.SECONDS, 10, 1));
+ * alerts.addListener(alert -&gt; shedLoad(alert.getPoolName(), alert.isFiring()));
+ * </pre>
+ *
+ * @author Bill
+ */
+public class PoolAlerts
+    implements
+        PoolSampler.Listener {
+
+    /**
+     * Receives the transitions on the dispatcher thread.
+     */
+    @FunctionalInterface
+    public interface AlertListener {
+
+        /**
+         * Called on the dispatcher thread in the order of the transitions.
+         *
+         * @param alert
+         *            alert which started or stopped firing
+         */
+        void alert(Alert alert);
+    }
+
+    /**
+     * Measures one value of a pool for a rule.
+     */
+    @FunctionalInterface
+    public interface Measure {
+
+        /**
+         * @param snapshot
+         *            latest snapshot of the pool
+         * @param history
+         *            history of the pool, including the snapshot, or null if not kept
+         * @return value or NaN if it can't be measured yet
+         */
+        double measure(PoolSnapshot snapshot, @Nullable PoolHistory history);
+    }
+
+    private final PoolSampler                   mSampler;
+    private final List<Scoped>                  mRules     = new CopyOnWriteArrayList<>();
+    private final List<AlertListener>           mListeners = new CopyOnWriteArrayList<>();
+    private final MonitoredThreadPoolExecutor   mDispatcher;
+    // sampling thread only
+    private final Map<Integer, List<RuleState>> mStates    = new HashMap<>();
+
+    /**
+     * A condition on a pool with an enter and exit level and a minimum duration.
+     */
+    public static final class Rule {
+
+        private final String  mName;
+        private final Measure mMeasure;
+        private final double  mEnter;
+        private final double  mExit;
+        private final int     mStatus;
+        private long          mDuration;
+
+        private Rule(final String name,
+                     final Measure measure,
+                     final double enter,
+                     final double exit,
+                     final int status) {
+            if (exit > enter) {
+                throw new IllegalArgumentException(String.format("exit %s above enter %s",
+                                                                 exit,
+                                                                 enter));
+            }
+            mName = name;
+            mMeasure = measure;
+            mEnter = enter;
+            mExit = exit;
+            mStatus = status;
+        }
+
+        /**
+         * Rule on any value.
+         *
+         * @param name
+         *            name of the alert
+         * @param measure
+         *            value of a pool
+         * @param enter
+         *            fire at or above
+         * @param exit
+         *            stop firing below, not above enter
+         * @return rule
+         */
+        public static Rule of(final String name,
+                              final Measure measure,
+                              final double enter,
+                              final double exit) {
+            return new Rule(name, measure, enter, exit, ThresholdData.NOTSET);
+        }
+
+        /**
+         * Rule on the latest value of a series, e.g. the queued tasks.
+         *
+         * @param name
+         *            name of the alert
+         * @param series
+         *            series of the pool, a count rather than {@link Series#TIMESTAMP} or a running
+         *            total of time
+         * @param enter
+         *            fire at or above
+         * @param exit
+         *            stop firing below, not above enter
+         * @return rule
+         */
+        public static Rule level(final String name,
+                                 final Series series,
+                                 final double enter,
+                                 final double exit) {
+            checkLevel(series);
+            return of(name, (snapshot, history) -> value(snapshot, series), enter, exit);
+        }
+
+        /**
+         * Rule on the change per second of a series over a window of its history, e.g. the
+         * growth of the queue.
+         *
+         * @param name
+         *            name of the alert
+         * @param series
+         *            series of the pool
+         * @param window
+         *            length of the window
+         * @param unit
+         *            unit of window
+         * @param enter
+         *            fire at or above, per second
+         * @param exit
+         *            stop firing below, per second, not above enter
+         * @return rule
+         */
+        public static Rule rate(final String name,
+                                final Series series,
+                                final long window,
+                                final TimeUnit unit,
+                                final double enter,
+                                final double exit) {
+            final long millis = unit.toMillis(window);
+            return of(name,
+                      (snapshot, history) -> PoolRates.perSecond(history, series, millis),
+                      enter,
+                      exit);
+        }
+
+        /**
+         * Rule on the tasks submitted per second less those completed over a window, positive
+         * while the queue grows faster than it drains.
+         *
+         * @param name
+         *            name of the alert
+         * @param window
+         *            length of the window
+         * @param unit
+         *            unit of window
+         * @param enter
+         *            fire at or above, tasks per second
+         * @param exit
+         *            stop firing below, tasks per second, not above enter
+         * @return rule
+         */
+        public static Rule backlogGrowth(final String name,
+                                         final long window,
+                                         final TimeUnit unit,
+                                         final double enter,
+                                         final double exit) {
+            final long millis = unit.toMillis(window);
+            return of(name,
+                      (snapshot, history) -> PoolRates.perSecond(history, Series.TASKS, millis)
+                                             - PoolRates.perSecond(history,
+                                                                   Series.COMPLETED,
+                                                                   millis),
+                      enter,
+                      exit);
+        }
+
+        /**
+         * Rule on the thresholds set with {@link PoolSampler#setThreshold(int, ThresholdData)},
+         * the same levels the Monitor colors its bars with. The rule fires at the level of the
+         * status and stops below it less the hysteresis. Pools without thresholds, or without
+         * that level set, never fire.
+         *
+         * @param series
+         *            series of the pool, e.g. {@link Series#QUEUED}, a count rather than
+         *            {@link Series#TIMESTAMP} or a running total of time
+         * @param status
+         *            {@link ThresholdData#WARNING}, {@link ThresholdData#ALERT} or
+         *            {@link ThresholdData#CRISIS}
+         * @param hysteresis
+         *            fraction of the level to drop below it before the alert stops, e.g. 0.1
+         * @return rule named after the series and status, e.g. "queued alert"
+         */
+        public static Rule threshold(final Series series,
+                                     final int status,
+                                     final double hysteresis) {
+            checkLevel(series);
+            if (status < ThresholdData.WARNING || status > ThresholdData.CRISIS) {
+                throw new IllegalArgumentException("status " + status);
+            }
+            final String[] names = {
+                                     "", "", "warning", "alert", "crisis"
+            };
+            return new Rule(series.name().toLowerCase() + " " + names[status],
+                    (snapshot, history) -> value(snapshot, series),
+                    1,
+                    1 - hysteresis,
+                    status);
+        }
+
+        /**
+         * @param duration
+         *            time the value must stay at or above the enter level before the rule fires.
+         *            Default 0.
+         * @param unit
+         *            unit of duration
+         * @return this
+         */
+        public Rule setDuration(final long duration, final TimeUnit unit) {
+            mDuration = unit.toNanos(duration);
+            return this;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @param threshold
+         *            thresholds of the pool
+         * @return the enter level or NaN if the rule does not apply to the pool
+         */
+        private double enter(@Nullable final ThresholdData threshold) {
+            if (mStatus == ThresholdData.NOTSET) {
+                return mEnter;
+            }
+            final ThresholdValue value = threshold == null ? null : level(threshold);
+            return value == null || value.getValue() == ThresholdData.IGNORE ? Double.NaN
+                                                                             : value.getValue();
+        }
+
+        private double exit(final double enter) {
+            // a threshold rule keeps its exit as a fraction of the pool's level
+            return mStatus == ThresholdData.NOTSET ? mExit : enter * mExit;
+        }
+
+        private ThresholdValue level(final ThresholdData threshold) {
+            switch (mStatus) {
+                case ThresholdData.WARNING:
+                    return threshold.warning();
+                case ThresholdData.ALERT:
+                    return threshold.alert();
+                default:
+                    return threshold.crisis();
+            }
+        }
+    }
+
+    /**
+     * A rule of a pool which started or stopped firing.
+     */
+    public static final class Alert {
+
+        private final int     mPoolId;
+        private final String  mPoolName;
+        private final String  mRule;
+        private final boolean mFiring;
+        private final double  mValue;
+        private final long    mTimestamp;
+        private final long    mSince;
+
+        public Alert(final int poolId,
+                     final String poolName,
+                     final String rule,
+                     final boolean firing,
+                     final double value,
+                     final long timestamp,
+                     final long since) {
+            mPoolId = poolId;
+            mPoolName = poolName;
+            mRule = rule;
+            mFiring = firing;
+            mValue = value;
+            mTimestamp = timestamp;
+            mSince = since;
+        }
+
+        public int getPoolId() {
+            return mPoolId;
+        }
+
+        public String getPoolName() {
+            return mPoolName;
+        }
+
+        public String getRule() {
+            return mRule;
+        }
+
+        /**
+         * @return true if the rule started firing, false if it stopped
+         */
+        public boolean isFiring() {
+            return mFiring;
+        }
+
+        /**
+         * @return value measured by the snapshot which caused the transition, NaN when the pool
+         *         was shutdown or the rule removed
+         */
+        public double getValue() {
+            return mValue;
+        }
+
+        /**
+         * @return wall clock time in milliseconds of the snapshot which caused the transition
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * @return wall clock time in milliseconds the value first crossed the level, before the
+         *         minimum duration, or the time the alert fired when it stops
+         */
+        public long getSince() {
+            return mSince;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s %.2f",
+                                 mPoolName,
+                                 mRule,
+                                 mFiring ? "firing" : "resolved",
+                                 mValue);
+        }
+    }
+
+    /**
+     * Evaluate rules against the pools of the sampler, with room for 1024 transitions waiting for
+     * the listeners.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     */
+    public PoolAlerts(final PoolSampler sampler) {
+        this(sampler, 1024);
+    }
+
+    /**
+     * Evaluate rules against the pools of the sampler.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param capacity
+     *            transitions waiting for the listeners before the oldest is dropped
+     */
+    public PoolAlerts(final PoolSampler sampler, final int capacity) {
+        mSampler = sampler;
+        // one thread keeps the transitions in order, it ends while there are none
+        mDispatcher = new NamedExecutorBuilder("Alerts")
+            .arrayQueue(capacity)
+            .rejection(NamedExecutorBuilder.Rejection.DISCARD_OLDEST)
+            .build();
+        mDispatcher.allowCoreThreadTimeOut(true);
+        mSampler.addListener(this);
+    }
+
+    /**
+     * Evaluate a rule against every pool.
+     *
+     * @param rule
+     *            rule
+     */
+    public void addRule(final Rule rule) {
+        mRules.add(new Scoped(0, rule));
+    }
+
+    /**
+     * Evaluate a rule against one pool.
+     *
+     * @param id
+     *            id returned by {@link PoolSampler#register(String, ThreadPoolExecutor)}
+     * @param rule
+     *            rule
+     */
+    public void addRule(final int id, final Rule rule) {
+        mRules.add(new Scoped(id, rule));
+    }
+
+    /**
+     * Stop evaluating a rule. An alert it was firing is resolved at the next sample of its pool.
+     *
+     * @param rule
+     *            rule added before
+     */
+    public void removeRule(final Rule rule) {
+        for (final Scoped scoped : mRules) {
+            if (scoped.mRule == rule) {
+                // its states belong to the sampling thread, which drops them
+                scoped.mRemoved = true;
+                mRules.remove(scoped);
+            }
+        }
+    }
+
+    public void addListener(final AlertListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(final AlertListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return transitions dropped because the listeners fell behind
+     */
+    public long getDropped() {
+        return mDispatcher.getRejected();
+    }
+
+    /**
+     * Stop listening to the sampler. Transitions already queued are still delivered.
+     */
+    public void close() {
+        mSampler.removeListener(this);
+        mDispatcher.shutdown();
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                resolve(snapshot);
+            } else {
+                evaluate(snapshot);
+            }
+        }
+    }
+
+    private void evaluate(final PoolSnapshot snapshot) {
+        final List<RuleState> states = mStates.computeIfAbsent(snapshot.getId(),
+                                                               id -> new ArrayList<>());
+        final PoolHistory history = mSampler.getHistory(snapshot.getId());
+        final ThresholdData threshold = mSampler.getThreshold(snapshot.getId());
+        forget(snapshot, states);
+        for (final Scoped scoped : mRules) {
+            if (scoped.mId != 0 && scoped.mId != snapshot.getId()) {
+                continue;
+            }
+            final Rule rule = scoped.mRule;
+            final double enter = rule.enter(threshold);
+            final double value = rule.mMeasure.measure(snapshot, history);
+            if (Double.isNaN(enter) || Double.isNaN(value)) {
+                continue;
+            }
+            final RuleState state = state(states, scoped);
+            if (state.mFiring) {
+                if (value < rule.exit(enter)) {
+                    state.mFiring = false;
+                    state.mPendingSince = -1;
+                    dispatch(snapshot, rule, false, value, state.mFiredAt);
+                }
+            } else if (value >= enter) {
+                if (state.mPendingSince < 0) {
+                    state.mPendingSince = snapshot.getNanoTime();
+                    state.mPendingTimestamp = snapshot.getTimestamp();
+                }
+                if (snapshot.getNanoTime() - state.mPendingSince >= rule.mDuration) {
+                    state.mFiring = true;
+                    state.mFiredAt = snapshot.getTimestamp();
+                    dispatch(snapshot, rule, true, value, state.mPendingTimestamp);
+                }
+            } else {
+                state.mPendingSince = -1;
+            }
+        }
+    }
+
+    /**
+     * Resolve every alert a shutdown pool was firing and forget the pool.
+     *
+     * @param snapshot
+     *            shutdown snapshot
+     */
+    private void resolve(final PoolSnapshot snapshot) {
+        final List<RuleState> states = mStates.remove(snapshot.getId());
+        if (states != null) {
+            for (final RuleState state : states) {
+                if (state.mFiring) {
+                    dispatch(snapshot, state.mScoped.mRule, false, Double.NaN, state.mFiredAt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolve the alerts of the rules removed since the last sample of a pool and forget them.
+     *
+     * @param snapshot
+     *            latest snapshot of the pool
+     * @param states
+     *            states of the pool
+     */
+    private void forget(final PoolSnapshot snapshot, final List<RuleState> states) {
+        for (final Iterator<RuleState> iterator = states.iterator(); iterator.hasNext();) {
+            final RuleState state = iterator.next();
+            if (state.mScoped.mRemoved) {
+                iterator.remove();
+                if (state.mFiring) {
+                    dispatch(snapshot, state.mScoped.mRule, false, Double.NaN, state.mFiredAt);
+                }
+            }
+        }
+    }
+
+    private static RuleState state(final List<RuleState> states, final Scoped scoped) {
+        for (final RuleState state : states) {
+            if (state.mScoped == scoped) {
+                return state;
+            }
+        }
+        final RuleState state = new RuleState(scoped);
+        states.add(state);
+        return state;
+    }
+
+    private void dispatch(final PoolSnapshot snapshot,
+                          final Rule rule,
+                          final boolean firing,
+                          final double value,
+                          final long since) {
+        final Alert alert = new Alert(snapshot.getId(),
+                snapshot.getName(),
+                rule.mName,
+                firing,
+                value,
+                snapshot.getTimestamp(),
+                since);
+        if (!mDispatcher.isShutdown()) {
+            mDispatcher.execute(() -> deliver(alert));
+        }
+    }
+
+    private void deliver(final Alert alert) {
+        for (final AlertListener listener : mListeners) {
+            try {
+                listener.alert(alert);
+            } catch (final RuntimeException error) {
+                // a failing listener must not stop the others or the dispatcher
+                final Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, error);
+            }
+        }
+    }
+
+    // rejected when the rule is made rather than on the sampler thread at every pass
+    private static void checkLevel(final Series series) {
+        switch (series) {
+            case THREADS:
+            case QUEUED:
+            case ACTIVE:
+            case TASKS:
+            case COMPLETED:
+                return;
+            default:
+                throw new IllegalArgumentException("no level for series " + series.name());
+        }
+    }
+
+    private static double value(final PoolSnapshot snapshot, final Series series) {
+        switch (series) {
+            case THREADS:
+                return snapshot.getThreads();
+            case QUEUED:
+                return snapshot.getQueued();
+            case ACTIVE:
+                return snapshot.getActive();
+            case TASKS:
+                return snapshot.getTaskCount();
+            case COMPLETED:
+                return snapshot.getCompletedCount();
+            default:
+                throw new IllegalArgumentException(series.name());
+        }
+    }
+
+    /**
+     * A rule with the pool it applies to, 0 for every pool.
+     */
+    private static final class Scoped {
+
+        private final int        mId;
+        private final Rule       mRule;
+        private volatile boolean mRemoved;
+
+        private Scoped(final int id, final Rule rule) {
+            mId = id;
+            mRule = rule;
+        }
+    }
+
+    /**
+     * Progress of a rule on one pool.
+     */
+    private static final class RuleState {
+
+        private final Scoped mScoped;
+        private boolean      mFiring;
+        private long         mPendingSince = -1;
+        private long         mPendingTimestamp;
+        private long         mFiredAt;
+
+        private RuleState(final Scoped scoped) {
+            mScoped = scoped;
+        }
+    }
+}
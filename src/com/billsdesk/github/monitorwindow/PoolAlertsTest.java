@@ -0,0 +1,218 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+import com.billsdesk.github.monitorwindow.PoolAlerts.Alert;
+import com.billsdesk.github.monitorwindow.PoolAlerts.Rule;
+import com.billsdesk.github.monitorwindow.PoolHistory.Series;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolAlertsTest {
+
+    private static final int           ID      = 9001;
+
+    private final BlockingQueue<Alert> mAlerts = new LinkedBlockingQueue<>();
+
+    @Test
+    public void backlogGrowth() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAlerts alerts = new PoolAlerts(sampler);
+        alerts.addRule(Rule.backlogGrowth("backlog", 1, TimeUnit.SECONDS, 50, 1));
+        alerts.addListener(mAlerts::add);
+        try {
+            // 200 submitted and 100 completed a second
+            for (int i = 0; i <= 5; i++) {
+                publish(sampler, i * 100, 0, i * 2, i);
+            }
+            final Alert alert = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(alert);
+            assertEquals("backlog", alert.getRule());
+            assertTrue(alert.isFiring());
+            assertEquals(100, alert.getValue(), 0.01);
+            // draining as fast as submitted
+            for (int i = 6; i <= 20; i++) {
+                publish(sampler, i * 100, 0, 10 + i, i);
+            }
+            final Alert resolved = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(resolved);
+            assertFalse(resolved.isFiring());
+        } finally {
+            alerts.close();
+        }
+    }
+
+    @Test
+    public void level() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAlerts alerts = new PoolAlerts(sampler);
+        alerts.addRule(Rule.level("queue", Series.QUEUED, 10, 5)
+                           .setDuration(200, TimeUnit.MILLISECONDS));
+        alerts.addListener(mAlerts::add);
+        try {
+            publish(sampler, 0, 12, 0, 0);
+            publish(sampler, 100, 12, 0, 0);
+            // a dip restarts the duration
+            publish(sampler, 200, 9, 0, 0);
+            publish(sampler, 300, 12, 0, 0);
+            publish(sampler, 400, 12, 0, 0);
+            assertNull(mAlerts.poll(100, TimeUnit.MILLISECONDS));
+            publish(sampler, 500, 12, 0, 0);
+            final Alert alert = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(alert);
+            assertTrue(alert.isFiring());
+            assertEquals(300, alert.getSince());
+            assertEquals(500, alert.getTimestamp());
+            // inside the band it keeps firing
+            publish(sampler, 600, 6, 0, 0);
+            publish(sampler, 700, 11, 0, 0);
+            assertNull(mAlerts.poll(100, TimeUnit.MILLISECONDS));
+            publish(sampler, 800, 4, 0, 0);
+            final Alert resolved = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(resolved);
+            assertFalse(resolved.isFiring());
+            assertEquals(500, resolved.getSince());
+            assertEquals(0, alerts.getDropped());
+        } finally {
+            alerts.close();
+        }
+    }
+
+    @Test
+    public void removeRule() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAlerts alerts = new PoolAlerts(sampler);
+        final Rule rule = Rule.level("queue", Series.QUEUED, 10, 5);
+        alerts.addRule(rule);
+        alerts.addListener(mAlerts::add);
+        try {
+            publish(sampler, 0, 12, 0, 0);
+            final Alert alert = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(alert);
+            assertTrue(alert.isFiring());
+            // the next sample of the pool resolves the alert of the removed rule
+            alerts.removeRule(rule);
+            publish(sampler, 100, 12, 0, 0);
+            final Alert resolved = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(resolved);
+            assertEquals("queue", resolved.getRule());
+            assertFalse(resolved.isFiring());
+            assertTrue(Double.isNaN(resolved.getValue()));
+            publish(sampler, 200, 12, 0, 0);
+            assertNull(mAlerts.poll(100, TimeUnit.MILLISECONDS));
+            // added again it starts afresh
+            alerts.addRule(rule);
+            publish(sampler, 300, 12, 0, 0);
+            final Alert again = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(again);
+            assertTrue(again.isFiring());
+            assertEquals(300, again.getSince());
+        } finally {
+            alerts.close();
+        }
+    }
+
+    @Test
+    public void series() {
+        // a level of these means nothing, they are refused before reaching the sampler thread
+        for (final Series series : EnumSet.of(Series.TIMESTAMP,
+                                              Series.THREAD_TIME,
+                                              Series.ACTIVE_TIME)) {
+            assertThrows(IllegalArgumentException.class,
+                         () -> Rule.level("level", series, 1, 0));
+            assertThrows(IllegalArgumentException.class,
+                         () -> Rule.threshold(series, ThresholdData.ALERT, 0.1));
+        }
+        // a rate of a running total is the average
+        assertNotNull(Rule.rate("busy", Series.ACTIVE_TIME, 1, TimeUnit.SECONDS, 1000, 500));
+        for (final Series series : EnumSet.range(Series.THREADS, Series.COMPLETED)) {
+            assertNotNull(Rule.level("level", series, 1, 0));
+        }
+    }
+
+    @Test
+    public void threshold() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAlerts alerts = new PoolAlerts(sampler);
+        alerts.addRule(Rule.threshold(Series.QUEUED, ThresholdData.ALERT, 0.5));
+        alerts.addListener(mAlerts::add);
+        final CountDownLatch release = new CountDownLatch(1);
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "A1");
+        try {
+            final int id = sampler.register("A1", executor);
+            sampler.sample();
+            sampler.setThreshold(id, new ThresholdData(0, "A1", 2, 3, -1));
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (final InterruptedException error) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            while (executor.getQueue().size() != 3) {
+                Thread.sleep(1);
+            }
+            sampler.sample();
+            final Alert alert = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(alert);
+            assertEquals("queued alert", alert.getRule());
+            assertEquals("A1", alert.getPoolName());
+            assertTrue(alert.isFiring());
+            // a shutdown pool resolves its alerts
+            release.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+            sampler.sample();
+            final Alert resolved = mAlerts.poll(1, TimeUnit.SECONDS);
+            assertNotNull(resolved);
+            assertFalse(resolved.isFiring());
+            assertTrue(Double.isNaN(resolved.getValue()));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            alerts.close();
+        }
+    }
+
+    private static void publish(final PoolSampler sampler,
+                                final long millis,
+                                final int queued,
+                                final long tasks,
+                                final long completed) {
+        sampler.publish(Collections.singletonList(new PoolSnapshot(ID,
+                "P",
+                millis,
+                TimeUnit.MILLISECONDS.toNanos(millis),
+                1,
+                1,
+                queued,
+                1,
+                tasks * 10,
+                completed * 10,
+                false,
+                null,
+                null)));
+    }
+}
@@ -0,0 +1,458 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Resizes the pools of a {@link PoolSampler} from their snapshots. A pool is grown while tasks
+ * keep queueing for longer than the target wait and the CPU has headroom, and shrunk while it
+ * stays mostly idle. The grow and shrink conditions leave a dead band between them, each has to
+ * hold for a time and a pool is not changed again until a cooldown has passed, so a pool near its
+ * sweet spot is left alone rather than oscillating. The times do not depend on how often the
+ * sampler samples the pool.
+ * <p>
+ * The queue wait is estimated with Little's law from the {@link PoolRates} of the pool over a short
+ * window, queued tasks divided by the completion rate, rather than from the recorded histograms,
+ * which lag behind, or from two consecutive samples, which may be a few milliseconds apart. A pool
+ * grows by a quarter of its core size, at least one thread, and shrinks by one thread at a time.
+ *
+ * <pre>
+ * final PoolAutoscaler autoscaler = new PoolAutoscaler(sampler);
+ * autoscaler.manage(sampler.register("Orders", executor), new PoolAutoscaler.Policy(2, 32));
+ * </pre>
+ *
+ * @author Bill
+ */
+public class PoolAutoscaler
+    implements
+        PoolSampler.Listener {
+
+    /**
+     * Number of decisions kept for each pool.
+     */
+    public static final int            DECISIONS = 16;
+
+    private static final long          NEVER     = Long.MIN_VALUE;
+
+    private final PoolSampler          mSampler;
+    private final DoubleSupplier       mCpuLoad;
+    private final Map<Integer, Scaled> mScaled   = new ConcurrentHashMap<>();
+
+    /**
+     * Bounds and tuning of one managed pool. The setters return this for chaining.
+     */
+    public static final class Policy {
+
+        private final int mMinCore;
+        private final int mMaxCore;
+        private long      mTargetWait      = TimeUnit.MILLISECONDS.toNanos(50);
+        private double    mMaxCpuLoad      = 0.85;
+        private double    mIdleUtilization = 0.5;
+        private long      mGrowAfter       = TimeUnit.MILLISECONDS.toNanos(300);
+        private long      mShrinkAfter     = TimeUnit.SECONDS.toNanos(3);
+        private long      mRateWindow      = 1000;
+        private long      mGrowCooldown    = TimeUnit.SECONDS.toNanos(2);
+        private long      mShrinkCooldown  = TimeUnit.SECONDS.toNanos(10);
+
+        /**
+         * Create a policy with the default tuning.
+         *
+         * @param minCore
+         *            smallest core pool size, at least 1
+         * @param maxCore
+         *            largest core pool size, not less than minCore
+         */
+        public Policy(final int minCore, final int maxCore) {
+            if (minCore < 1 || maxCore < minCore) {
+                throw new IllegalArgumentException(String.format("min %d max %d",
+                                                                 minCore,
+                                                                 maxCore));
+            }
+            mMinCore = minCore;
+            mMaxCore = maxCore;
+        }
+
+        /**
+         * @param time
+         *            estimated queue wait above which the pool grows. Default 50ms.
+         * @param unit
+         *            unit of time
+         * @return this
+         */
+        public Policy setTargetWait(final long time, final TimeUnit unit) {
+            mTargetWait = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * @param load
+         *            system CPU load, 0.0 to 1.0, at or above which the pool is not grown. Default
+         *            0.85.
+         * @return this
+         */
+        public Policy setMaxCpuLoad(final double load) {
+            mMaxCpuLoad = load;
+            return this;
+        }
+
+        /**
+         * @param utilization
+         *            fraction of the core threads active at or below which an empty queue counts
+         *            as idle. Default 0.5.
+         * @return this
+         */
+        public Policy setIdleUtilization(final double utilization) {
+            mIdleUtilization = utilization;
+            return this;
+        }
+
+        /**
+         * @param grow
+         *            time the pool has to stay under pressure before growing. Default 300ms.
+         * @param shrink
+         *            time the pool has to stay idle before shrinking. Default 3s.
+         * @param unit
+         *            unit of both times
+         * @return this
+         */
+        public Policy setDurations(final long grow, final long shrink, final TimeUnit unit) {
+            mGrowAfter = unit.toNanos(grow);
+            mShrinkAfter = unit.toNanos(shrink);
+            return this;
+        }
+
+        /**
+         * @param window
+         *            time the completion rate for the queue wait is measured over. Default 1s.
+         * @param unit
+         *            unit of window
+         * @return this
+         */
+        public Policy setRateWindow(final long window, final TimeUnit unit) {
+            mRateWindow = Math.max(1, unit.toMillis(window));
+            return this;
+        }
+
+        /**
+         * @param grow
+         *            time after any change before the pool may grow. Default 2s.
+         * @param shrink
+         *            time after any change before the pool may shrink. Default 10s.
+         * @param unit
+         *            unit of both times
+         * @return this
+         */
+        public Policy setCooldown(final long grow, final long shrink, final TimeUnit unit) {
+            mGrowCooldown = unit.toNanos(grow);
+            mShrinkCooldown = unit.toNanos(shrink);
+            return this;
+        }
+
+        public int getMinCore() {
+            return mMinCore;
+        }
+
+        public int getMaxCore() {
+            return mMaxCore;
+        }
+    }
+
+    /**
+     * One resize of a pool, or a grow held back for lack of CPU headroom.
+     */
+    public static final class Decision {
+
+        private final int    mId;
+        private final long   mTimestamp;
+        private final int    mFrom;
+        private final int    mTo;
+        private final String mReason;
+
+        public Decision(final int id,
+                        final long timestamp,
+                        final int from,
+                        final int to,
+                        final String reason) {
+            mId = id;
+            mTimestamp = timestamp;
+            mFrom = from;
+            mTo = to;
+            mReason = reason;
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        /**
+         * @return wall clock time in milliseconds of the snapshot which led to the decision
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * @return core pool size before
+         */
+        public int getFrom() {
+            return mFrom;
+        }
+
+        /**
+         * @return core pool size after, the same as before for a held grow
+         */
+        public int getTo() {
+            return mTo;
+        }
+
+        public String getReason() {
+            return mReason;
+        }
+
+        public boolean isHeld() {
+            return mFrom == mTo;
+        }
+
+        @Override
+        public String toString() {
+            return isHeld() ? String.format("held %d, %s", mFrom, mReason)
+                            : String.format("%d \u2192 %d, %s", mFrom, mTo, mReason);
+        }
+    }
+
+    /**
+     * Scale the pools using the system CPU load of the platform MXBean.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     */
+    public PoolAutoscaler(final PoolSampler sampler) {
+        this(sampler, systemCpuLoad());
+    }
+
+    /**
+     * Scale the pools.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param cpuLoad
+     *            system CPU load, 0.0 to 1.0 or negative if unknown
+     */
+    public PoolAutoscaler(final PoolSampler sampler, final DoubleSupplier cpuLoad) {
+        mSampler = sampler;
+        mCpuLoad = cpuLoad;
+        mSampler.addListener(this);
+    }
+
+    /**
+     * Start scaling a pool. The pool is first moved within the bounds of the policy.
+     *
+     * @param id
+     *            id returned by {@link PoolSampler#register(String, ThreadPoolExecutor)}
+     * @param policy
+     *            bounds and tuning
+     */
+    public void manage(final int id, final Policy policy) {
+        final Executor executor = mSampler.getExecutor(id);
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            throw new IllegalArgumentException("only a ThreadPoolExecutor can be scaled: "
+                                               + executor);
+        }
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        final Scaled scaled = new Scaled(pool, policy, pool.getMaximumPoolSize());
+        final int core = pool.getCorePoolSize();
+        final int bounded = Math.max(policy.mMinCore, Math.min(policy.mMaxCore, core));
+        if (bounded != core) {
+            scaled.resize(bounded);
+        }
+        mScaled.put(id, scaled);
+    }
+
+    /**
+     * Stop scaling a pool, it keeps its current size.
+     *
+     * @param id
+     *            id of the pool
+     */
+    public void release(final int id) {
+        mScaled.remove(id);
+    }
+
+    public boolean isManaged(final int id) {
+        return mScaled.containsKey(id);
+    }
+
+    /**
+     * @param id
+     *            id of the pool
+     * @return the latest decisions, oldest first, unmodifiable and never changed
+     */
+    public List<Decision> getDecisions(final int id) {
+        final Scaled scaled = mScaled.get(id);
+        return scaled == null ? Collections.emptyList() : scaled.mDecisions;
+    }
+
+    /**
+     * Stop listening to the sampler, the pools keep their current sizes.
+     */
+    public void close() {
+        mSampler.removeListener(this);
+        mScaled.clear();
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            final Scaled scaled = mScaled.get(snapshot.getId());
+            if (scaled == null) {
+                continue;
+            }
+            if (snapshot.isShutdown()) {
+                mScaled.remove(snapshot.getId());
+            } else {
+                scaled.sampled(snapshot);
+            }
+        }
+    }
+
+    private static DoubleSupplier systemCpuLoad() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os)::getCpuLoad;
+        }
+        // the load average is not a fraction of the CPUs, scale it to one
+        return () -> os.getSystemLoadAverage() / os.getAvailableProcessors();
+    }
+
+    /**
+     * State of one managed pool. Only the sampling thread changes it.
+     */
+    private final class Scaled {
+
+        private final ThreadPoolExecutor mExecutor;
+        private final Policy             mPolicy;
+        private final int                mMaximumPoolSize;
+        private final PoolHistory        mHistory;
+        private volatile List<Decision>  mDecisions   = Collections.emptyList();
+        private boolean                  mStarted;
+        // nano time the condition began to hold, NEVER while it does not
+        private long                     mGrowSince   = NEVER;
+        private long                     mShrinkSince = NEVER;
+        private long                     mLastChange;
+
+        private Scaled(final ThreadPoolExecutor executor,
+                       final Policy policy,
+                       final int maximumPoolSize) {
+            mExecutor = executor;
+            mPolicy = policy;
+            mMaximumPoolSize = maximumPoolSize;
+            // a small history of its own, stepped so the window spans a few dozen slots
+            mHistory = new PoolHistory(64, Math.max(1, policy.mRateWindow / 32));
+        }
+
+        private void sampled(final PoolSnapshot snapshot) {
+            final long now = snapshot.getNanoTime();
+            if (!mStarted) {
+                mStarted = true;
+                // a newly managed pool may change as soon as its condition holds
+                mLastChange = now - Math.max(mPolicy.mGrowCooldown, mPolicy.mShrinkCooldown);
+            }
+            mHistory.add(snapshot);
+            final PoolRates rates = PoolRates.of(mHistory, mPolicy.mRateWindow);
+            if (rates == null) {
+                return;
+            }
+            final int core = snapshot.getCorePoolSize();
+            final int queued = snapshot.getQueued();
+            // Little's law, nothing completing over the window with tasks queued is unbounded
+            final double wait = queued == 0 ? 0
+                                            : rates.getCompletionRate() > 0
+                                                    ? queued / rates.getCompletionRate() * 1e9
+                                                    : Double.POSITIVE_INFINITY;
+            final boolean pressed = queued > 0 && wait >= mPolicy.mTargetWait;
+            final boolean idle = queued == 0
+                                 && snapshot.getActive() <= core * mPolicy.mIdleUtilization;
+            mGrowSince = since(mGrowSince, pressed, now);
+            mShrinkSince = since(mShrinkSince, idle, now);
+            final long sinceChange = now - mLastChange;
+            if (mGrowSince != NEVER
+                && now - mGrowSince >= mPolicy.mGrowAfter
+                && sinceChange >= mPolicy.mGrowCooldown
+                && core < mPolicy.mMaxCore) {
+                final double load = mCpuLoad.getAsDouble();
+                if (load >= mPolicy.mMaxCpuLoad) {
+                    // record the first held grow of a streak only
+                    if (mDecisions.isEmpty() || !last().isHeld()) {
+                        decide(snapshot, core, String.format("cpu %.0f%%", load * 100));
+                    }
+                } else {
+                    final int to = Math.min(mPolicy.mMaxCore, core + Math.max(1, core / 4));
+                    decide(snapshot, to, Double.isInfinite(wait) ? "queue stalled"
+                                                                 : String.format("wait %.0f ms",
+                                                                                 wait / 1e6));
+                }
+            } else if (mShrinkSince != NEVER
+                       && now - mShrinkSince >= mPolicy.mShrinkAfter
+                       && sinceChange >= mPolicy.mShrinkCooldown
+                       && core > mPolicy.mMinCore) {
+                decide(snapshot, core - 1, "idle");
+            }
+        }
+
+        private long since(final long since, final boolean holds, final long now) {
+            return !holds ? NEVER : since == NEVER ? now : since;
+        }
+
+        private Decision last() {
+            return mDecisions.get(mDecisions.size() - 1);
+        }
+
+        private void decide(final PoolSnapshot snapshot, final int to, final String reason) {
+            final int from = snapshot.getCorePoolSize();
+            if (to != from) {
+                resize(to);
+                mLastChange = snapshot.getNanoTime();
+                mGrowSince = NEVER;
+                mShrinkSince = NEVER;
+            }
+            // copied on write so the window can read the decisions without a lock
+            final List<Decision> decisions = new ArrayList<>(mDecisions);
+            if (decisions.size() == DECISIONS) {
+                decisions.remove(0);
+            }
+            decisions.add(new Decision(snapshot.getId(),
+                    snapshot.getTimestamp(),
+                    from,
+                    to,
+                    reason));
+            mDecisions = Collections.unmodifiableList(decisions);
+        }
+
+        /**
+         * Set the core size, the maximum follows it above the size the pool was created with.
+         *
+         * @param core
+         *            new core pool size
+         */
+        private void resize(final int core) {
+            final int max = Math.max(core, mMaximumPoolSize);
+            // order the changes so core never exceeds max in between
+            if (max >= mExecutor.getMaximumPoolSize()) {
+                mExecutor.setMaximumPoolSize(max);
+                mExecutor.setCorePoolSize(core);
+            } else {
+                mExecutor.setCorePoolSize(core);
+                mExecutor.setMaximumPoolSize(max);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolAutoscalerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private double            mLoad;
+    private long              mCompleted;
+
+    @Test
+    public void grow() {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAutoscaler autoscaler = new PoolAutoscaler(sampler, () -> mLoad);
+        final ThreadPoolExecutor executor = MonitorWindow.getNamedExecutor(null, 2, 2, "S1");
+        try {
+            final int id = sampler.register("S1", executor);
+            autoscaler.manage(id,
+                              new PoolAutoscaler.Policy(2, 8).setDurations(100,
+                                                                             200,
+                                                                             TimeUnit.MILLISECONDS)
+                                                              .setCooldown(1,
+                                                                           5,
+                                                                           TimeUnit.SECONDS));
+            // 10 queued at 100 completions a second is a 100ms wait
+            sample(autoscaler, id, executor, 0, 10, 2);
+            sample(autoscaler, id, executor, 100, 10, 2);
+            assertEquals(2, executor.getCorePoolSize());
+            sample(autoscaler, id, executor, 200, 10, 2);
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(3, executor.getMaximumPoolSize());
+            // cooldown
+            sample(autoscaler, id, executor, 300, 10, 3);
+            sample(autoscaler, id, executor, 400, 10, 3);
+            assertEquals(3, executor.getCorePoolSize());
+            sample(autoscaler, id, executor, 1200, 10, 3);
+            assertEquals(4, executor.getCorePoolSize());
+
+            // no CPU headroom, the hold is recorded once
+            mLoad = 0.95;
+            for (int time = 2300; time < 3000; time += 100) {
+                sample(autoscaler, id, executor, time, 10, 4);
+            }
+            assertEquals(4, executor.getCorePoolSize());
+            final List<PoolAutoscaler.Decision> decisions = autoscaler.getDecisions(id);
+            assertEquals(3, decisions.size());
+            assertEquals(2, decisions.get(0).getFrom());
+            assertEquals(3, decisions.get(0).getTo());
+            assertTrue(decisions.get(0).getReason().startsWith("wait"));
+            assertTrue(decisions.get(2).isHeld());
+            assertEquals("held 4, cpu 95%", decisions.get(2).toString());
+        } finally {
+            autoscaler.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void interval() {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAutoscaler autoscaler = new PoolAutoscaler(sampler, () -> mLoad);
+        final ThreadPoolExecutor executor = MonitorWindow.getNamedExecutor(null, 2, 2, "S3");
+        try {
+            final int id = sampler.register("S3", executor);
+            autoscaler.manage(id, new PoolAutoscaler.Policy(2, 8));
+            // sampled every 10ms, 10 tasks complete every 100ms, 2 queued is a 20ms wait
+            for (int time = 0; time <= 1000; time += 10) {
+                sample(autoscaler, id, executor, time, 2, 2, time % 100 == 0 ? 10 : 0);
+            }
+            assertEquals(2, executor.getCorePoolSize());
+            // idle and sampled every 2s, shrinks once idle for 3s rather than 30 samples
+            final PoolAutoscaler.Policy policy = new PoolAutoscaler.Policy(1, 8);
+            autoscaler.manage(id, policy.setCooldown(0, 0, TimeUnit.SECONDS));
+            for (int time = 2000; time <= 6000; time += 2000) {
+                sample(autoscaler, id, executor, time, 0, 0, 0);
+            }
+            assertEquals(2, executor.getCorePoolSize());
+            sample(autoscaler, id, executor, 8000, 0, 0, 0);
+            assertEquals(1, executor.getCorePoolSize());
+        } finally {
+            autoscaler.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shrink() {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolAutoscaler autoscaler = new PoolAutoscaler(sampler, () -> -1);
+        final ThreadPoolExecutor executor = MonitorWindow.getNamedExecutor(null, 4, 4, "S2");
+        try {
+            final int id = sampler.register("S2", executor);
+            autoscaler.manage(id,
+                              new PoolAutoscaler.Policy(3, 8).setDurations(100,
+                                                                             200,
+                                                                             TimeUnit.MILLISECONDS)
+                                                              .setCooldown(1,
+                                                                           5,
+                                                                           TimeUnit.SECONDS));
+            sample(autoscaler, id, executor, 0, 0, 1);
+            sample(autoscaler, id, executor, 100, 0, 1);
+            sample(autoscaler, id, executor, 200, 0, 1);
+            assertEquals(4, executor.getCorePoolSize());
+            sample(autoscaler, id, executor, 300, 0, 1);
+            assertEquals(3, executor.getCorePoolSize());
+            // the maximum stays at the size the pool was created with
+            assertEquals(4, executor.getMaximumPoolSize());
+            // between the thresholds nothing changes
+            for (int time = 400; time < 10_000; time += 100) {
+                sample(autoscaler, id, executor, time, 0, 3);
+            }
+            assertEquals(3, executor.getCorePoolSize());
+            // never below the minimum
+            for (int time = 10_000; time < 20_000; time += 100) {
+                sample(autoscaler, id, executor, time, 0, 0);
+            }
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(1, autoscaler.getDecisions(id).size());
+            assertEquals("idle", autoscaler.getDecisions(id).get(0).getReason());
+
+            executor.shutdown();
+            autoscaler.sampled(sampler.sample());
+            assertFalse(autoscaler.isManaged(id));
+        } finally {
+            autoscaler.close();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Feed a snapshot which completed 10 tasks in the 100ms since the previous one.
+     */
+    private void sample(final PoolAutoscaler autoscaler,
+                        final int id,
+                        final ThreadPoolExecutor executor,
+                        final long millis,
+                        final int queued,
+                        final int active) {
+        sample(autoscaler, id, executor, millis, queued, active, 10);
+    }
+
+    private void sample(final PoolAutoscaler autoscaler,
+                        final int id,
+                        final ThreadPoolExecutor executor,
+                        final long millis,
+                        final int queued,
+                        final int active,
+                        final int completed) {
+        mCompleted += completed;
+        autoscaler.sampled(Collections.singletonList(new PoolSnapshot(id,
+                "S",
+                millis,
+                millis * MS,
+                executor.getCorePoolSize(),
+                executor.getCorePoolSize(),
+                queued,
+                active,
+                mCompleted + queued,
+                mCompleted,
+                false,
+                null,
+                null)));
+    }
+}
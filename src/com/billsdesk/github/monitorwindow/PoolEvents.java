@@ -0,0 +1,174 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * Java Flight Recorder events of the monitored pools, so executor saturation can be lined up
+ * against GC, lock and I/O events in JDK Mission Control. Both events are disabled unless a
+ * recording enables them, e.g. <code>jcmd &lt;pid&gt; JFR.start settings=profile</code> with
+ * <code>com.billsdesk.monitorwindow.PoolSample#enabled=true</code>.
+ * <p>
+ * {@link PoolSample} is a periodic event, one per pool each period, carrying the values the
+ * Monitor draws. The instance of this class listening to the sampler keeps the latest snapshot of
+ * each pool and emits them from the recorder's periodic hook, nothing is done while the event is
+ * disabled. {@link TaskExecution} is emitted by {@link MonitoredThreadPoolExecutor}.
+ *
+ * @author Bill
+ */
+public class PoolEvents
+    implements
+        PoolSampler.Listener {
+
+    /**
+     * Latest sample of one pool.
+     */
+    @Name("com.billsdesk.monitorwindow.PoolSample")
+    @Label("Thread Pool Sample")
+    @Category({"Monitor Window"})
+    @Period("1 s")
+    @StackTrace(false)
+    public static final class PoolSample
+        extends
+            Event {
+
+        @Label("Pool")
+        String pool;
+
+        @Label("Core Pool Size")
+        int    corePoolSize;
+
+        @Label("Threads")
+        int    threads;
+
+        @Label("Queued")
+        int    queued;
+
+        @Label("Active")
+        int    active;
+
+        @Label("Tasks")
+        @Description("Tasks submitted since the pool was created")
+        long   taskCount;
+
+        @Label("Completed")
+        @Description("Tasks completed since the pool was created")
+        long   completedCount;
+
+        @Label("Queue Wait p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long   queueWaitP99;
+
+        @Label("Run Time p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long   runTimeP99;
+    }
+
+    /**
+     * One task from submission to completion. The duration is the queue wait plus the run time.
+     */
+    @Name("com.billsdesk.monitorwindow.TaskExecution")
+    @Label("Thread Pool Task")
+    @Category({"Monitor Window"})
+    @Threshold("10 ms")
+    @StackTrace(false)
+    public static final class TaskExecution
+        extends
+            Event {
+
+        @Label("Pool")
+        String   pool;
+
+        @Label("Task Class")
+        @Description("Class of the task given to execute or submit")
+        Class<?> taskClass;
+
+        @Label("Task Type")
+        @Description("The TaskType of the task, otherwise its class")
+        String   taskType;
+
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long     queueWait;
+
+        @Label("Run Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long     runTime;
+
+        @Label("Failed")
+        @Description("The task threw an exception, or its Future completed with one")
+        boolean  failed;
+    }
+
+    private final PoolSampler                mSampler;
+    private final Map<Integer, PoolSnapshot> mLatest = new ConcurrentSkipListMap<>();
+    private final Runnable                   mHook   = this::emit;
+
+    /**
+     * Start listening to the sampler and emit {@link PoolSample} events while enabled.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     */
+    public PoolEvents(final PoolSampler sampler) {
+        mSampler = sampler;
+        mSampler.addListener(this);
+        FlightRecorder.addPeriodicEvent(PoolSample.class, mHook);
+    }
+
+    /**
+     * Stop listening and emitting.
+     */
+    public void close() {
+        mSampler.removeListener(this);
+        FlightRecorder.removePeriodicEvent(mHook);
+        mLatest.clear();
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                mLatest.remove(snapshot.getId());
+            } else {
+                mLatest.put(snapshot.getId(), snapshot);
+            }
+        }
+    }
+
+    private void emit() {
+        for (final PoolSnapshot snapshot : mLatest.values()) {
+            final PoolSample event = new PoolSample();
+            event.pool = snapshot.getName();
+            event.corePoolSize = snapshot.getCorePoolSize();
+            event.threads = snapshot.getThreads();
+            event.queued = snapshot.getQueued();
+            event.active = snapshot.getActive();
+            event.taskCount = snapshot.getTaskCount();
+            event.completedCount = snapshot.getCompletedCount();
+            event.queueWaitP99 = p99(snapshot.getQueueWait());
+            event.runTimeP99 = p99(snapshot.getRunTime());
+            event.commit();
+        }
+    }
+
+    private static long p99(@Nullable final LatencySummary summary) {
+        return summary == null ? 0 : summary.getP99();
+    }
+}
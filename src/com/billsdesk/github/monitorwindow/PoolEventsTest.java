@@ -0,0 +1,130 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolEventsTest {
+
+    @Test
+    public void poolSample() throws IOException {
+        final PoolSampler sampler = new PoolSampler();
+        final PoolEvents events = new PoolEvents(sampler);
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 3, 3, "F1");
+        final Path file = Files.createTempFile("pool", ".jfr");
+        try (Recording recording = new Recording()) {
+            sampler.register("F1", executor);
+            sampler.sample();
+            recording.enable(PoolEvents.PoolSample.class).withPeriod(Duration.ofMillis(50));
+            recording.start();
+            sleep(300);
+            recording.stop();
+            recording.dump(file);
+            final List<RecordedEvent> samples = read(file, "com.billsdesk.monitorwindow.PoolSample");
+            assertFalse(samples.isEmpty());
+            assertEquals("F1", samples.get(0).getString("pool"));
+            assertEquals(3, samples.get(0).getInt("corePoolSize"));
+        } finally {
+            events.close();
+            executor.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void taskExecution() throws IOException, InterruptedException, ExecutionException {
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "F2");
+        final Path file = Files.createTempFile("task", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PoolEvents.TaskExecution.class).withThreshold(Duration.ofMillis(20));
+            recording.start();
+            executor.submit(new Slow()).get();
+            executor.submit(() -> {
+                // too fast to pass the threshold
+            }).get();
+            final Future<?> failing = executor.submit(() -> {
+                sleep(50);
+                throw new IllegalStateException("failed");
+            });
+            assertThrows(ExecutionException.class, failing::get);
+            // the event is committed after the future completes
+            while (executor.getCompleted() < 3) {
+                Thread.sleep(1);
+            }
+            recording.stop();
+            recording.dump(file);
+            final List<RecordedEvent> tasks = read(file, "com.billsdesk.monitorwindow.TaskExecution");
+            assertEquals(2, tasks.size());
+            for (final RecordedEvent task : tasks) {
+                assertEquals("F2", task.getString("pool"));
+                assertTrue(task.getDuration("runTime").toMillis() >= 50);
+                if (task.getBoolean("failed")) {
+                    // the future keeps the exception, the task is still counted as failed
+                    assertTrue(task.getClass("taskClass")
+                                   .getName()
+                                   .startsWith(PoolEventsTest.class.getName() + "$$Lambda"));
+                } else {
+                    // the class of the task submitted, not of the future wrapping it
+                    assertEquals(Slow.class.getName(), task.getClass("taskClass").getName());
+                    assertEquals(Slow.class.getName(), task.getString("taskType"));
+                }
+            }
+            assertEquals(1, tasks.stream().filter(task -> task.getBoolean("failed")).count());
+        } finally {
+            executor.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> read(final Path file, final String name) throws IOException {
+        return RecordingFile.readAllEvents(file)
+                            .stream()
+                            .filter(event -> event.getEventType().getName().equals(name))
+                            .collect(Collectors.toList());
+    }
+
+    /**
+     * Task slow enough to pass the threshold.
+     */
+    private static final class Slow
+        implements
+            Runnable {
+
+        @Override
+        public void run() {
+            sleep(50);
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.billsdesk.github.monitorwindow;
+
+/**
+ * Time series of the samples of one pool, one {@link SampleRing} per metric. Written only by the
+ * {@link PoolSampler} thread, read by any consumer.
+ * <p>
+ * A history with a step is indexed by time rather than by sample, each slot covers one step
+ * whatever the pool's sampling interval. Samples within the same step share a slot, which keeps
+ * the highest threads, queued and active counts and the latest of the other series, so a short
+ * spike sampled at a fast interval is not lost. The steps a pool was not sampled in, e.g. while it
+ * is idle, repeat the previous slot. A sparkline drawing one slot per pixel therefore has a uniform
+ * time axis, and the capacity covers a fixed time, capacity times step.
+ * <p>
+ * The {@link Series#THREAD_TIME} and {@link Series#ACTIVE_TIME} series are running totals of the
+ * threads and active counts multiplied by the milliseconds each sample covers, the change between
+ * two slots gives their time weighted average without walking the slots in between.
+ *
+ * @author Bill
+ */
+public final class PoolHistory {
+
+    /**
+     * Metrics recorded for each slot.
+     */
+    public enum Series {
+        TIMESTAMP, THREADS, QUEUED, ACTIVE, TASKS, COMPLETED, THREAD_TIME, ACTIVE_TIME
+    };
+
+    private final SampleRing[] mRings;
+    private final long         mStep;
+    // writer thread only
+    private long               mSlot;
+    private long               mThreadTime;
+    private long               mActiveTime;
+
+    /**
+     * Create a history with a slot per sample.
+     *
+     * @param capacity
+     *            number of samples to keep for each metric
+     */
+    public PoolHistory(final int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * Create the history.
+     *
+     * @param capacity
+     *            number of slots to keep for each metric
+     * @param step
+     *            milliseconds covered by a slot, 0 for a slot per sample
+     */
+    public PoolHistory(final int capacity, final long step) {
+        if (step < 0) {
+            throw new IllegalArgumentException("step must not be negative: " + step);
+        }
+        mRings = new SampleRing[Series.values().length];
+        for (int i = 0; i < mRings.length; i++) {
+            mRings[i] = new SampleRing(capacity);
+        }
+        mStep = step;
+    }
+
+    public SampleRing get(final Series series) {
+        return mRings[series.ordinal()];
+    }
+
+    /**
+     * @return milliseconds covered by a slot, 0 for a slot per sample
+     */
+    public long getStep() {
+        return mStep;
+    }
+
+    /**
+     * Append a snapshot. Only the sampler thread may call this.
+     *
+     * @param snapshot
+     *            snapshot
+     */
+    void add(final PoolSnapshot snapshot) {
+        final SampleRing times = get(Series.TIMESTAMP);
+        final long count = times.getCount();
+        final long timestamp = snapshot.getTimestamp();
+        if (count > 0) {
+            // the sample stands for the time since the previous one
+            final long elapsed = Math.max(0, timestamp - times.getLatest());
+            mThreadTime += elapsed * snapshot.getThreads();
+            mActiveTime += elapsed * snapshot.getActive();
+        }
+        final long slot = mStep > 0 ? Math.floorDiv(timestamp, mStep) : count;
+        if (count > 0 && slot <= mSlot) {
+            // another sample within the latest step, or a clock gone back
+            times.setLatest(timestamp);
+            max(Series.THREADS, snapshot.getThreads());
+            max(Series.QUEUED, snapshot.getQueued());
+            max(Series.ACTIVE, snapshot.getActive());
+            get(Series.TASKS).setLatest(snapshot.getTaskCount());
+            get(Series.COMPLETED).setLatest(snapshot.getCompletedCount());
+            get(Series.THREAD_TIME).setLatest(mThreadTime);
+            get(Series.ACTIVE_TIME).setLatest(mActiveTime);
+            return;
+        }
+        if (count > 0) {
+            // the steps not sampled hold the previous slot, more than the capacity is overwritten
+            final long gap = Math.min(slot - mSlot - 1, times.getCapacity());
+            for (long i = 0; i < gap; i++) {
+                for (final SampleRing ring : mRings) {
+                    ring.add(ring.getLatest());
+                }
+            }
+        }
+        mSlot = slot;
+        times.add(timestamp);
+        get(Series.THREADS).add(snapshot.getThreads());
+        get(Series.QUEUED).add(snapshot.getQueued());
+        get(Series.ACTIVE).add(snapshot.getActive());
+        get(Series.TASKS).add(snapshot.getTaskCount());
+        get(Series.COMPLETED).add(snapshot.getCompletedCount());
+        get(Series.THREAD_TIME).add(mThreadTime);
+        get(Series.ACTIVE_TIME).add(mActiveTime);
+    }
+
+    private void max(final Series series, final long value) {
+        final SampleRing ring = get(series);
+        if (value > ring.getLatest()) {
+            ring.setLatest(value);
+        }
+    }
+
+    /**
+     * Discard every sample. Only the writer thread may call this.
+     */
+    void clear() {
+        for (final SampleRing ring : mRings) {
+            ring.clear();
+        }
+        mThreadTime = 0;
+        mActiveTime = 0;
+    }
+}
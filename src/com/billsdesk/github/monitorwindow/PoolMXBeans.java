@@ -0,0 +1,326 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * Registers a {@link ThreadPoolMXBean} for every pool of a {@link PoolSampler} so the pools can be
+ * watched from JConsole or a JMX agent without a window. A bean is registered on the first
+ * snapshot of a pool and unregistered when the pool is shutdown. The attributes are read from the
+ * latest snapshot, a JMX poll never calls the executor's lock-taking getters.
+ * <p>
+ * The ObjectName is {@value #DOMAIN}:type=ThreadPool,name=<i>pool name</i>, the name given to
+ * {@link MonitorWindow#getNamedExecutor(MonitorWindow, int, int, String)} which is also the prefix
+ * used by its NamedThreadFactory. If two pools share a name the id of the later one is added.
+ *
+ * @author Bill
+ */
+public class PoolMXBeans
+    implements
+        PoolSampler.Listener {
+
+    public static final String              DOMAIN = "com.billsdesk.monitorwindow";
+
+    /**
+     * Management interface of one pool.
+     */
+    public interface ThreadPoolMXBean {
+
+        String getName();
+
+        int getCorePoolSize();
+
+        int getMaximumPoolSize();
+
+        int getThreads();
+
+        int getQueued();
+
+        int getActive();
+
+        long getTaskCount();
+
+        long getCompletedTaskCount();
+
+        /**
+         * @return tasks submitted per second over the last second or more
+         */
+        double getArrivalRate();
+
+        /**
+         * @return tasks completed per second over the last second or more
+         */
+        double getCompletionRate();
+
+        /**
+         * @return 99th percentile of the queue wait in milliseconds, -1 if not recorded
+         */
+        double getQueueWaitP99Millis();
+
+        /**
+         * @return 99th percentile of the run time in milliseconds, -1 if not recorded
+         */
+        double getRunTimeP99Millis();
+
+        /**
+         * @return wall clock time in milliseconds of the snapshot the attributes were read from
+         */
+        long getSampleTime();
+
+        /**
+         * Resize the pool. Only a ThreadPoolExecutor can be resized.
+         *
+         * @param corePoolSize
+         *            new core pool size
+         * @param maximumPoolSize
+         *            new maximum pool size, not less than the core pool size
+         */
+        void resize(int corePoolSize, int maximumPoolSize);
+    }
+
+    private final PoolSampler               mSampler;
+    private final MBeanServer               mServer;
+    private final Map<Integer, PoolBean>    mBeans = new ConcurrentHashMap<>();
+
+    /**
+     * Register the pools of the sampler with the platform MBean server.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     */
+    public PoolMXBeans(final PoolSampler sampler) {
+        this(sampler, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Register the pools of the sampler.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param server
+     *            MBean server
+     */
+    public PoolMXBeans(final PoolSampler sampler, final MBeanServer server) {
+        mSampler = sampler;
+        mServer = server;
+        mSampler.addListener(this);
+    }
+
+    /**
+     * @param id
+     *            id of the pool
+     * @return name the bean of the pool is registered under or null if none
+     */
+    @Nullable
+    public ObjectName getObjectName(final int id) {
+        final PoolBean bean = mBeans.get(id);
+        return bean == null ? null : bean.mObjectName;
+    }
+
+    /**
+     * Stop listening and unregister every bean.
+     */
+    public void close() {
+        mSampler.removeListener(this);
+        for (final Integer id : mBeans.keySet()) {
+            unregister(id);
+        }
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                unregister(snapshot.getId());
+            } else {
+                PoolBean bean = mBeans.get(snapshot.getId());
+                if (bean == null) {
+                    bean = register(snapshot);
+                }
+                if (bean != null) {
+                    bean.update(snapshot);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private PoolBean register(final PoolSnapshot snapshot) {
+        final Executor executor = mSampler.getExecutor(snapshot.getId());
+        if (executor == null) {
+            return null;
+        }
+        try {
+            final String name = ObjectName.quote(snapshot.getName());
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=ThreadPool,name=" + name);
+            if (mServer.isRegistered(objectName)) {
+                objectName = new ObjectName(DOMAIN
+                                            + ":type=ThreadPool,name="
+                                            + name
+                                            + ",id="
+                                            + snapshot.getId());
+            }
+            final PoolBean bean = new PoolBean(objectName, executor, snapshot);
+            mServer.registerMBean(bean, objectName);
+            mBeans.put(snapshot.getId(), bean);
+            return bean;
+        } catch (final InstanceAlreadyExistsException error) {
+            return null; // registered by another sampler consumer
+        } catch (final JMException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    private void unregister(final int id) {
+        final PoolBean bean = mBeans.remove(id);
+        if (bean != null) {
+            try {
+                mServer.unregisterMBean(bean.mObjectName);
+            } catch (final JMException error) {
+                // already gone
+            }
+        }
+    }
+
+    private static final class PoolBean
+        implements
+            ThreadPoolMXBean {
+
+        private static final long        RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+        private final ObjectName         mObjectName;
+        private final Executor           mExecutor;
+        private volatile PoolSnapshot    mSnapshot;
+        // written only by the sampler thread
+        private PoolSnapshot             mRateBase;
+        private volatile double          mArrivalRate;
+        private volatile double          mCompletionRate;
+
+        private PoolBean(final ObjectName objectName,
+                         final Executor executor,
+                         final PoolSnapshot snapshot) {
+            mObjectName = objectName;
+            mExecutor = executor;
+            mSnapshot = snapshot;
+            mRateBase = snapshot;
+        }
+
+        private void update(final PoolSnapshot snapshot) {
+            mSnapshot = snapshot;
+            final long elapsed = snapshot.getNanoTime() - mRateBase.getNanoTime();
+            if (elapsed >= RATE_INTERVAL) {
+                final double seconds = elapsed / 1e9;
+                mArrivalRate = (snapshot.getTaskCount() - mRateBase.getTaskCount()) / seconds;
+                mCompletionRate = (snapshot.getCompletedCount() - mRateBase.getCompletedCount())
+                                  / seconds;
+                mRateBase = snapshot;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return mSnapshot.getName();
+        }
+
+        @Override
+        public int getCorePoolSize() {
+            return mSnapshot.getCorePoolSize();
+        }
+
+        @Override
+        public int getMaximumPoolSize() {
+            return mExecutor instanceof ThreadPoolExecutor
+                ? ((ThreadPoolExecutor) mExecutor).getMaximumPoolSize() // a volatile read, no lock
+                : mSnapshot.getCorePoolSize();
+        }
+
+        @Override
+        public int getThreads() {
+            return mSnapshot.getThreads();
+        }
+
+        @Override
+        public int getQueued() {
+            return mSnapshot.getQueued();
+        }
+
+        @Override
+        public int getActive() {
+            return mSnapshot.getActive();
+        }
+
+        @Override
+        public long getTaskCount() {
+            return mSnapshot.getTaskCount();
+        }
+
+        @Override
+        public long getCompletedTaskCount() {
+            return mSnapshot.getCompletedCount();
+        }
+
+        @Override
+        public double getArrivalRate() {
+            return mArrivalRate;
+        }
+
+        @Override
+        public double getCompletionRate() {
+            return mCompletionRate;
+        }
+
+        @Override
+        public double getQueueWaitP99Millis() {
+            return p99Millis(mSnapshot.getQueueWait());
+        }
+
+        @Override
+        public double getRunTimeP99Millis() {
+            return p99Millis(mSnapshot.getRunTime());
+        }
+
+        @Override
+        public long getSampleTime() {
+            return mSnapshot.getTimestamp();
+        }
+
+        @Override
+        public void resize(final int corePoolSize, final int maximumPoolSize) {
+            if (!(mExecutor instanceof ThreadPoolExecutor)) {
+                throw new UnsupportedOperationException(mExecutor.getClass().getName()
+                                                        + " can't be resized");
+            }
+            final ThreadPoolExecutor executor = (ThreadPoolExecutor) mExecutor;
+            if (corePoolSize < 0 || maximumPoolSize <= 0 || maximumPoolSize < corePoolSize) {
+                throw new IllegalArgumentException(String.format("core %d max %d",
+                                                                 corePoolSize,
+                                                                 maximumPoolSize));
+            }
+            // order the changes so core never exceeds max in between
+            if (maximumPoolSize >= executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(maximumPoolSize);
+                executor.setCorePoolSize(corePoolSize);
+            } else {
+                executor.setCorePoolSize(corePoolSize);
+                executor.setMaximumPoolSize(maximumPoolSize);
+            }
+        }
+
+        private static double p99Millis(@Nullable final LatencySummary summary) {
+            return summary == null ? -1 : summary.getP99() / 1e6;
+        }
+    }
+}
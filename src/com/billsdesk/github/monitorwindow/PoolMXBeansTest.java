@@ -0,0 +1,93 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolMXBeansTest {
+
+    @Test
+    public void lifecycle() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final PoolSampler sampler = new PoolSampler();
+        final PoolMXBeans beans = new PoolMXBeans(sampler, server);
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 2, 2, "J1");
+        try {
+            final int id = sampler.register("J1", executor);
+            assertNull(beans.getObjectName(id));
+            sampler.sample();
+            final ObjectName name = beans.getObjectName(id);
+            assertNotNull(name);
+            assertEquals(new ObjectName(PoolMXBeans.DOMAIN + ":type=ThreadPool,name=\"J1\""), name);
+            assertTrue(server.isRegistered(name));
+            assertEquals("J1", server.getAttribute(name, "Name"));
+            assertEquals(2, server.getAttribute(name, "CorePoolSize"));
+            assertEquals(0L, server.getAttribute(name, "TaskCount"));
+
+            server.invoke(name,
+                          "resize",
+                          new Object[] {3, 5},
+                          new String[] {int.class.getName(), int.class.getName()});
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(5, executor.getMaximumPoolSize());
+            // attributes come from the snapshot, not the executor
+            assertEquals(2, server.getAttribute(name, "CorePoolSize"));
+            sampler.sample();
+            assertEquals(3, server.getAttribute(name, "CorePoolSize"));
+
+            executor.shutdown();
+            sampler.sample();
+            assertFalse(server.isRegistered(name));
+            assertNull(beans.getObjectName(id));
+        } finally {
+            beans.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sameName() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final PoolSampler sampler = new PoolSampler();
+        final PoolMXBeans beans = new PoolMXBeans(sampler, server);
+        final MonitoredThreadPoolExecutor first =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "J2");
+        final MonitoredThreadPoolExecutor second =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "J2");
+        try {
+            final int firstId = sampler.register("J2", first);
+            final int secondId = sampler.register("J2", second);
+            sampler.sample();
+            final ObjectName firstName = beans.getObjectName(firstId);
+            final ObjectName secondName = beans.getObjectName(secondId);
+            assertNotNull(firstName);
+            assertNotNull(secondName);
+            assertNotEquals(firstName, secondName);
+            beans.close();
+            assertFalse(server.isRegistered(firstName));
+            assertFalse(server.isRegistered(secondName));
+        } finally {
+            beans.close();
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+}
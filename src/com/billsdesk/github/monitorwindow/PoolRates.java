@@ -0,0 +1,223 @@
+package com.billsdesk.github.monitorwindow;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.PoolHistory.Series;
+
+/**
+ * Rates of one pool over a sliding window of its {@link PoolHistory}, computed by the
+ * {@link PoolSampler} after each sample. The task and completed counts only ever grow, their change
+ * over the window tells whether the pool keeps up with its arrivals. Immutable.
+ * <p>
+ * The queue wait is estimated with Little's law, the queued tasks divided by the completion rate,
+ * and the time to drain divides them by the completion rate less the arrival rate. Either is
+ * infinite when the queue is not shrinking, 0 when there is nothing queued.
+ * <p>
+ * The utilization is weighted by the time each sample covers and the window start is found by a
+ * binary search of the timestamps, so the cost does not grow with the samples in the window
+ * whatever the sampling interval of the pool.
+ *
+ * @author Bill
+ */
+public final class PoolRates {
+
+    private final long   mWindow;
+    private final double mArrivalRate;
+    private final double mCompletionRate;
+    private final double mUtilization;
+    private final int    mQueued;
+
+    /**
+     * Create the rates.
+     *
+     * @param window
+     *            milliseconds covered by the samples, may be less than the window asked for
+     * @param arrivalRate
+     *            tasks submitted per second
+     * @param completionRate
+     *            tasks completed per second
+     * @param utilization
+     *            active threads divided by threads over the window, 0 to 1
+     * @param queued
+     *            tasks queued in the latest slot of the history
+     */
+    public PoolRates(final long window,
+                     final double arrivalRate,
+                     final double completionRate,
+                     final double utilization,
+                     final int queued) {
+        mWindow = window;
+        mArrivalRate = arrivalRate;
+        mCompletionRate = completionRate;
+        mUtilization = utilization;
+        mQueued = queued;
+    }
+
+    /**
+     * Compute the rates over the samples of a window ending at the latest sample. Reads the
+     * history by index, only valid on the thread which writes it.
+     *
+     * @param history
+     *            history of the pool
+     * @param window
+     *            milliseconds
+     * @return rates or null if the history does not hold two samples
+     */
+    @Nullable
+    public static PoolRates of(final PoolHistory history, final long window) {
+        final SampleRing times = history.get(Series.TIMESTAMP);
+        final long last = times.getCount() - 1;
+        final long first = first(times, window);
+        if (first < 0) {
+            return null;
+        }
+        final long millis = times.get(last) - times.get(first);
+        if (millis <= 0) {
+            return null;
+        }
+        final long threadTime = change(history.get(Series.THREAD_TIME), first, last);
+        final long activeTime = change(history.get(Series.ACTIVE_TIME), first, last);
+        return new PoolRates(millis,
+                change(history.get(Series.TASKS), first, last) * 1000.0 / millis,
+                change(history.get(Series.COMPLETED), first, last) * 1000.0 / millis,
+                threadTime == 0 ? 0 : Math.min(1.0, (double) activeTime / threadTime),
+                (int) history.get(Series.QUEUED).get(last));
+    }
+
+    /**
+     * Change per second of a series from the start of a window to the latest sample. Reads the
+     * history by index, only valid on the thread which writes it.
+     *
+     * @param history
+     *            history of the pool
+     * @param series
+     *            series
+     * @param window
+     *            milliseconds
+     * @return change per second or NaN if the history does not cover two samples
+     */
+    public static double perSecond(@Nullable final PoolHistory history,
+                                   final Series series,
+                                   final long window) {
+        if (history == null) {
+            return Double.NaN;
+        }
+        final SampleRing times = history.get(Series.TIMESTAMP);
+        final long first = first(times, window);
+        if (first < 0) {
+            return Double.NaN;
+        }
+        final long last = times.getCount() - 1;
+        final long millis = times.get(last) - times.get(first);
+        final SampleRing values = history.get(series);
+        return millis <= 0 ? Double.NaN
+                           : (values.get(last) - values.get(first)) * 1000.0 / millis;
+    }
+
+    /**
+     * @param times
+     *            timestamps of the samples
+     * @param window
+     *            milliseconds
+     * @return index of the oldest sample in the window, at least one before the latest, or -1 if
+     *         there are fewer than two samples
+     */
+    private static long first(final SampleRing times, final long window) {
+        final long last = times.getCount() - 1;
+        final long oldest = times.getCount() - times.size();
+        if (last <= oldest) {
+            return -1;
+        }
+        final long start = times.get(last) - window;
+        // the timestamps never decrease, search for the oldest at or after the start
+        long low = oldest;
+        long high = last - 1;
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+            if (times.get(middle) >= start) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static long change(final SampleRing values, final long first, final long last) {
+        // a replaced pool or a replay starting over may go back, not a negative rate
+        return Math.max(0, values.get(last) - values.get(first));
+    }
+
+    /**
+     * @return milliseconds covered by the samples
+     */
+    public long getWindow() {
+        return mWindow;
+    }
+
+    /**
+     * @return tasks submitted per second
+     */
+    public double getArrivalRate() {
+        return mArrivalRate;
+    }
+
+    /**
+     * @return tasks completed per second
+     */
+    public double getCompletionRate() {
+        return mCompletionRate;
+    }
+
+    /**
+     * @return share of the threads busy over the window, 0 to 1
+     */
+    public double getUtilization() {
+        return mUtilization;
+    }
+
+    /**
+     * @return tasks queued in the latest slot of the history, the highest sampled within its step
+     */
+    public int getQueued() {
+        return mQueued;
+    }
+
+    /**
+     * @return nanoseconds a task queued now can expect to wait, infinite if nothing completes
+     */
+    public double getEstimatedWait() {
+        if (mQueued == 0) {
+            return 0;
+        }
+        return mCompletionRate > 0 ? mQueued / mCompletionRate * 1e9 : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return nanoseconds until the queue is empty at the current rates, infinite if it is not
+     *         shrinking
+     */
+    public double getTimeToDrain() {
+        if (mQueued == 0) {
+            return 0;
+        }
+        final double drain = mCompletionRate - mArrivalRate;
+        return drain > 0 ? mQueued / drain * 1e9 : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return true if the pool completes tasks at least as fast as they arrive or has none queued
+     */
+    public boolean isKeepingUp() {
+        return mQueued == 0 || mCompletionRate >= mArrivalRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("in %.1f/s out %.1f/s busy %.0f%% queued %d",
+                             mArrivalRate,
+                             mCompletionRate,
+                             mUtilization * 100,
+                             mQueued);
+    }
+}
@@ -0,0 +1,117 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolRatesTest {
+
+    @Test
+    public void behind() {
+        final PoolHistory history = new PoolHistory(16);
+        // 200 arrive and 100 complete each second, the queue grows
+        for (int second = 0; second <= 4; second++) {
+            history.add(snapshot(second * 1000L, 4, 4, second * 100, second * 200, second * 100));
+        }
+        final PoolRates rates = PoolRates.of(history, 2000);
+        assertNotNull(rates);
+        assertEquals(2000, rates.getWindow());
+        assertEquals(200, rates.getArrivalRate(), 0.001);
+        assertEquals(100, rates.getCompletionRate(), 0.001);
+        assertEquals(1.0, rates.getUtilization(), 0.001);
+        assertFalse(rates.isKeepingUp());
+        // Little's law, 400 queued at 100 a second
+        assertEquals(4e9, rates.getEstimatedWait(), 1);
+        assertTrue(Double.isInfinite(rates.getTimeToDrain()));
+    }
+
+    @Test
+    public void draining() {
+        final PoolHistory history = new PoolHistory(16);
+        assertNull(PoolRates.of(history, 1000));
+        history.add(snapshot(0, 4, 2, 300, 1000, 1000));
+        assertNull(PoolRates.of(history, 1000));
+        history.add(snapshot(1000, 4, 3, 150, 1050, 1200));
+        final PoolRates rates = PoolRates.of(history, 1000);
+        assertNotNull(rates);
+        assertEquals(50, rates.getArrivalRate(), 0.001);
+        assertEquals(200, rates.getCompletionRate(), 0.001);
+        // only the samples after the start of the window are averaged
+        assertEquals(0.75, rates.getUtilization(), 0.001);
+        assertTrue(rates.isKeepingUp());
+        assertEquals(0.75e9, rates.getEstimatedWait(), 1);
+        assertEquals(1e9, rates.getTimeToDrain(), 1);
+        assertEquals(-150,
+                     PoolRates.perSecond(history, PoolHistory.Series.QUEUED, 1000),
+                     0.001);
+    }
+
+    @Test
+    public void idle() {
+        final PoolHistory history = new PoolHistory(16);
+        history.add(snapshot(0, 0, 0, 0, 10, 10));
+        history.add(snapshot(500, 0, 0, 0, 10, 10));
+        final PoolRates rates = PoolRates.of(history, 1000);
+        assertNotNull(rates);
+        assertEquals(0, rates.getUtilization(), 0.001);
+        assertEquals(0, rates.getEstimatedWait(), 0.001);
+        assertEquals(0, rates.getTimeToDrain(), 0.001);
+        assertTrue(rates.isKeepingUp());
+    }
+
+    @Test
+    public void steps() {
+        final PoolHistory history = new PoolHistory(64, 100);
+        // sampled every 10ms while busy, the spike of 9 queued falls between two slots
+        for (int millis = 0; millis <= 200; millis += 10) {
+            history.add(snapshot(millis, 4, 4, millis == 150 ? 9 : 1, millis * 2, millis));
+        }
+        final SampleRing queued = history.get(PoolHistory.Series.QUEUED);
+        assertEquals(3, queued.size());
+        assertEquals(9, queued.get(1));
+        // then idle and sampled after 2s, the steps in between hold the last slot
+        history.add(snapshot(2200, 4, 0, 0, 400, 400));
+        assertEquals(23, queued.size());
+        assertEquals(1, queued.get(21));
+        assertEquals(200, history.get(PoolHistory.Series.TIMESTAMP).get(21));
+        final PoolRates rates = PoolRates.of(history, 2000);
+        assertNotNull(rates);
+        assertEquals(2000, rates.getWindow());
+        assertEquals(100, rates.getCompletionRate(), 0.001);
+        // idle for the 2s since the slot starting the window
+        assertEquals(0, rates.getUtilization(), 0.001);
+        // the first slot ends at 90ms, busy to 200ms then idle
+        assertEquals(110.0 / 2110, PoolRates.of(history, 2200).getUtilization(), 0.001);
+    }
+
+    private static PoolSnapshot snapshot(final long timestamp,
+                                         final int threads,
+                                         final int active,
+                                         final int queued,
+                                         final long tasks,
+                                         final long completed) {
+        return new PoolSnapshot(1,
+                "Pool",
+                timestamp,
+                timestamp * 1_000_000,
+                threads,
+                threads,
+                queued,
+                active,
+                tasks,
+                completed,
+                false,
+                null,
+                null);
+    }
+}
@@ -0,0 +1,563 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+
+/**
+ * Samples the registered thread pools and publishes the immutable {@link PoolSnapshot}s to the
+ * listeners. There is no Swing dependency, the same sampler can run on
+ * a headless server or feed a {@link MonitorWindow}. Listeners are called on the sampling thread
+ * and must hand the snapshots off rather than block.
+ * <p>
+ * Each pool is sampled on a schedule of its own, fast while its queue moves or it is at its warning
+ * threshold and backing off while it is idle, see {@link #setAdaptiveIntervals(long, long,
+ * TimeUnit)}. A pass publishes only the pools which were due.
+ *
+ * <pre>
+ * final PoolSampler sampler = new PoolSampler();
+ * sampler.register("Orders", executor);
+ * sampler.addListener(snapshots -&gt; log(snapshots));
+ * sampler.start();
+ * </pre>
+ *
+ * @author Bill
+ */
+public class PoolSampler
+    implements
+        Runnable {
+
+    /**
+     * Receives the snapshots of every pool after each pass.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called on the sampling thread after each pass.
+         *
+         * @param snapshots
+         *            one snapshot per pool, unmodifiable
+         */
+        void sampled(List<PoolSnapshot> snapshots);
+    }
+
+    private static final AtomicInteger      POOL_ID          = new AtomicInteger(1);
+
+    private final List<Pool>                mPools           = new CopyOnWriteArrayList<>();
+    private final List<Listener>            mListeners       = new CopyOnWriteArrayList<>();
+    private final Queue<Pool>               mRemoved         = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, PoolHistory> mPublished       = new ConcurrentHashMap<>();
+    private final Map<Integer, PoolRates>   mRates           = new ConcurrentHashMap<>();
+    private final MonitorDiagnostics        mDiagnostics     = new MonitorDiagnostics();
+    private volatile long                   mUpdateFrequency = 100;
+    private volatile boolean                mAdaptive        = true;
+    private volatile long                   mFastInterval    = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile long                   mIdleInterval    = TimeUnit.SECONDS.toNanos(2);
+    private volatile long                   mRateWindow      = 10_000;
+    private volatile int                    mHistoryCapacity = 4096;
+    private volatile long                   mHistoryStep     = 100;
+    private volatile int                    mReducedDivisor  = 10;
+    private long                            mPassStart;
+
+    /**
+     * Add a pool to be sampled. Registering the same executor again has no effect.
+     *
+     * @param name
+     *            name to display
+     * @param executor
+     *            ThreadPoolExecutor to sample
+     * @return id of the pool, used in each {@link PoolSnapshot}
+     */
+    public int register(final String name, final ThreadPoolExecutor executor) {
+        return register(name, PoolSource.of(executor));
+    }
+
+    /**
+     * Add a ForkJoinPool to be sampled, e.g. {@link ForkJoinPool#commonPool()}.
+     *
+     * @param name
+     *            name to display
+     * @param pool
+     *            ForkJoinPool to sample
+     * @return id of the pool, used in each {@link PoolSnapshot}
+     */
+    public int register(final String name, final ForkJoinPool pool) {
+        return register(name, PoolSource.of(pool));
+    }
+
+    /**
+     * Add a pool to be sampled through a source. Registering a source for an executor already
+     * registered has no effect.
+     *
+     * @param name
+     *            name to display
+     * @param source
+     *            source reading the pool
+     * @return id of the pool, used in each {@link PoolSnapshot}
+     */
+    public int register(final String name, final PoolSource source) {
+        synchronized (mPools) {
+            for (final Pool pool : mPools) {
+                if (pool.mSource.getExecutor() == source.getExecutor()) {
+                    return pool.mId;
+                }
+            }
+            final Pool pool = new Pool(POOL_ID.getAndIncrement(),
+                    name,
+                    source,
+                    new PoolHistory(mHistoryCapacity, mHistoryStep));
+            mPools.add(pool);
+            return pool.mId;
+        }
+    }
+
+    /**
+     * Stop sampling a pool. The next pass publishes a last snapshot of the pool flagged
+     * {@link PoolSnapshot#isShutdown()}, so the listeners forget it as they do a shutdown pool.
+     *
+     * @param executor
+     *            executor previously registered
+     */
+    public void unregister(final Executor executor) {
+        for (final Pool pool : mPools) {
+            if (pool.mSource.getExecutor() == executor && mPools.remove(pool)) {
+                mRates.remove(pool.mId);
+                mDiagnostics.removed(pool.mId);
+                mRemoved.add(pool);
+            }
+        }
+    }
+
+    public boolean isRegistered(final Executor executor) {
+        return mPools.stream().anyMatch(pool -> pool.mSource.getExecutor() == executor);
+    }
+
+    /**
+     * @param id
+     *            id returned by {@link #register(String, ThreadPoolExecutor)}
+     * @return executor of the pool or null if the pool is not registered
+     */
+    @Nullable
+    public Executor getExecutor(final int id) {
+        for (final Pool pool : mPools) {
+            if (pool.mId == id) {
+                return pool.mSource.getExecutor();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the recent samples of a pool.
+     *
+     * @param id
+     *            id returned by {@link #register(String, ThreadPoolExecutor)}
+     * @return history or null if the pool is not registered or published
+     */
+    @Nullable
+    public PoolHistory getHistory(final int id) {
+        for (final Pool pool : mPools) {
+            if (pool.mId == id) {
+                return pool.mHistory;
+            }
+        }
+        return mPublished.get(id);
+    }
+
+    /**
+     * Get the rates of a pool over the rate window, computed after each of its samples before the
+     * listeners are called.
+     *
+     * @param id
+     *            id returned by {@link #register(String, ThreadPoolExecutor)}
+     * @return rates or null until the pool has been sampled twice
+     */
+    @Nullable
+    public PoolRates getRates(final int id) {
+        return mRates.get(id);
+    }
+
+    /**
+     * @return what sampling, and drawing if a {@link MonitorWindow} draws this sampler, costs
+     */
+    public MonitorDiagnostics getDiagnostics() {
+        return mDiagnostics;
+    }
+
+    /**
+     * @param window
+     *            length of the window the {@link PoolRates} are computed over. Default 10s.
+     * @param unit
+     *            unit of window
+     */
+    public void setRateWindow(final long window, final TimeUnit unit) {
+        mRateWindow = unit.toMillis(window);
+    }
+
+    /**
+     * @param capacity
+     *            number of steps kept in the {@link PoolHistory} of pools registered after this
+     *            call. Default 4096, at the default step almost 7 minutes.
+     */
+    public void setHistoryCapacity(final int capacity) {
+        mHistoryCapacity = capacity;
+    }
+
+    /**
+     * @param step
+     *            time covered by one slot of the {@link PoolHistory} of pools registered after
+     *            this call, whatever their sampling interval. 0 for a slot per sample. Default
+     *            100ms.
+     * @param unit
+     *            unit of step
+     */
+    public void setHistoryStep(final long step, final TimeUnit unit) {
+        mHistoryStep = unit.toMillis(step);
+    }
+
+    /**
+     * Set the thresholds of a pool, used by consumers which report or react to the status of a pool
+     * rather than only draw it.
+     *
+     * @param id
+     *            id returned by {@link #register(String, ThreadPoolExecutor)}
+     * @param threshold
+     *            thresholds applied to the threads, queued and active counts
+     */
+    public void setThreshold(final int id, @Nullable final ThresholdData threshold) {
+        for (final Pool pool : mPools) {
+            if (pool.mId == id) {
+                pool.mThreshold = threshold;
+            }
+        }
+    }
+
+    /**
+     * @param id
+     *            id returned by {@link #register(String, ThreadPoolExecutor)}
+     * @return thresholds of the pool or null if none set
+     */
+    @Nullable
+    public ThresholdData getThreshold(final int id) {
+        for (final Pool pool : mPools) {
+            if (pool.mId == id) {
+                return pool.mThreshold;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sample a pool less often, e.g. while no one is looking at it. Affects every listener.
+     *
+     * @param id
+     *            id returned by {@link #register(String, ThreadPoolExecutor)}
+     * @param reduced
+     *            true then sample at most every {@link #setReducedDivisor(int)} update frequencies
+     */
+    public void setReducedRate(final int id, final boolean reduced) {
+        for (final Pool pool : mPools) {
+            if (pool.mId == id) {
+                pool.mReduced = reduced;
+            }
+        }
+    }
+
+    /**
+     * @param divisor
+     *            pools at a reduced rate are sampled at most every divisor times the update
+     *            frequency. Default 10.
+     */
+    public void setReducedDivisor(final int divisor) {
+        mReducedDivisor = Math.max(1, divisor);
+    }
+
+    public void addListener(final Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @param updateFrequency
+     *            milliseconds between the samples of a pool which is neither busy nor idle, and of
+     *            every pool when not adaptive. Default 100ms.
+     */
+    public void setUpdateFrequency(final long updateFrequency) {
+        mUpdateFrequency = updateFrequency;
+    }
+
+    public long getUpdateFrequency() {
+        return mUpdateFrequency;
+    }
+
+    /**
+     * @param adaptive
+     *            true to sample each pool at a rate suited to it, false to sample every pool at
+     *            the update frequency. Default true.
+     */
+    public void setAdaptive(final boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    /**
+     * Set the bounds of the adaptive rates. A pool whose queue changed, or whose queued or active
+     * count is at its warning threshold, is sampled at the fast interval so short spikes are not
+     * missed. A pool with nothing running, queued or submitted backs off, doubling its interval
+     * up to the idle interval.
+     *
+     * @param fast
+     *            interval of a busy pool. Default 10ms.
+     * @param idle
+     *            longest interval of an idle pool. Default 2s.
+     * @param unit
+     *            unit of fast and idle
+     */
+    public void setAdaptiveIntervals(final long fast, final long idle, final TimeUnit unit) {
+        mFastInterval = unit.toNanos(fast);
+        mIdleInterval = unit.toNanos(idle);
+    }
+
+    /**
+     * Sample every pool once and publish the snapshots, whether or not the pools are due. A pool
+     * that has been shutdown or unregistered is reported once with
+     * {@link PoolSnapshot#isShutdown()} and then dropped.
+     *
+     * @return the snapshots published
+     */
+    public List<PoolSnapshot> sample() {
+        return sample(System.nanoTime(), true);
+    }
+
+    /**
+     * Sample the pools whose time has come and schedule their next samples.
+     *
+     * @param now
+     *            nano time of the pass
+     * @param all
+     *            true to sample every pool
+     * @return the snapshots published, empty if no pool was due
+     */
+    private List<PoolSnapshot> sample(final long now, final boolean all) {
+        long due = Long.MAX_VALUE;
+        for (final Pool pool : mPools) {
+            due = Math.min(due, pool.mDue);
+        }
+        if (!all && due > now && mRemoved.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final long start = System.nanoTime();
+        if (mPassStart != 0) {
+            // a new pool is due at 0, it was not late
+            mDiagnostics.tick(start - mPassStart, all || due == 0 ? -1 : start - due);
+        }
+        mPassStart = start;
+        final List<PoolSnapshot> snapshots = new ArrayList<>(mPools.size());
+        for (final Pool pool : mPools) {
+            if (!all && pool.mDue > now) {
+                continue;
+            }
+            final long before = System.nanoTime();
+            final PoolSnapshot snapshot = pool.sample();
+            mDiagnostics.sampled(pool.mId, pool.mName, System.nanoTime() - before);
+            pool.mHistory.add(snapshot);
+            if (snapshot.isShutdown()) {
+                mPools.remove(pool);
+                mRates.remove(pool.mId);
+                mDiagnostics.removed(pool.mId);
+            } else {
+                updateRates(pool.mId, pool.mHistory);
+                schedule(pool, snapshot, now);
+            }
+            snapshots.add(snapshot);
+        }
+        for (Pool pool = mRemoved.poll(); pool != null; pool = mRemoved.poll()) {
+            // unregistered since the last pass, the listeners forget it as a shutdown pool
+            snapshots.add(pool.sample().toShutdown());
+        }
+        final List<PoolSnapshot> result = Collections.unmodifiableList(snapshots);
+        notifyListeners(result);
+        mDiagnostics.passed(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Publish snapshots which were not sampled by this sampler, e.g. replayed from a
+     * {@link SampleRecording}, as if they were a pass. A history is kept for each pool until its
+     * shutdown snapshot. Only one thread may publish and the ids must not clash with registered
+     * pools, use a sampler of its own.
+     *
+     * @param snapshots
+     *            snapshots of one pass
+     */
+    public void publish(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                mPublished.remove(snapshot.getId());
+                mRates.remove(snapshot.getId());
+            } else {
+                final PoolHistory history = mPublished.computeIfAbsent(snapshot.getId(),
+                        id -> new PoolHistory(mHistoryCapacity, mHistoryStep));
+                history.add(snapshot);
+                updateRates(snapshot.getId(), history);
+            }
+        }
+        notifyListeners(Collections.unmodifiableList(snapshots));
+    }
+
+    /**
+     * Discard the history and rates of the published pools, e.g. after seeking a replay. Only the
+     * thread which publishes may call this.
+     */
+    public void clearPublished() {
+        for (final Map.Entry<Integer, PoolHistory> published : mPublished.entrySet()) {
+            published.getValue().clear();
+            mRates.remove(published.getKey());
+        }
+    }
+
+    private void updateRates(final int id, final PoolHistory history) {
+        final PoolRates rates = PoolRates.of(history, mRateWindow);
+        if (rates != null) {
+            mRates.put(id, rates);
+        }
+    }
+
+    private void notifyListeners(final List<PoolSnapshot> result) {
+        for (final Listener listener : mListeners) {
+            try {
+                listener.sampled(result);
+            } catch (final RuntimeException error) {
+                // a failing listener must not stop the others or the sampler
+                final Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, error);
+            }
+        }
+    }
+
+    /**
+     * Choose the interval of a pool from its latest sample and set when it is next due. The due
+     * time advances from the previous one rather than from the end of the pass, so the time
+     * sampling takes does not accumulate as drift.
+     *
+     * @param pool
+     *            pool just sampled
+     * @param snapshot
+     *            its snapshot
+     * @param now
+     *            nano time of the pass
+     */
+    private void schedule(final Pool pool, final PoolSnapshot snapshot, final long now) {
+        final long normal = TimeUnit.MILLISECONDS.toNanos(mUpdateFrequency);
+        long interval = normal;
+        if (mAdaptive) {
+            final ThresholdData threshold = pool.mThreshold;
+            if (snapshot.getQueued() != pool.mQueued
+                || threshold != null
+                   && (threshold.warning().isTriggered(snapshot.getQueued())
+                       || threshold.warning().isTriggered(snapshot.getActive()))) {
+                interval = Math.min(mFastInterval, normal);
+            } else if (snapshot.getQueued() == 0
+                       && snapshot.getActive() == 0
+                       && snapshot.getTaskCount() == pool.mTaskCount) {
+                interval = Math.max(normal, Math.min(pool.mInterval * 2, mIdleInterval));
+            }
+        }
+        if (pool.mReduced) {
+            interval = Math.max(interval, normal * mReducedDivisor);
+        }
+        pool.mQueued = snapshot.getQueued();
+        pool.mTaskCount = snapshot.getTaskCount();
+        pool.mInterval = interval;
+        final long due = pool.mDue + interval;
+        // a pool which fell a whole interval behind skips the samples it missed rather than
+        // bursting, a pool whose interval shrank is not left waiting for the longer one
+        pool.mDue = due <= now || due > now + interval ? now + interval : due;
+    }
+
+    /**
+     * Sample until interrupted, each pool when it is due, sleeping until the next pool is due.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long now = System.nanoTime();
+                sample(now, false);
+                long next = now + TimeUnit.MILLISECONDS.toNanos(mUpdateFrequency);
+                for (final Pool pool : mPools) {
+                    next = Math.min(next, pool.mDue);
+                }
+                final long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+        } catch (final InterruptedException error) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Run the sampler on its own daemon thread, for use without a {@link MonitorWindow}.
+     *
+     * @return the sampling thread, interrupt it to stop
+     */
+    public Thread start() {
+        final Thread thread = new Thread(this, "PoolSampler");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static final class Pool {
+
+        private final int              mId;
+        private final String           mName;
+        private final PoolSource       mSource;
+        private final PoolHistory      mHistory;
+        private volatile boolean       mReduced;
+        @Nullable
+        private volatile ThresholdData mThreshold;
+        // sampling thread only
+        private long                   mDue;
+        private long                   mInterval;
+        private int                    mQueued;
+        private long                   mTaskCount = -1;
+
+        private Pool(final int id,
+                     final String name,
+                     final PoolSource source,
+                     final PoolHistory history) {
+            mId = id;
+            mName = name;
+            mSource = source;
+            mHistory = history;
+        }
+
+        private PoolSnapshot sample() {
+            return mSource.sample(mId, mName);
+        }
+    }
+}
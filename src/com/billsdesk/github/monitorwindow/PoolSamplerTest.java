@@ -0,0 +1,166 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolSamplerTest {
+
+    @Test
+    public void adaptive() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        sampler.setUpdateFrequency(50);
+        sampler.setAdaptiveIntervals(5, 400, TimeUnit.MILLISECONDS);
+        final ThreadPoolExecutor busy = MonitorWindow.getNamedExecutor(null, 1, 1, "Busy");
+        final ThreadPoolExecutor idle = MonitorWindow.getNamedExecutor(null, 1, 1, "Idle");
+        final CountDownLatch release = new CountDownLatch(1);
+        final Map<Integer, AtomicInteger> samples = new ConcurrentHashMap<>();
+        Thread thread = null;
+        try {
+            final int busyId = sampler.register("Busy", busy);
+            final int idleId = sampler.register("Idle", idle);
+            final ThresholdData threshold = new ThresholdData();
+            threshold.warning().setValue(1);
+            sampler.setThreshold(busyId, threshold);
+            busy.execute(() -> Latches.await(release));
+            sampler.addListener(snapshots -> {
+                for (final PoolSnapshot snapshot : snapshots) {
+                    samples.computeIfAbsent(snapshot.getId(), id -> new AtomicInteger())
+                           .incrementAndGet();
+                }
+            });
+            thread = sampler.start();
+            Thread.sleep(1000);
+            thread.interrupt();
+            thread.join();
+            // at the warning threshold every 5ms, idle backing off 50, 100, 200, 400, 400ms
+            final int fast = samples.get(busyId).get();
+            final int slow = samples.get(idleId).get();
+            assertTrue(fast > 40, () -> fast + " busy samples");
+            assertTrue(slow >= 3 && slow <= 8, () -> slow + " idle samples");
+            assertTrue(sampler.getDiagnostics().getJitter().getCount() > 0);
+        } finally {
+            if (thread != null) {
+                thread.interrupt();
+            }
+            release.countDown();
+            busy.shutdown();
+            idle.shutdown();
+        }
+    }
+
+    @Test
+    public void diagnostics() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        sampler.setUpdateFrequency(5);
+        final ThreadPoolExecutor executor = MonitorWindow.getNamedExecutor(null, 1, 1, "S0");
+        try {
+            final int id = sampler.register("S0", executor);
+            for (int i = 0; i < 3; i++) {
+                sampler.sample();
+                Thread.sleep(5);
+            }
+            final MonitorDiagnostics diagnostics = sampler.getDiagnostics();
+            assertEquals(2, diagnostics.getTickInterval().getCount());
+            assertTrue(diagnostics.getTickInterval().getP50() >= 5_000_000);
+            assertEquals(3, diagnostics.getPassTime().getCount());
+            assertEquals("S0", diagnostics.getPoolCost(id).getName());
+            assertEquals(3, diagnostics.getPoolCost(id).getTime().getCount());
+            assertTrue(diagnostics.getSamplingLoad() > 0);
+            assertTrue(diagnostics.format().contains("S0"));
+            executor.shutdown();
+            sampler.sample();
+            assertNull(diagnostics.getPoolCost(id));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sample() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 2, 2, "S1");
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final int id = sampler.register("S1", executor);
+            assertEquals(id, sampler.register("S1", executor));
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> Latches.await(release));
+            }
+            final List<PoolSnapshot> published = new ArrayList<>();
+            sampler.addListener(published::addAll);
+            while (executor.getRunning() < 2) {
+                Thread.sleep(10);
+            }
+            final List<PoolSnapshot> snapshots = sampler.sample();
+            assertEquals(snapshots, published);
+            assertEquals(1, snapshots.size());
+            final PoolSnapshot snapshot = snapshots.get(0);
+            assertEquals(id, snapshot.getId());
+            assertEquals("S1", snapshot.getName());
+            assertEquals(2, snapshot.getCorePoolSize());
+            assertEquals(2, snapshot.getActive());
+            assertEquals(1, snapshot.getQueued());
+            assertEquals(3, snapshot.getTaskCount());
+            assertFalse(snapshot.isShutdown());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdown() {
+        final PoolSampler sampler = new PoolSampler();
+        final ThreadPoolExecutor executor = MonitorWindow.getNamedExecutor(null, 1, 1, "S2");
+        sampler.register("S2", executor);
+        executor.shutdown();
+        assertTrue(sampler.sample().get(0).isShutdown());
+        assertFalse(sampler.isRegistered(executor));
+        assertTrue(sampler.sample().isEmpty());
+    }
+
+    @Test
+    public void unregister() {
+        final PoolSampler sampler = new PoolSampler();
+        final List<PoolSnapshot> published = new ArrayList<>();
+        sampler.addListener(published::addAll);
+        final ThreadPoolExecutor executor = MonitorWindow.getNamedExecutor(null, 1, 1, "S3");
+        try {
+            final int id = sampler.register("S3", executor);
+            assertFalse(sampler.sample().get(0).isShutdown());
+            sampler.unregister(executor);
+            assertFalse(sampler.isRegistered(executor));
+            // the listeners are told the pool is gone as if it had been shutdown
+            published.clear();
+            sampler.sample();
+            assertEquals(1, published.size());
+            assertEquals(id, published.get(0).getId());
+            assertTrue(published.get(0).isShutdown());
+            assertTrue(sampler.sample().isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * Immutable values read from one thread pool during a single pass of the {@link PoolSampler}.
+ *
+ * @author Bill
+ */
+public final class PoolSnapshot {
+
+    /**
+     * Suffix of the name of an extra metric which is a duration in nanoseconds.
+     */
+    public static final String      NANOS = "_ns";
+
+    private final int               mId;
+    private final String            mName;
+    private final long              mTimestamp;
+    private final long              mNanoTime;
+    private final int               mCorePoolSize;
+    private final int               mThreads;
+    private final int               mQueued;
+    private final int               mActive;
+    private final long              mTaskCount;
+    private final long              mCompletedCount;
+    private final boolean           mShutdown;
+    @Nullable
+    private final LatencySummary    mQueueWait;
+    @Nullable
+    private final LatencySummary    mRunTime;
+    private final Map<String, Long> mExtras;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param id
+     *            id assigned to the pool by the sampler
+     * @param name
+     *            name of the pool
+     * @param timestamp
+     *            wall clock time in milliseconds of the sample
+     * @param nanoTime
+     *            {@link System#nanoTime()} of the sample, used for intervals
+     * @param corePoolSize
+     *            core pool size
+     * @param threads
+     *            current number of threads in the pool
+     * @param queued
+     *            number of tasks waiting in the queue
+     * @param active
+     *            number of threads executing tasks
+     * @param taskCount
+     *            total tasks submitted
+     * @param completedCount
+     *            total tasks completed
+     * @param shutdown
+     *            true if the pool has been shutdown or unregistered, this is the last snapshot
+     *            for it
+     * @param queueWait
+     *            time tasks waited in the queue or null if the pool does not record it
+     * @param runTime
+     *            time tasks ran or null if the pool does not record it
+     */
+    public PoolSnapshot(final int id,
+                        final String name,
+                        final long timestamp,
+                        final long nanoTime,
+                        final int corePoolSize,
+                        final int threads,
+                        final int queued,
+                        final int active,
+                        final long taskCount,
+                        final long completedCount,
+                        final boolean shutdown,
+                        @Nullable final LatencySummary queueWait,
+                        @Nullable final LatencySummary runTime) {
+        this(id,
+                name,
+                timestamp,
+                nanoTime,
+                corePoolSize,
+                threads,
+                queued,
+                active,
+                taskCount,
+                completedCount,
+                shutdown,
+                queueWait,
+                runTime,
+                Collections.emptyMap());
+    }
+
+    /**
+     * Create a snapshot with metrics particular to the type of pool.
+     *
+     * @param id
+     *            id assigned to the pool by the sampler
+     * @param name
+     *            name of the pool
+     * @param timestamp
+     *            wall clock time in milliseconds of the sample
+     * @param nanoTime
+     *            {@link System#nanoTime()} of the sample, used for intervals
+     * @param corePoolSize
+     *            core pool size
+     * @param threads
+     *            current number of threads in the pool
+     * @param queued
+     *            number of tasks waiting in the queue
+     * @param active
+     *            number of threads executing tasks
+     * @param taskCount
+     *            total tasks submitted
+     * @param completedCount
+     *            total tasks completed
+     * @param shutdown
+     *            true if the pool has been shutdown or unregistered, this is the last snapshot
+     *            for it
+     * @param queueWait
+     *            time tasks waited in the queue or null if the pool does not record it
+     * @param runTime
+     *            time tasks ran or null if the pool does not record it
+     * @param extras
+     *            metrics by name in display order, see {@link #getExtras()}, not copied
+     */
+    public PoolSnapshot(final int id,
+                        final String name,
+                        final long timestamp,
+                        final long nanoTime,
+                        final int corePoolSize,
+                        final int threads,
+                        final int queued,
+                        final int active,
+                        final long taskCount,
+                        final long completedCount,
+                        final boolean shutdown,
+                        @Nullable final LatencySummary queueWait,
+                        @Nullable final LatencySummary runTime,
+                        final Map<String, Long> extras) {
+        mId = id;
+        mName = name;
+        mTimestamp = timestamp;
+        mNanoTime = nanoTime;
+        mCorePoolSize = corePoolSize;
+        mThreads = threads;
+        mQueued = queued;
+        mActive = active;
+        mTaskCount = taskCount;
+        mCompletedCount = completedCount;
+        mShutdown = shutdown;
+        mQueueWait = queueWait;
+        mRunTime = runTime;
+        mExtras = Collections.unmodifiableMap(extras);
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public long getNanoTime() {
+        return mNanoTime;
+    }
+
+    public int getCorePoolSize() {
+        return mCorePoolSize;
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
+    public int getQueued() {
+        return mQueued;
+    }
+
+    public int getActive() {
+        return mActive;
+    }
+
+    public long getTaskCount() {
+        return mTaskCount;
+    }
+
+    public long getCompletedCount() {
+        return mCompletedCount;
+    }
+
+    /**
+     * @return true if the pool has been shutdown or unregistered, this is the last snapshot for it
+     */
+    public boolean isShutdown() {
+        return mShutdown;
+    }
+
+    /**
+     * @return this snapshot flagged as the last of its pool
+     */
+    PoolSnapshot toShutdown() {
+        if (mShutdown) {
+            return this;
+        }
+        return new PoolSnapshot(mId,
+                mName,
+                mTimestamp,
+                mNanoTime,
+                mCorePoolSize,
+                mThreads,
+                mQueued,
+                mActive,
+                mTaskCount,
+                mCompletedCount,
+                true,
+                mQueueWait,
+                mRunTime,
+                mExtras);
+    }
+
+    /**
+     * @return nanoseconds tasks waited in the queue or null if the pool does not record it, see
+     *         {@link MonitoredThreadPoolExecutor}
+     */
+    @Nullable
+    public LatencySummary getQueueWait() {
+        return mQueueWait;
+    }
+
+    /**
+     * @return nanoseconds tasks ran or null if the pool does not record it, see
+     *         {@link MonitoredThreadPoolExecutor}
+     */
+    @Nullable
+    public LatencySummary getRunTime() {
+        return mRunTime;
+    }
+
+    /**
+     * Metrics particular to the type of pool, e.g. the steal count of a ForkJoinPool, see the
+     * {@link PoolSource} of the pool. A name ending in {@value #NANOS} is a duration in
+     * nanoseconds.
+     *
+     * @return metrics by name in display order, empty for a ThreadPoolExecutor
+     */
+    public Map<String, Long> getExtras() {
+        return mExtras;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: core %d threads %d queued %d active %d T: %,d C: %,d%s",
+                             mName,
+                             mCorePoolSize,
+                             mThreads,
+                             mQueued,
+                             mActive,
+                             mTaskCount,
+                             mCompletedCount,
+                             mShutdown ? " (shutdown)" : "");
+    }
+}
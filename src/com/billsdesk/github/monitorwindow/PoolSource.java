@@ -0,0 +1,56 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Reads the values of one kind of executor for the {@link PoolSampler}. Every kind is mapped onto
+ * the bars of a Monitor, threads, queued and active, and may add metrics of its own as
+ * {@link PoolSnapshot#getExtras()}. Implement this to monitor an executor not covered by
+ * {@link #of(Executor)}.
+ *
+ * @author Bill
+ */
+public interface PoolSource {
+
+    /**
+     * @return the executor, a pool is registered only once per executor
+     */
+    Executor getExecutor();
+
+    /**
+     * Read the current values. Called only on the sampling thread, should not block.
+     *
+     * @param id
+     *            id assigned to the pool by the sampler
+     * @param name
+     *            name of the pool
+     * @return snapshot
+     */
+    PoolSnapshot sample(int id, String name);
+
+    /**
+     * Adapt one of the executors of the JDK.
+     *
+     * @param executor
+     *            a ThreadPoolExecutor, including {@link MonitoredThreadPoolExecutor} and
+     *            ScheduledThreadPoolExecutor, or a ForkJoinPool
+     * @return source for the executor
+     * @throws IllegalArgumentException
+     *             executor of another kind
+     */
+    static PoolSource of(final Executor executor) {
+        if (executor instanceof ScheduledThreadPoolExecutor) {
+            return new ScheduledPoolSource((ScheduledThreadPoolExecutor) executor);
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            return new ThreadPoolSource((ThreadPoolExecutor) executor);
+        }
+        if (executor instanceof ForkJoinPool) {
+            return new ForkJoinPoolSource((ForkJoinPool) executor);
+        }
+        throw new IllegalArgumentException("no source for " + executor.getClass().getName());
+    }
+}
@@ -0,0 +1,143 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class PoolSourceTest {
+
+    @Test
+    public void forkJoinPool() throws InterruptedException {
+        final ForkJoinPool pool = MonitorWindow.getNamedForkJoinPool(null, 2, "FJ");
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final PoolSampler sampler = new PoolSampler();
+            final int id = sampler.register("FJ", pool);
+            for (int i = 0; i < 5; i++) {
+                pool.execute(() -> Latches.await(release));
+            }
+            while (pool.getActiveThreadCount() < 2) {
+                Thread.sleep(10);
+            }
+            final PoolSnapshot snapshot = sampler.sample().get(0);
+            assertEquals(id, snapshot.getId());
+            assertEquals(2, snapshot.getCorePoolSize());
+            assertEquals(2, snapshot.getActive());
+            assertEquals(3, snapshot.getQueued());
+            assertEquals(List.of(ForkJoinPoolSource.STEALS,
+                                 ForkJoinPoolSource.SUBMISSIONS,
+                                 ForkJoinPoolSource.TASKS,
+                                 ForkJoinPoolSource.RUNNING),
+                         List.copyOf(snapshot.getExtras().keySet()));
+            assertEquals(3, snapshot.getExtras().get(ForkJoinPoolSource.SUBMISSIONS));
+            assertTrue(Thread.getAllStackTraces()
+                             .keySet()
+                             .stream()
+                             .anyMatch(thread -> thread.getName().startsWith("FJ")));
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void scheduledLateness() throws InterruptedException {
+        final ScheduledThreadPoolExecutor executor = MonitorWindow.getNamedScheduledExecutor(null,
+                1,
+                "ST");
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final PoolSampler sampler = new PoolSampler();
+            sampler.register("ST", executor);
+            executor.execute(() -> Latches.await(release));
+            // due at once but the only thread is busy
+            executor.schedule(() -> {
+                // nothing
+            }, 0, TimeUnit.MILLISECONDS);
+            Thread.sleep(50);
+            final PoolSnapshot snapshot = sampler.sample().get(0);
+            final long lateness = snapshot.getExtras().get(ScheduledPoolSource.LATENESS);
+            assertTrue(lateness >= TimeUnit.MILLISECONDS.toNanos(40), Long.toString(lateness));
+            assertEquals(1, snapshot.getQueued());
+            // the extras of a ThreadPoolExecutor are kept
+            assertTrue(snapshot.getExtras().containsKey(ThreadPoolSource.CPU),
+                       snapshot.getExtras().toString());
+            assertTrue(snapshot.getExtras().containsKey(ThreadPoolSource.ALLOCATED),
+                       snapshot.getExtras().toString());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void unsupported() {
+        final Executor executor = Runnable::run;
+        assertThrows(IllegalArgumentException.class, () -> PoolSource.of(executor));
+    }
+
+    @Test
+    public void usage() throws InterruptedException {
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "CPU");
+        try {
+            final ThreadPoolSource source = new ThreadPoolSource(executor);
+            final long before = source.sample(1, "CPU").getExtras().get(ThreadPoolSource.CPU);
+            assertTrue(before >= 0);
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final AtomicLong spent = new AtomicLong();
+            final CountDownLatch done = new CountDownLatch(1);
+            executor.execute(() -> {
+                final long start = threads.getCurrentThreadCpuTime();
+                final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+                long sum = 0;
+                while (System.nanoTime() < end) {
+                    sum += new byte[1024].length;
+                }
+                spent.set(threads.getCurrentThreadCpuTime() - start);
+                if (sum > 0) {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            final Map<String, Long> extras = source.sample(1, "CPU").getExtras();
+            // at least the CPU the thread measured itself, however loaded the machine
+            assertTrue(spent.get() > 0);
+            assertTrue(extras.get(ThreadPoolSource.CPU) - before >= spent.get(),
+                       extras + " spent " + spent);
+            assertTrue(extras.get(ThreadPoolSource.ALLOCATED) >= 1024 * 1024, extras.toString());
+        } finally {
+            executor.shutdown();
+        }
+        // a thread keeps its usage after exiting
+        final ThreadUsage usage = new ThreadUsage();
+        final Thread thread = new Thread(usage.track(() -> {
+            for (int i = 0; i < 1024; i++) {
+                assertEquals(1024, new byte[1024].length);
+            }
+        }));
+        thread.start();
+        thread.join();
+        assertEquals(0, usage.getLive());
+        assertTrue(usage.getAllocatedBytes() >= 1024 * 1024);
+    }
+}
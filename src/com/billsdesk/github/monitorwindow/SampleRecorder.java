@@ -0,0 +1,312 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * Appends every snapshot of a {@link PoolSampler} to a recording so the pools can be replayed
+ * after the fact with {@link MonitorWindow#replay(Path)}. The recording is a directory of segment
+ * files of fixed width records, each segment is memory-mapped and written with absolute puts, a
+ * sample is neither copied nor allocates. When a segment is full the next one is started and the
+ * oldest segments beyond the limit are deleted.
+ * <p>
+ * Every segment is self-contained: the first record is the header and the name of each pool is
+ * written once per segment as a pool record ahead of its first sample. Unused records are zero,
+ * a record type of 0 ends the segment. The {@link PoolSnapshot#getExtras()} are not recorded.
+ *
+ * <pre>
+ * final SampleRecorder recorder = new SampleRecorder(sampler, Paths.get("recording"));
+ * ...
+ * recorder.close();
+ * </pre>
+ *
+ * @author Bill
+ */
+public class SampleRecorder
+    implements
+        PoolSampler.Listener,
+        Closeable {
+
+    static final long           MAGIC              = 0x4d57_5245_4330_3031L; // MWREC001
+    static final int            RECORD_SIZE        = 144;
+    static final String         SEGMENT_PREFIX     = "samples-";
+    static final String         SEGMENT_SUFFIX     = ".mwr";
+
+    static final byte           TYPE_END           = 0;
+    static final byte           TYPE_SAMPLE        = 1;
+    static final byte           TYPE_POOL          = 2;
+    static final byte           FLAG_SHUTDOWN      = 1;
+    static final byte           FLAG_LATENCY       = 2;
+
+    // offsets within a record
+    static final int            TYPE               = 0;
+    static final int            FLAGS              = 1;
+    static final int            ID                 = 4;
+    static final int            TIMESTAMP          = 8;
+    static final int            NANO_TIME          = 16;
+    static final int            CORE_POOL_SIZE     = 24;
+    static final int            THREADS            = 28;
+    static final int            QUEUED             = 32;
+    static final int            ACTIVE             = 36;
+    static final int            TASK_COUNT         = 40;
+    static final int            COMPLETED_COUNT    = 48;
+    static final int            QUEUE_WAIT         = 56;
+    static final int            RUN_TIME           = 96;
+    static final int            NAME_LENGTH        = 16;
+    static final int            NAME               = 18;
+    static final int            MAX_NAME           = RECORD_SIZE - NAME;
+
+    public static final long    DEFAULT_SEGMENT    = 64L << 20;
+
+    private final PoolSampler   mSampler;
+    private final Path          mDirectory;
+    private final int           mRecordsPerSegment;
+    private final int           mMaxSegments;
+    private final List<Path>    mSegments          = new ArrayList<>();
+    // written only by the sampler thread
+    @Nullable
+    private FileChannel         mChannel;
+    @Nullable
+    private MappedByteBuffer    mBuffer;
+    private int                 mRecord;
+    private long                mSequence;
+    private int[]               mNamed             = new int[16];
+    private int                 mNamedCount;
+
+    /**
+     * Record into segments of 64MB, keeping at most 16.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param directory
+     *            directory of the recording, created if missing
+     * @throws IOException
+     *             the directory could not be created or read
+     */
+    public SampleRecorder(final PoolSampler sampler, final Path directory) throws IOException {
+        this(sampler, directory, DEFAULT_SEGMENT, 16);
+    }
+
+    /**
+     * Record the snapshots of a sampler. An existing recording in the directory is continued.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param directory
+     *            directory of the recording, created if missing
+     * @param segmentSize
+     *            bytes per segment file
+     * @param maxSegments
+     *            number of segments kept, the oldest are deleted
+     * @throws IOException
+     *             the directory could not be created or read
+     */
+    public SampleRecorder(final PoolSampler sampler,
+                          final Path directory,
+                          final long segmentSize,
+                          final int maxSegments) throws IOException {
+        if (segmentSize < RECORD_SIZE * 4L || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment size " + segmentSize);
+        }
+        mSampler = sampler;
+        mDirectory = Files.createDirectories(directory);
+        mRecordsPerSegment = (int) (segmentSize / RECORD_SIZE);
+        mMaxSegments = Math.max(1, maxSegments);
+        mSegments.addAll(segments(mDirectory));
+        if (!mSegments.isEmpty()) {
+            mSequence = sequence(mSegments.get(mSegments.size() - 1)) + 1;
+        }
+        mSampler.addListener(this);
+    }
+
+    /**
+     * @return directory of the recording
+     */
+    public Path getDirectory() {
+        return mDirectory;
+    }
+
+    @Override
+    public synchronized void sampled(final List<PoolSnapshot> snapshots) {
+        try {
+            for (final PoolSnapshot snapshot : snapshots) {
+                if (mBuffer == null || mRecord + 2 > mRecordsPerSegment) {
+                    rotate();
+                }
+                if (!isNamed(snapshot.getId())) {
+                    writePool(snapshot);
+                }
+                writeSample(snapshot);
+            }
+        } catch (final IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    /**
+     * Write the mapped pages of the current segment to the disk. The operating system writes them
+     * anyway, this is only needed to survive a crash of the machine rather than of the process.
+     */
+    public synchronized void flush() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Stop recording and close the current segment.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mSampler.removeListener(this);
+        closeSegment();
+    }
+
+    private void writeSample(final PoolSnapshot snapshot) {
+        final MappedByteBuffer buffer = mBuffer;
+        final int base = mRecord * RECORD_SIZE;
+        final LatencySummary queueWait = snapshot.getQueueWait();
+        final LatencySummary runTime = snapshot.getRunTime();
+        byte flags = 0;
+        if (snapshot.isShutdown()) {
+            flags |= FLAG_SHUTDOWN;
+        }
+        if (queueWait != null && runTime != null) {
+            flags |= FLAG_LATENCY;
+            putLatency(buffer, base + QUEUE_WAIT, queueWait);
+            putLatency(buffer, base + RUN_TIME, runTime);
+        }
+        buffer.put(base + FLAGS, flags);
+        buffer.putInt(base + ID, snapshot.getId());
+        buffer.putLong(base + TIMESTAMP, snapshot.getTimestamp());
+        buffer.putLong(base + NANO_TIME, snapshot.getNanoTime());
+        buffer.putInt(base + CORE_POOL_SIZE, snapshot.getCorePoolSize());
+        buffer.putInt(base + THREADS, snapshot.getThreads());
+        buffer.putInt(base + QUEUED, snapshot.getQueued());
+        buffer.putInt(base + ACTIVE, snapshot.getActive());
+        buffer.putLong(base + TASK_COUNT, snapshot.getTaskCount());
+        buffer.putLong(base + COMPLETED_COUNT, snapshot.getCompletedCount());
+        // the type last, a reader never sees a half written record as a sample
+        buffer.put(base + TYPE, TYPE_SAMPLE);
+        mRecord++;
+    }
+
+    private static void putLatency(final MappedByteBuffer buffer,
+                                   final int offset,
+                                   final LatencySummary summary) {
+        buffer.putLong(offset, summary.getCount());
+        buffer.putLong(offset + 8, summary.getP50());
+        buffer.putLong(offset + 16, summary.getP99());
+        buffer.putLong(offset + 24, summary.getP999());
+        buffer.putLong(offset + 32, summary.getMax());
+    }
+
+    /**
+     * Write the name of a pool, once per segment. Allocates, but only for a pool's first sample
+     * in each segment.
+     */
+    private void writePool(final PoolSnapshot snapshot) {
+        final MappedByteBuffer buffer = mBuffer;
+        final int base = mRecord * RECORD_SIZE;
+        byte[] name = snapshot.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME) {
+            name = Arrays.copyOf(name, MAX_NAME);
+        }
+        buffer.putInt(base + ID, snapshot.getId());
+        buffer.putLong(base + TIMESTAMP, snapshot.getTimestamp());
+        buffer.putShort(base + NAME_LENGTH, (short) name.length);
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(base + NAME + i, name[i]);
+        }
+        buffer.put(base + TYPE, TYPE_POOL);
+        mRecord++;
+        if (mNamedCount == mNamed.length) {
+            mNamed = Arrays.copyOf(mNamed, mNamedCount * 2);
+        }
+        mNamed[mNamedCount++] = snapshot.getId();
+    }
+
+    private boolean isNamed(final int id) {
+        for (int i = 0; i < mNamedCount; i++) {
+            if (mNamed[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        final Path path = mDirectory.resolve(String.format("%s%08d%s",
+                                                           SEGMENT_PREFIX,
+                                                           mSequence++,
+                                                           SEGMENT_SUFFIX));
+        mChannel = FileChannel.open(path,
+                                    StandardOpenOption.CREATE_NEW,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE);
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE,
+                               0,
+                               (long) mRecordsPerSegment * RECORD_SIZE);
+        mBuffer.putLong(0, MAGIC);
+        mBuffer.putInt(8, RECORD_SIZE);
+        mRecord = 1;
+        mNamedCount = 0;
+        mSegments.add(path);
+        while (mSegments.size() > mMaxSegments) {
+            Files.deleteIfExists(mSegments.remove(0));
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (mChannel != null) {
+            // the mapping stays valid until collected, the file size already covers it
+            mChannel.close();
+            mChannel = null;
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * @param directory
+     *            directory of a recording
+     * @return segment files, oldest first
+     * @throws IOException
+     *             the directory could not be read
+     */
+    static List<Path> segments(final Path directory) throws IOException {
+        final List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                                                                     SEGMENT_PREFIX
+                                                                                + "*"
+                                                                                + SEGMENT_SUFFIX)) {
+            for (final Path path : stream) {
+                result.add(path);
+            }
+        }
+        // the sequence is zero padded, the names sort in order
+        result.sort(null);
+        return result;
+    }
+
+    private static long sequence(final Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                             name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
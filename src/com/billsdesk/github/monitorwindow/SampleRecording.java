@@ -0,0 +1,259 @@
+package com.billsdesk.github.monitorwindow;
+
+import static com.billsdesk.github.monitorwindow.SampleRecorder.ACTIVE;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.COMPLETED_COUNT;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.CORE_POOL_SIZE;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.FLAGS;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.FLAG_LATENCY;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.FLAG_SHUTDOWN;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.ID;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.MAGIC;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.NAME;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.NAME_LENGTH;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.NANO_TIME;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.QUEUED;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.QUEUE_WAIT;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.RECORD_SIZE;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.RUN_TIME;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.TASK_COUNT;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.THREADS;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.TIMESTAMP;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.TYPE;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.TYPE_END;
+import static com.billsdesk.github.monitorwindow.SampleRecorder.TYPE_POOL;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * Read only view of a recording written by {@link SampleRecorder}. Each segment is memory-mapped,
+ * nothing is loaded into the heap except the names of the pools, so a recording of many gigabytes
+ * opens at once. Records are addressed by a position from 0 to {@link #size()} across the
+ * segments, {@link #seek(long)} finds a time by binary search. Not thread safe.
+ *
+ * @author Bill
+ */
+public class SampleRecording
+    implements
+        Closeable {
+
+    private final List<Segment>        mSegments = new ArrayList<>();
+    private final Map<Integer, String> mNames    = new HashMap<>();
+    private final long                 mSize;
+    @Nullable
+    private Segment                    mNamesOf;
+    private long                       mNamedTo;
+
+    /**
+     * Open a recording.
+     *
+     * @param directory
+     *            directory of the recording
+     * @throws IOException
+     *             the recording could not be read or is not a recording
+     */
+    public SampleRecording(final Path directory) throws IOException {
+        long size = 0;
+        for (final Path path : SampleRecorder.segments(directory)) {
+            final Segment segment = new Segment(path, size);
+            if (segment.mCount > 0) {
+                mSegments.add(segment);
+                size += segment.mCount;
+            }
+        }
+        mSize = size;
+    }
+
+    /**
+     * @return number of records
+     */
+    public long size() {
+        return mSize;
+    }
+
+    /**
+     * @return time in milliseconds of the first record or 0 if empty
+     */
+    public long getStartTime() {
+        return mSize == 0 ? 0 : timestamp(0);
+    }
+
+    /**
+     * @return time in milliseconds of the last record or 0 if empty
+     */
+    public long getEndTime() {
+        return mSize == 0 ? 0 : timestamp(mSize - 1);
+    }
+
+    /**
+     * Find the first record at or after a time. The wall clock of the recording is assumed not to
+     * go backwards.
+     *
+     * @param timestamp
+     *            time in milliseconds
+     * @return position of the record or {@link #size()} if the time is after the recording
+     */
+    public long seek(final long timestamp) {
+        long low = 0;
+        long high = mSize;
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param position
+     *            position of a record
+     * @return time in milliseconds of the record
+     */
+    public long timestamp(final long position) {
+        final Segment segment = segment(position);
+        return segment.mBuffer.getLong(segment.offset(position) + TIMESTAMP);
+    }
+
+    /**
+     * Read a record.
+     *
+     * @param position
+     *            position of a record
+     * @return the snapshot or null if the record names a pool rather than sampling it
+     */
+    @Nullable
+    public PoolSnapshot read(final long position) {
+        final Segment segment = segment(position);
+        if (mNamesOf != segment) {
+            mNamesOf = segment;
+            mNamedTo = segment.mFirst;
+        }
+        // the pools are named earlier in the same segment, e.g. before a seek
+        for (; mNamedTo < position; mNamedTo++) {
+            name(segment, segment.offset(mNamedTo));
+        }
+        final MappedByteBuffer buffer = segment.mBuffer;
+        final int base = segment.offset(position);
+        if (buffer.get(base + TYPE) == TYPE_POOL) {
+            name(segment, base);
+            return null;
+        }
+        final byte flags = buffer.get(base + FLAGS);
+        final int id = buffer.getInt(base + ID);
+        final boolean latency = (flags & FLAG_LATENCY) != 0;
+        final String name = mNames.get(id);
+        return new PoolSnapshot(id,
+                name == null ? "Pool " + id : name,
+                buffer.getLong(base + TIMESTAMP),
+                buffer.getLong(base + NANO_TIME),
+                buffer.getInt(base + CORE_POOL_SIZE),
+                buffer.getInt(base + THREADS),
+                buffer.getInt(base + QUEUED),
+                buffer.getInt(base + ACTIVE),
+                buffer.getLong(base + TASK_COUNT),
+                buffer.getLong(base + COMPLETED_COUNT),
+                (flags & FLAG_SHUTDOWN) != 0,
+                latency ? latency(buffer, base + QUEUE_WAIT) : null,
+                latency ? latency(buffer, base + RUN_TIME) : null);
+    }
+
+    @Override
+    public void close() {
+        // the mappings are released when collected, the channels are closed once mapped
+        mSegments.clear();
+        mNames.clear();
+        mNamesOf = null;
+    }
+
+    private void name(final Segment segment, final int base) {
+        final MappedByteBuffer buffer = segment.mBuffer;
+        if (buffer.get(base + TYPE) == TYPE_POOL) {
+            final byte[] name = new byte[buffer.getShort(base + NAME_LENGTH)];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = buffer.get(base + NAME + i);
+            }
+            mNames.put(buffer.getInt(base + ID), new String(name, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static LatencySummary latency(final MappedByteBuffer buffer, final int offset) {
+        return new LatencySummary(buffer.getLong(offset),
+                buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16),
+                buffer.getLong(offset + 24),
+                buffer.getLong(offset + 32));
+    }
+
+    private Segment segment(final long position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException(Long.toString(position));
+        }
+        int low = 0;
+        int high = mSegments.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (mSegments.get(middle).mFirst <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return mSegments.get(low);
+    }
+
+    private static final class Segment {
+
+        private final MappedByteBuffer mBuffer;
+        private final long             mFirst;
+        private final int              mCount;
+
+        private Segment(final Path path, final long first) throws IOException {
+            try (FileChannel channel = FileChannel.open(path)) {
+                mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (mBuffer.capacity() < RECORD_SIZE
+                || mBuffer.getLong(0) != MAGIC
+                || mBuffer.getInt(8) != RECORD_SIZE) {
+                throw new IOException("not a recording segment: " + path);
+            }
+            mFirst = first;
+            mCount = count(mBuffer);
+        }
+
+        private int offset(final long position) {
+            return (int) (position - mFirst + 1) * RECORD_SIZE;
+        }
+
+        /**
+         * The records are written in order, binary search for the first unused one.
+         */
+        private static int count(final MappedByteBuffer buffer) {
+            int low = 1;
+            int high = buffer.capacity() / RECORD_SIZE;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (buffer.get(middle * RECORD_SIZE + TYPE) != TYPE_END) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class SampleRecordingTest {
+
+    @Test
+    public void readBack() throws IOException {
+        final Path directory = Files.createTempDirectory("recording");
+        try {
+            final PoolSampler sampler = new PoolSampler();
+            final SampleRecorder recorder = new SampleRecorder(sampler, directory);
+            for (int i = 0; i < 10; i++) {
+                sampler.publish(List.of(snapshot(1, "R\u00e91", 1000 + i * 100, i, false),
+                                        snapshot(2, "R2", 1000 + i * 100, i * 2, i == 9)));
+            }
+            recorder.close();
+            try (SampleRecording recording = new SampleRecording(directory)) {
+                // two pool records and twenty samples
+                assertEquals(22, recording.size());
+                assertEquals(1000, recording.getStartTime());
+                assertEquals(1900, recording.getEndTime());
+                // each pool is named ahead of its first sample
+                assertNull(recording.read(0));
+                final PoolSnapshot first = recording.read(1);
+                assertNotNull(first);
+                assertEquals("R\u00e91", first.getName());
+                assertEquals(4, first.getCorePoolSize());
+                assertEquals(7, first.getRunTime().getP99());
+
+                final long position = recording.seek(1450);
+                final PoolSnapshot later = recording.read(position);
+                assertEquals(1500, later.getTimestamp());
+                assertEquals(5, later.getQueued());
+                final PoolSnapshot last = recording.read(recording.size() - 1);
+                assertEquals("R2", last.getName());
+                assertTrue(last.isShutdown());
+                assertEquals(recording.size(), recording.seek(5000));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void rotate() throws IOException {
+        final Path directory = Files.createTempDirectory("recording");
+        try {
+            final PoolSampler sampler = new PoolSampler();
+            // room for the header and 9 records per segment, at most 3 segments
+            final SampleRecorder recorder = new SampleRecorder(sampler,
+                    directory,
+                    SampleRecorder.RECORD_SIZE * 10,
+                    3);
+            for (int i = 0; i < 100; i++) {
+                sampler.publish(List.of(snapshot(7, "R7", i, i, false)));
+            }
+            recorder.close();
+            assertEquals(3, SampleRecorder.segments(directory).size());
+            try (SampleRecording recording = new SampleRecording(directory)) {
+                // each segment names the pool again, the names are found after a seek
+                final PoolSnapshot snapshot = recording.read(recording.seek(95));
+                assertEquals("R7", snapshot.getName());
+                assertEquals(95, snapshot.getTimestamp());
+                assertEquals(99, recording.getEndTime());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void replay() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("recording");
+        try {
+            final PoolSampler recorded = new PoolSampler();
+            final SampleRecorder recorder = new SampleRecorder(recorded, directory);
+            for (int i = 0; i < 5; i++) {
+                recorded.publish(List.of(snapshot(1, "P1", i * 10, i, false),
+                                         snapshot(2, "P2", i * 10, i, false)));
+            }
+            recorder.close();
+            final PoolSampler sampler = new PoolSampler();
+            // the recorded samples are 10ms apart
+            sampler.setHistoryStep(10, TimeUnit.MILLISECONDS);
+            final List<List<PoolSnapshot>> passes = new ArrayList<>();
+            sampler.addListener(passes::add);
+            try (SampleRecording recording = new SampleRecording(directory)) {
+                final SampleReplay replay = new SampleReplay(recording, sampler);
+                replay.setSpeed(100);
+                for (int i = 0; i < 5; i++) {
+                    replay.step();
+                }
+                assertEquals(5, passes.size());
+                assertEquals(2, passes.get(0).size());
+                assertEquals(40, replay.getTime());
+                assertEquals(5, sampler.getHistory(1).get(PoolHistory.Series.QUEUED).size());
+
+                replay.setPaused(true);
+                replay.seek(20);
+                replay.step();
+                assertEquals(6, passes.size());
+                assertEquals(2, passes.get(5).get(0).getQueued());
+                assertEquals(1, sampler.getHistory(1).get(PoolHistory.Series.QUEUED).size());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static PoolSnapshot snapshot(final int id,
+                                         final String name,
+                                         final long timestamp,
+                                         final int queued,
+                                         final boolean shutdown) {
+        return new PoolSnapshot(id,
+                name,
+                timestamp,
+                timestamp * 1_000_000,
+                4,
+                3,
+                queued,
+                2,
+                100 + queued,
+                90,
+                shutdown,
+                new LatencySummary(10, 1, 2, 3, 4),
+                new LatencySummary(20, 5, 7, 8, 9));
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (final Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays a {@link SampleRecording} into a {@link PoolSampler} as if its pools were being sampled,
+ * so every consumer of the sampler, e.g. a {@link MonitorWindow}, shows the recorded pools. The
+ * passes are published with their recorded spacing divided by the speed, a gap longer than a
+ * second, e.g. while the recorded application was down, is shortened to a second.
+ * <p>
+ * The replay runs on its own thread, {@link #setPaused(boolean)}, {@link #seek(long)} and
+ * {@link #setSpeed(double)} may be called from any thread.
+ *
+ * @author Bill
+ */
+public class SampleReplay
+    implements
+        Runnable {
+
+    private static final long        MAX_GAP = TimeUnit.SECONDS.toNanos(1);
+    private static final long        IDLE    = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final SampleRecording    mRecording;
+    private final PoolSampler        mSampler;
+    private final AtomicLong         mSeek   = new AtomicLong(-1);
+    private volatile double          mSpeed  = 1.0;
+    private volatile boolean         mPaused;
+    private volatile long            mTime;
+    // used only by the replay thread
+    private final List<PoolSnapshot> mPass   = new ArrayList<>();
+    private long                     mPosition;
+    private long                     mLastTime;
+    private boolean                  mShowNext;
+
+    /**
+     * Create the replay, starting at the beginning of the recording.
+     *
+     * @param recording
+     *            recording to play, used only by the replay thread from now on
+     * @param sampler
+     *            sampler the passes are published to, not sampling pools of its own
+     */
+    public SampleReplay(final SampleRecording recording, final PoolSampler sampler) {
+        mRecording = recording;
+        mSampler = sampler;
+        mTime = recording.getStartTime();
+        mLastTime = -1;
+    }
+
+    /**
+     * @return time in milliseconds of the first recorded sample
+     */
+    public long getStartTime() {
+        return mRecording.getStartTime();
+    }
+
+    /**
+     * @return time in milliseconds of the last recorded sample
+     */
+    public long getEndTime() {
+        return mRecording.getEndTime();
+    }
+
+    /**
+     * @return recorded time in milliseconds of the pass published last
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @param speed
+     *            recorded time per real time, e.g. 10 plays a minute in 6 seconds. Default 1.
+     */
+    public void setSpeed(final double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        mSpeed = speed;
+    }
+
+    public double getSpeed() {
+        return mSpeed;
+    }
+
+    public void setPaused(final boolean paused) {
+        mPaused = paused;
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * Continue from a time. The histories of the pools are cleared and the pass at the time is
+     * shown even while paused.
+     *
+     * @param timestamp
+     *            recorded time in milliseconds
+     */
+    public void seek(final long timestamp) {
+        mSeek.set(Math.max(0, timestamp));
+    }
+
+    /**
+     * Play until interrupted. At the end of the recording the replay waits for a seek.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                step();
+            }
+        } catch (final InterruptedException error) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Publish the next pass, after waiting for its time, or idle while paused or at the end.
+     *
+     * @throws InterruptedException
+     *             interrupted while waiting
+     */
+    void step() throws InterruptedException {
+        final long seek = mSeek.getAndSet(-1);
+        if (seek >= 0) {
+            mPosition = mRecording.seek(seek);
+            mSampler.clearPublished();
+            mLastTime = -1;
+            mTime = seek;
+            mShowNext = true;
+        }
+        if ((mPaused && !mShowNext) || mPosition >= mRecording.size()) {
+            TimeUnit.NANOSECONDS.sleep(IDLE);
+            return;
+        }
+        mShowNext = false;
+        readPass();
+        if (mPass.isEmpty()) {
+            return;
+        }
+        final long time = mPass.get(0).getTimestamp();
+        if (mLastTime >= 0 && !waitFor(time - mLastTime)) {
+            // a seek arrived while waiting, the pass is read again from the new position
+            mPass.clear();
+            return;
+        }
+        mLastTime = time;
+        mTime = time;
+        mSampler.publish(new ArrayList<>(mPass));
+        mPass.clear();
+    }
+
+    /**
+     * Read the records of one pass, a pass ends where a pool is sampled again.
+     */
+    private void readPass() {
+        final long size = mRecording.size();
+        while (mPosition < size) {
+            final PoolSnapshot snapshot = mRecording.read(mPosition);
+            if (snapshot != null) {
+                for (final PoolSnapshot other : mPass) {
+                    if (other.getId() == snapshot.getId()) {
+                        return;
+                    }
+                }
+                mPass.add(snapshot);
+            }
+            mPosition++;
+        }
+    }
+
+    /**
+     * Wait for the recorded interval at the current speed.
+     *
+     * @param millis
+     *            recorded interval
+     * @return false if a seek arrived meanwhile
+     * @throws InterruptedException
+     *             interrupted while waiting
+     */
+    private boolean waitFor(final long millis) throws InterruptedException {
+        final long interval = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)), MAX_GAP);
+        final long deadline = System.nanoTime() + (long) (interval / mSpeed);
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0 || mPaused) {
+            if (mSeek.get() >= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(IDLE, Math.max(remaining, 1)));
+            remaining = deadline - System.nanoTime();
+        }
+        return true;
+    }
+}
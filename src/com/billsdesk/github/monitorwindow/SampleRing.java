@@ -0,0 +1,137 @@
+package com.billsdesk.github.monitorwindow;
+
+/**
+ * Fixed capacity ring of primitive samples. There is a single writer and any number of readers,
+ * neither takes a lock and nothing is allocated after construction. A reader that races the writer
+ * only receives the samples which were not overwritten while it was copying.
+ *
+ * @author Bill
+ */
+public final class SampleRing {
+
+    private final long[]  mValues;
+    private final int     mMask;
+    private volatile long mCount;
+
+    /**
+     * Create the ring.
+     *
+     * @param capacity
+     *            number of samples to keep, rounded up to a power of two
+     */
+    public SampleRing(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        final int size = Integer.bitCount(capacity) == 1 ? capacity
+                                                         : Integer.highestOneBit(capacity) << 1;
+        mValues = new long[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Append a sample, overwriting the oldest when full. Only the writer thread may call this.
+     *
+     * @param value
+     *            value
+     */
+    public void add(final long value) {
+        final long count = mCount;
+        mValues[(int) (count & mMask)] = value;
+        mCount = count + 1;
+    }
+
+    /**
+     * Replace the most recent sample, e.g. with a later value for the same step. Only the writer
+     * thread may call this, a reader racing it receives either value.
+     *
+     * @param value
+     *            value
+     * @throws IllegalStateException
+     *             the ring is empty
+     */
+    public void setLatest(final long value) {
+        final long count = mCount;
+        if (count == 0) {
+            throw new IllegalStateException("no sample to replace");
+        }
+        mValues[(int) ((count - 1) & mMask)] = value;
+    }
+
+    /**
+     * Discard every sample. Only the writer thread may call this, a reader racing it may still
+     * receive samples from before.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    public int getCapacity() {
+        return mValues.length;
+    }
+
+    /**
+     * @return total number of samples ever added
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return number of samples currently held
+     */
+    public int size() {
+        return (int) Math.min(mCount, mValues.length);
+    }
+
+    /**
+     * @return most recent sample or 0 if empty
+     */
+    public long getLatest() {
+        final long count = mCount;
+        return count == 0 ? 0 : mValues[(int) ((count - 1) & mMask)];
+    }
+
+    /**
+     * Random access for the writer thread, e.g. a consumer called back on the sampling thread
+     * walking back to the start of a window. Another thread must use {@link #copyLast(long[])}.
+     *
+     * @param index
+     *            index of the sample, from {@link #getCount()} - {@link #size()} to
+     *            {@link #getCount()} - 1
+     * @return sample
+     * @throws IndexOutOfBoundsException
+     *             the sample is not held
+     */
+    public long get(final long index) {
+        final long count = mCount;
+        if (index < count - size() || index >= count) {
+            throw new IndexOutOfBoundsException("index " + index + " count " + count);
+        }
+        return mValues[(int) (index & mMask)];
+    }
+
+    /**
+     * Copy the most recent samples, oldest first, into the start of target. At most capacity - 1
+     * samples are returned since the slot the writer fills next is never read.
+     *
+     * @param target
+     *            destination, at most target.length samples are copied
+     * @return number of samples copied
+     */
+    public int copyLast(final long[] target) {
+        final long end = mCount;
+        long start = Math.max(0, Math.max(end - target.length, end + 1 - mValues.length));
+        for (long i = start; i < end; i++) {
+            target[(int) (i - start)] = mValues[(int) (i & mMask)];
+        }
+        // anything the writer overwrote during the copy is discarded
+        final long oldestValid = mCount + 1 - mValues.length;
+        if (oldestValid > start) {
+            final int skip = (int) Math.min(oldestValid - start, end - start);
+            System.arraycopy(target, skip, target, 0, (int) (end - start) - skip);
+            start += skip;
+        }
+        return (int) (end - start);
+    }
+}
@@ -0,0 +1,66 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class SampleRingTest {
+
+    @Test
+    public void capacity() {
+        assertEquals(8, new SampleRing(8).getCapacity());
+        assertEquals(8, new SampleRing(5).getCapacity());
+        assertEquals(1, new SampleRing(1).getCapacity());
+    }
+
+    @Test
+    public void copyLast() {
+        final SampleRing ring = new SampleRing(4);
+        assertEquals(0, ring.copyLast(new long[4]));
+        assertEquals(0, ring.getLatest());
+        ring.add(1);
+        ring.add(2);
+        final long[] target = new long[4];
+        assertEquals(2, ring.copyLast(target));
+        assertArrayEquals(new long[] {
+                                       1, 2
+        }, Arrays.copyOf(target, 2));
+        for (int i = 3; i <= 10; i++) {
+            ring.add(i);
+        }
+        assertEquals(10, ring.getCount());
+        assertEquals(4, ring.size());
+        assertEquals(10, ring.getLatest());
+        assertEquals(3, ring.copyLast(target));
+        assertArrayEquals(new long[] {
+                                       8, 9, 10
+        }, Arrays.copyOf(target, 3));
+        final long[] small = new long[2];
+        assertEquals(2, ring.copyLast(small));
+        assertArrayEquals(new long[] {
+                                       9, 10
+        }, small);
+    }
+
+    @Test
+    public void get() {
+        final SampleRing ring = new SampleRing(4);
+        for (int i = 0; i < 6; i++) {
+            ring.add(i * 10);
+        }
+        assertEquals(20, ring.get(2));
+        assertEquals(50, ring.get(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.get(6));
+    }
+}
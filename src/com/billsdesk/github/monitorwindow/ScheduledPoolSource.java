@@ -0,0 +1,37 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of a ScheduledThreadPoolExecutor. The queue holds every scheduled task, due or not, so the
+ * queued bar counts tasks waiting for their time as well as for a thread. Adds
+ * {@value #LATENESS} to the extras of a ThreadPoolExecutor: how long past its time the next task is
+ * still waiting for a thread, 0 while the pool keeps up.
+ *
+ * @author Bill
+ */
+public class ScheduledPoolSource
+    extends
+        ThreadPoolSource {
+
+    public static final String LATENESS = "lateness" + PoolSnapshot.NANOS;
+
+    public ScheduledPoolSource(final ScheduledThreadPoolExecutor executor) {
+        super(executor);
+    }
+
+    @Override
+    protected Map<String, Long> extras() {
+        // the head of the delay queue is the task due first, peek takes the queue's lock briefly
+        final Object head = getExecutor().getQueue().peek();
+        final long delay = head instanceof Delayed ? ((Delayed) head).getDelay(TimeUnit.NANOSECONDS)
+                                                   : 0;
+        final Map<String, Long> extras = new LinkedHashMap<>(super.extras());
+        extras.put(LATENESS, Math.max(0, -delay));
+        return extras;
+    }
+}
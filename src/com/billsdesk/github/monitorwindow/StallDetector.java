@@ -0,0 +1,391 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+import com.billsdesk.github.monitorwindow.MonitoredThreadPoolExecutor.RunningTask;
+
+/**
+ * Finds tasks which have been running longer than the limit of their pool and pools whose threads
+ * are all busy while nothing completes, then captures the stacks and lock owners of the threads
+ * involved through the {@link ThreadMXBean}. Runs on the sampling thread of a {@link PoolSampler}.
+ * <p>
+ * A {@link MonitoredThreadPoolExecutor} knows which task each worker runs and since when. For any
+ * other pool only a stall is detected, every thread busy and the completed count frozen for the
+ * limit, and the threads involved are those whose names start with the prefix of the pool's
+ * {@link NamedThreadFactory}. The stacks are captured when the problem is found and again at most
+ * once per capture interval while it lasts, the report is dropped once the pool recovers.
+ *
+ * <pre>
+ * final StallDetector stalls = new StallDetector(sampler, 30, TimeUnit.SECONDS);
+ * stalls.setLimit(id, 2, TimeUnit.MINUTES);
+ * final StallDetector.Report report = stalls.getReport(id);
+ * </pre>
+ *
+ * @author Bill
+ */
+public class StallDetector
+    implements
+        PoolSampler.Listener {
+
+    private final PoolSampler          mSampler;
+    private final ThreadMXBean         mThreads = ManagementFactory.getThreadMXBean();
+    private final long                 mDefaultLimit;
+    private final Map<Integer, Long>   mLimits  = new ConcurrentHashMap<>();
+    private final Map<Integer, Report> mReports = new ConcurrentHashMap<>();
+    private volatile long              mCapture = TimeUnit.SECONDS.toNanos(5);
+    // sampling thread only
+    private final Map<Integer, Watch>  mWatches = new HashMap<>();
+
+    /**
+     * A stuck task, or a busy thread of a stalled pool, with its stack.
+     */
+    public static final class Stuck {
+
+        private final ThreadInfo mThread;
+        @Nullable
+        private final Runnable   mTask;
+        private final long       mRunning;
+
+        public Stuck(final ThreadInfo thread, @Nullable final Runnable task, final long running) {
+            mThread = thread;
+            mTask = task;
+            mRunning = running;
+        }
+
+        /**
+         * @return state, stack, lock and lock owner of the thread when captured
+         */
+        public ThreadInfo getThread() {
+            return mThread;
+        }
+
+        /**
+         * @return task or null if the pool does not tell which task its threads run
+         */
+        @Nullable
+        public Runnable getTask() {
+            return mTask;
+        }
+
+        /**
+         * @return nanoseconds the task had been running when captured, -1 if not known
+         */
+        public long getRunning() {
+            return mRunning;
+        }
+    }
+
+    /**
+     * What was found in one pool, immutable.
+     */
+    public static final class Report {
+
+        private final int         mId;
+        private final String      mName;
+        private final long        mTimestamp;
+        private final boolean     mStalled;
+        private final List<Stuck> mStuck;
+
+        public Report(final int id,
+                      final String name,
+                      final long timestamp,
+                      final boolean stalled,
+                      final List<Stuck> stuck) {
+            mId = id;
+            mName = name;
+            mTimestamp = timestamp;
+            mStalled = stalled;
+            mStuck = Collections.unmodifiableList(new ArrayList<>(stuck));
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return wall clock time in milliseconds of the capture
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * @return true if every thread was busy and nothing completed for the limit
+         */
+        public boolean isStalled() {
+            return mStalled;
+        }
+
+        /**
+         * @return the threads involved, longest running first
+         */
+        public List<Stuck> getStuck() {
+            return mStuck;
+        }
+
+        /**
+         * Format the report like a thread dump, with the task and running time of each thread and
+         * the owner of the lock it waits for.
+         *
+         * @return text
+         */
+        public String format() {
+            final StringBuilder text = new StringBuilder(1024);
+            text.append(mName);
+            if (mStalled) {
+                text.append(": every thread busy, nothing completed");
+            }
+            text.append('\n');
+            for (final Stuck stuck : mStuck) {
+                final ThreadInfo info = stuck.getThread();
+                text.append('\n')
+                    .append('"')
+                    .append(info.getThreadName())
+                    .append("\" ")
+                    .append(info.getThreadState());
+                if (stuck.getRunning() >= 0) {
+                    text.append(String.format(" running %.1f s", stuck.getRunning() / 1e9));
+                }
+                if (stuck.getTask() != null) {
+                    text.append(": ").append(stuck.getTask());
+                }
+                text.append('\n');
+                if (info.getLockName() != null) {
+                    text.append("    waiting on ").append(info.getLockName());
+                    if (info.getLockOwnerName() != null) {
+                        text.append(" owned by \"")
+                            .append(info.getLockOwnerName())
+                            .append("\" id ")
+                            .append(info.getLockOwnerId());
+                    }
+                    text.append('\n');
+                }
+                final StackTraceElement[] stack = info.getStackTrace();
+                for (int depth = 0; depth < stack.length; depth++) {
+                    text.append("    at ").append(stack[depth]).append('\n');
+                    for (final MonitorInfo monitor : info.getLockedMonitors()) {
+                        if (monitor.getLockedStackDepth() == depth) {
+                            text.append("    - locked ").append(monitor).append('\n');
+                        }
+                    }
+                }
+                for (final LockInfo lock : info.getLockedSynchronizers()) {
+                    text.append("    - holds ").append(lock).append('\n');
+                }
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %d threads",
+                                 mName,
+                                 mStalled ? "stalled" : "stuck",
+                                 mStuck.size());
+        }
+    }
+
+    /**
+     * Watch the pools of a sampler.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param limit
+     *            running time after which a task is stuck, and time without a completion after
+     *            which a busy pool is stalled, unless {@link #setLimit(int, long, TimeUnit)}
+     * @param unit
+     *            unit of limit
+     */
+    public StallDetector(final PoolSampler sampler, final long limit, final TimeUnit unit) {
+        mSampler = sampler;
+        mDefaultLimit = unit.toNanos(limit);
+        mSampler.addListener(this);
+    }
+
+    /**
+     * @param id
+     *            id returned by {@link PoolSampler#register(String, ThreadPoolExecutor)}
+     * @param limit
+     *            running time after which a task of the pool is stuck
+     * @param unit
+     *            unit of limit
+     */
+    public void setLimit(final int id, final long limit, final TimeUnit unit) {
+        mLimits.put(id, unit.toNanos(limit));
+    }
+
+    /**
+     * @param interval
+     *            shortest time between two captures of the same pool. Default 5s.
+     * @param unit
+     *            unit of interval
+     */
+    public void setCaptureInterval(final long interval, final TimeUnit unit) {
+        mCapture = unit.toNanos(interval);
+    }
+
+    /**
+     * @param id
+     *            id of the pool
+     * @return latest capture or null if nothing is stuck
+     */
+    @Nullable
+    public Report getReport(final int id) {
+        return mReports.get(id);
+    }
+
+    /**
+     * Stop listening to the sampler.
+     */
+    public void close() {
+        mSampler.removeListener(this);
+        mReports.clear();
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                mWatches.remove(snapshot.getId());
+                mReports.remove(snapshot.getId());
+            } else {
+                check(snapshot);
+            }
+        }
+    }
+
+    private void check(final PoolSnapshot snapshot) {
+        final Watch watch = mWatches.computeIfAbsent(snapshot.getId(), id -> new Watch());
+        final long limit = mLimits.getOrDefault(snapshot.getId(), mDefaultLimit);
+        if (snapshot.getCompletedCount() != watch.mCompleted
+            || snapshot.getActive() == 0
+            || snapshot.getActive() < snapshot.getThreads()) {
+            watch.mCompleted = snapshot.getCompletedCount();
+            watch.mProgress = snapshot.getNanoTime();
+        }
+        final boolean stalled = snapshot.getNanoTime() - watch.mProgress >= limit;
+        final Executor executor = mSampler.getExecutor(snapshot.getId());
+        final List<RunningTask> running = executor instanceof MonitoredThreadPoolExecutor
+            ? ((MonitoredThreadPoolExecutor) executor).getRunningLongerThan(limit)
+            : Collections.emptyList();
+        if (!stalled && running.isEmpty()) {
+            mReports.remove(snapshot.getId());
+            watch.mCaptured = false;
+            return;
+        }
+        if (watch.mCaptured && snapshot.getNanoTime() - watch.mCapturedAt < mCapture) {
+            return;
+        }
+        watch.mCaptured = true;
+        watch.mCapturedAt = snapshot.getNanoTime();
+        mReports.put(snapshot.getId(),
+                     new Report(snapshot.getId(),
+                             snapshot.getName(),
+                             System.currentTimeMillis(),
+                             stalled,
+                             capture(executor, running, stalled)));
+    }
+
+    /**
+     * Capture the threads running the stuck tasks and, for a stalled pool, every thread named
+     * with the prefix of the pool.
+     *
+     * @param executor
+     *            executor of the pool or null if no longer registered
+     * @param running
+     *            stuck tasks
+     * @param stalled
+     *            true if the pool is stalled
+     * @return the threads, longest running first
+     */
+    private List<Stuck> capture(@Nullable final Executor executor,
+                                final List<RunningTask> running,
+                                final boolean stalled) {
+        final Map<Long, RunningTask> tasks = new HashMap<>();
+        for (final RunningTask task : running) {
+            tasks.put(task.getThread().getId(), task);
+        }
+        final List<Long> ids = new ArrayList<>(tasks.keySet());
+        final String prefix = stalled ? prefix(executor) : null;
+        if (prefix != null) {
+            // names only, no stacks, to find the threads of the pool
+            for (final ThreadInfo info : mThreads.getThreadInfo(mThreads.getAllThreadIds(), 0)) {
+                if (info != null
+                    && info.getThreadName().startsWith(prefix)
+                    && !tasks.containsKey(info.getThreadId())) {
+                    ids.add(info.getThreadId());
+                }
+            }
+        }
+        final long[] threadIds = new long[ids.size()];
+        for (int i = 0; i < threadIds.length; i++) {
+            threadIds[i] = ids.get(i);
+        }
+        final long now = System.nanoTime();
+        final List<Stuck> result = new ArrayList<>(threadIds.length);
+        final ThreadInfo[] infos = mThreads.getThreadInfo(threadIds,
+                                                          mThreads.isObjectMonitorUsageSupported(),
+                                                          mThreads.isSynchronizerUsageSupported());
+        for (final ThreadInfo info : infos) {
+            // null if the thread ended since
+            if (info != null) {
+                final RunningTask task = tasks.get(info.getThreadId());
+                result.add(task == null ? new Stuck(info, null, -1)
+                                        : new Stuck(info, task.getTask(), now - task.getStarted()));
+            }
+        }
+        result.sort((first, second) -> Long.compare(second.getRunning(), first.getRunning()));
+        return result;
+    }
+
+    /**
+     * @param executor
+     *            executor of the pool
+     * @return prefix of the names of its threads or null if not named by a
+     *         {@link NamedThreadFactory}
+     */
+    @Nullable
+    private static String prefix(@Nullable final Executor executor) {
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            return null;
+        }
+        ThreadFactory factory = ((ThreadPoolExecutor) executor).getThreadFactory();
+        if (factory instanceof CountingThreadFactory) {
+            factory = ((CountingThreadFactory) factory).getFactory();
+        }
+        return factory instanceof NamedThreadFactory ? ((NamedThreadFactory) factory).getPrefix()
+                                                     : null;
+    }
+
+    /**
+     * Progress of one pool.
+     */
+    private static final class Watch {
+
+        private long    mCompleted = -1;
+        private long    mProgress;
+        private boolean mCaptured;
+        private long    mCapturedAt;
+    }
+}
@@ -0,0 +1,122 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.Thread.State;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class StallDetectorTest {
+
+    @Test
+    public void stalled() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final StallDetector detector = new StallDetector(sampler, 50, TimeUnit.MILLISECONDS);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1,
+                1,
+                0,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("Wedged"));
+        try {
+            final int id = sampler.register("Wedged", executor);
+            executor.execute(() -> Latches.await(release));
+            while (executor.getActiveCount() == 0) {
+                Thread.sleep(1);
+            }
+            sampler.sample();
+            assertNull(detector.getReport(id));
+            Thread.sleep(100);
+            sampler.sample();
+            final StallDetector.Report report = detector.getReport(id);
+            assertNotNull(report);
+            assertTrue(report.isStalled());
+            assertEquals(1, report.getStuck().size());
+            final StallDetector.Stuck stuck = report.getStuck().get(0);
+            assertTrue(stuck.getThread().getThreadName().startsWith("Wedged"));
+            assertNull(stuck.getTask());
+            assertEquals(-1, stuck.getRunning());
+
+            release.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+            sampler.sample();
+            assertNull(detector.getReport(id));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            detector.close();
+        }
+    }
+
+    @Test
+    public void stuckTask() throws InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final StallDetector detector = new StallDetector(sampler, 1, TimeUnit.MINUTES);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object lock = new Object();
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 2, 2, "Locked");
+        try {
+            final int id = sampler.register("Locked", executor);
+            detector.setLimit(id, 50, TimeUnit.MILLISECONDS);
+            executor.execute(() -> {
+                synchronized (lock) {
+                    Latches.await(release);
+                }
+            });
+            while (executor.getRunning() == 0) {
+                Thread.sleep(1);
+            }
+            final Runnable blocked = () -> {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            };
+            executor.execute(blocked);
+            Thread.sleep(100);
+            sampler.sample();
+            final StallDetector.Report report = detector.getReport(id);
+            assertNotNull(report);
+            // the first pass only starts the clock on the completed count
+            assertFalse(report.isStalled());
+            assertEquals(2, report.getStuck().size());
+            StallDetector.Stuck waiting = report.getStuck().get(0);
+            if (waiting.getTask() != blocked) {
+                waiting = report.getStuck().get(1);
+            }
+            assertEquals(State.BLOCKED, waiting.getThread().getThreadState());
+            assertTrue(waiting.getRunning() >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertTrue(report.format().contains("owned by \"Locked"), report.format());
+            assertTrue(report.format().contains("- locked"), report.format());
+
+            release.countDown();
+            while (executor.getCompleted() < 2) {
+                Thread.sleep(1);
+            }
+            sampler.sample();
+            assertNull(detector.getReport(id));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            detector.close();
+        }
+    }
+}
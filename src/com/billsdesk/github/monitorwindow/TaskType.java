@@ -0,0 +1,17 @@
+package com.billsdesk.github.monitorwindow;
+
+/**
+ * Implemented by a Runnable or Callable to choose the type it is counted under by a
+ * {@link MonitoredThreadPoolExecutor}, e.g. the name of a job rather than its class. Tasks which
+ * don't implement it are counted under their class.
+ *
+ * @author Bill
+ */
+@FunctionalInterface
+public interface TaskType {
+
+    /**
+     * @return type of the task, a small set of values shared by many tasks
+     */
+    String getTaskType();
+}
@@ -0,0 +1,173 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.awt.Font;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+
+import com.billsdesk.github.monitorwindow.TaskTypes.Summary;
+
+/**
+ * Window showing the tasks of one pool by type in a table sorted by any column, the share of the
+ * run time first. Rates and shares are over the last refresh, once a second while the window is
+ * open, the counts and latencies since the pool was created.
+ *
+ * @author Bill
+ */
+final class TaskTypeTable
+    extends
+        JDialog {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int  REFRESH          = 1000;
+    // column sorted by at first
+    private static final int  SHARE            = 5;
+
+    private final TaskTypes   mTypes;
+    private final Model       mModel           = new Model();
+    private final Timer       mTimer;
+
+    /**
+     * Create the window, {@link #setVisible(boolean)} shows it.
+     *
+     * @param owner
+     *            window of the monitor
+     * @param name
+     *            name of the pool
+     * @param types
+     *            task types of the pool
+     */
+    TaskTypeTable(final Window owner, final String name, final TaskTypes types) {
+        super(owner, name + " - Task Types");
+        mTypes = types;
+        final JTable table = new JTable(mModel);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        final TableRowSorter<Model> sorter = new TableRowSorter<>(mModel);
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(SHARE,
+                SortOrder.DESCENDING)));
+        table.setRowSorter(sorter);
+        getContentPane().add(new JScrollPane(table));
+        mModel.refresh(mTypes.summarize(), System.nanoTime());
+        mTimer = new Timer(REFRESH, event -> mModel.refresh(mTypes.summarize(), System.nanoTime()));
+        addWindowListener(new WindowAdapter() {
+
+            @Override
+            public void windowClosed(final WindowEvent event) {
+                mTimer.stop();
+            }
+        });
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        pack();
+        mTimer.start();
+    }
+
+    /**
+     * One row per type, the previous summaries kept for the rates.
+     */
+    private static final class Model
+        extends
+            AbstractTableModel {
+
+        private static final long     serialVersionUID = 1L;
+
+        private static final String[] COLUMNS          = {
+            "Type", "Started", "Completed", "Failed", "Rate/s", "Run %", "Wait p99 ms",
+            "Run p50 ms", "Run p99 ms", "Run max ms"
+        };
+
+        private List<Object[]>        mRows            = Collections.emptyList();
+        private Map<String, Summary>  mPrevious        = Collections.emptyMap();
+        private long                  mPreviousTime;
+
+        /**
+         * Replace the rows, the rates are the change since the previous refresh.
+         *
+         * @param summaries
+         *            summaries of every type
+         * @param now
+         *            nano time of the summaries
+         */
+        void refresh(final List<Summary> summaries, final long now) {
+            final double seconds = (now - mPreviousTime) / 1e9;
+            long runNanos = 0;
+            for (final Summary summary : summaries) {
+                final Summary before = mPrevious.get(summary.getName());
+                runNanos += summary.getRunNanos() - (before == null ? 0 : before.getRunNanos());
+            }
+            final List<Object[]> rows = new ArrayList<>(summaries.size());
+            final Map<String, Summary> previous = new HashMap<>();
+            for (final Summary summary : summaries) {
+                final Summary before = mPrevious.get(summary.getName());
+                final long run = summary.getRunNanos()
+                                 - (before == null ? 0 : before.getRunNanos());
+                final long completed = summary.getCompleted()
+                                       - (before == null ? 0 : before.getCompleted());
+                rows.add(new Object[] {
+                    summary.getName(),
+                    summary.getStarted(),
+                    summary.getCompleted(),
+                    summary.getFailed(),
+                    mPreviousTime == 0 ? 0.0 : round(completed / seconds),
+                    runNanos == 0 ? 0.0 : round(100.0 * run / runNanos),
+                    round(summary.getQueueWait().getP99() / 1e6),
+                    round(summary.getRunTime().getP50() / 1e6),
+                    round(summary.getRunTime().getP99() / 1e6),
+                    round(summary.getRunTime().getMax() / 1e6)
+                });
+                previous.put(summary.getName(), summary);
+            }
+            mRows = rows;
+            mPrevious = previous;
+            mPreviousTime = now;
+            fireTableDataChanged();
+        }
+
+        private static double round(final double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+
+        @Override
+        public int getRowCount() {
+            return mRows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(final int column) {
+            if (column == 0) {
+                return String.class;
+            }
+            return column <= 3 ? Long.class : Double.class;
+        }
+
+        @Override
+        public Object getValueAt(final int row, final int column) {
+            return mRows.get(row)[column];
+        }
+    }
+}
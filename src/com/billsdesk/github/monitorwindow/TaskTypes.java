@@ -0,0 +1,246 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.billsdesk.github.monitorwindow.LatencyHistogram.LatencySummary;
+import com.billsdesk.github.monitorwindow.MonitoredThreadPoolExecutor.Timing;
+
+/**
+ * Counters and latency histograms of the tasks of one pool by type, the {@link TaskType} of a task
+ * or otherwise its class. The number of types is capped, once full any new type is counted under
+ * {@value #OTHER} so a pool running generated lambdas can't grow the map without bound. Looking up
+ * a known type takes no lock and the counters are striped, the threads submitting and running
+ * tasks don't contend on them.
+ *
+ * @author Bill
+ */
+public final class TaskTypes {
+
+    public static final String       OTHER  = "(other)";
+
+    private final int                mCapacity;
+    private final Map<Object, Stats> mTypes = new ConcurrentHashMap<>();
+    private final Stats              mOther = new Stats(OTHER);
+
+    /**
+     * Counters of one type, updated by the executor hooks.
+     */
+    public static final class Stats {
+
+        private final String           mName;
+        private final LongAdder        mStarted   = new LongAdder();
+        private final LongAdder        mCompleted = new LongAdder();
+        private final LongAdder        mFailed    = new LongAdder();
+        private final LongAdder        mRunNanos  = new LongAdder();
+        private final LatencyHistogram mQueueWait = new LatencyHistogram();
+        private final LatencyHistogram mRunTime   = new LatencyHistogram();
+
+        private Stats(final String name) {
+            mName = name;
+        }
+
+        /**
+         * @return name of the type, see {@link Summary#getName()}
+         */
+        public String getName() {
+            return mName;
+        }
+
+        void started(final long queueWait) {
+            mStarted.increment();
+            mQueueWait.record(queueWait);
+        }
+
+        void completed(final long runTime, final boolean failed) {
+            mRunTime.record(runTime);
+            mRunNanos.add(runTime);
+            mCompleted.increment();
+            if (failed) {
+                mFailed.increment();
+            }
+        }
+
+        /**
+         * @return a copy of the counters and the percentiles
+         */
+        public Summary summarize() {
+            return new Summary(mName,
+                    mStarted.sum(),
+                    mCompleted.sum(),
+                    mFailed.sum(),
+                    mRunNanos.sum(),
+                    mQueueWait.summarize(),
+                    mRunTime.summarize());
+        }
+    }
+
+    /**
+     * Immutable counters and percentiles of one type.
+     */
+    public static final class Summary {
+
+        private final String         mName;
+        private final long           mStarted;
+        private final long           mCompleted;
+        private final long           mFailed;
+        private final long           mRunNanos;
+        private final LatencySummary mQueueWait;
+        private final LatencySummary mRunTime;
+
+        public Summary(final String name,
+                       final long started,
+                       final long completed,
+                       final long failed,
+                       final long runNanos,
+                       final LatencySummary queueWait,
+                       final LatencySummary runTime) {
+            mName = name;
+            mStarted = started;
+            mCompleted = completed;
+            mFailed = failed;
+            mRunNanos = runNanos;
+            mQueueWait = queueWait;
+            mRunTime = runTime;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getStarted() {
+            return mStarted;
+        }
+
+        public long getCompleted() {
+            return mCompleted;
+        }
+
+        /**
+         * @return tasks which threw, including a task submitted as a Future which completed with
+         *         an exception
+         */
+        public long getFailed() {
+            return mFailed;
+        }
+
+        /**
+         * @return total nanoseconds the tasks ran, the share of the pool the type used
+         */
+        public long getRunNanos() {
+            return mRunNanos;
+        }
+
+        public LatencySummary getQueueWait() {
+            return mQueueWait;
+        }
+
+        public LatencySummary getRunTime() {
+            return mRunTime;
+        }
+    }
+
+    /**
+     * Create the map.
+     *
+     * @param capacity
+     *            number of types counted separately
+     */
+    public TaskTypes(final int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Find the counters of a task, adding its type if there is room.
+     *
+     * @param task
+     *            task as submitted, or the Future submit wrapped it in
+     * @return counters of the type
+     */
+    Stats of(final Runnable task) {
+        final Object key = key(task);
+        final Stats stats = mTypes.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (mTypes.size() >= mCapacity) {
+            return mOther;
+        }
+        return mTypes.computeIfAbsent(key, type -> new Stats(name(type)));
+    }
+
+    /**
+     * @return summaries of every type seen, {@value #OTHER} last if anything overflowed
+     */
+    public List<Summary> summarize() {
+        final List<Summary> result = new ArrayList<>(mTypes.size() + 1);
+        for (final Stats stats : mTypes.values()) {
+            result.add(stats.summarize());
+        }
+        final Summary other = mOther.summarize();
+        if (other.getStarted() > 0) {
+            result.add(other);
+        }
+        return result;
+    }
+
+    /**
+     * @param task
+     *            task
+     * @return the tag of a {@link TaskType}, otherwise the class of the task
+     */
+    private static Object key(final Runnable task) {
+        final Object typed = unwrap(task);
+        // the class is the key of an untagged task, nothing is allocated to look it up
+        return typed instanceof TaskType ? ((TaskType) typed).getTaskType() : typed.getClass();
+    }
+
+    /**
+     * @param task
+     *            task as run by the executor
+     * @return the Runnable or Callable given to submit, otherwise the task
+     */
+    static Object unwrap(final Runnable task) {
+        return task instanceof TypedFuture ? ((TypedFuture<?>) task).mTask : task;
+    }
+
+    private static String name(final Object key) {
+        if (!(key instanceof Class)) {
+            return key.toString();
+        }
+        final String name = ((Class<?>) key).getName();
+        // the name of a lambda's hidden class ends with its address
+        final int hidden = name.indexOf('/');
+        return hidden < 0 ? name : name.substring(0, hidden);
+    }
+
+    /**
+     * Future returned by submit which remembers the task it wraps, for its type.
+     *
+     * @param <T>
+     *            result of the task
+     */
+    static final class TypedFuture<T>
+        extends
+            FutureTask<T> {
+
+        private final Object mTask;
+        // stamped by the executor, the queue holds the future itself
+        final Timing         mTiming = new Timing();
+
+        TypedFuture(final Callable<T> callable) {
+            super(callable);
+            mTask = callable;
+        }
+
+        TypedFuture(final Runnable runnable, final T result) {
+            super(runnable, result);
+            mTask = runnable;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class TaskTypesTest {
+
+    @Test
+    public void capacity() {
+        final TaskTypes types = new TaskTypes(2);
+        final TaskTypes.Stats first = types.of(new Tagged("a"));
+        assertSame(first, types.of(new Tagged("a")));
+        types.of(new Tagged("b"));
+        types.of(new Tagged("c")).started(0);
+        types.of(new Tagged("d")).started(0);
+        final Map<String, TaskTypes.Summary> summaries = byName(types);
+        assertEquals(3, summaries.size());
+        assertEquals(2, summaries.get(TaskTypes.OTHER).getStarted());
+    }
+
+    @Test
+    public void executor() throws InterruptedException, ExecutionException {
+        final MonitoredThreadPoolExecutor executor = new MonitoredThreadPoolExecutor(1,
+                1,
+                0,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("Typed"));
+        try {
+            executor.execute(new Tagged("execute"));
+            executor.submit(new Tagged("submit")).get();
+            executor.submit(() -> "callable").get();
+            executor.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+            // the future keeps the exception, the task is still counted as failed
+            final Callable<String> failing = () -> {
+                throw new IllegalStateException("failed");
+            };
+            executor.submit(failing);
+            executor.submit(new Tagged("last")).get();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        final Map<String, TaskTypes.Summary> summaries = byName(executor.getTaskTypes());
+        assertEquals(6, summaries.size());
+        assertEquals(1, summaries.get("execute").getCompleted());
+        assertEquals(1, summaries.get("submit").getCompleted());
+        assertEquals(1, summaries.get("last").getRunTime().getCount());
+        int failed = 0;
+        for (final TaskTypes.Summary summary : summaries.values()) {
+            if (summary.getName().startsWith(TaskTypesTest.class.getName() + "$$Lambda")) {
+                failed += summary.getFailed();
+            }
+        }
+        assertEquals(2, failed);
+    }
+
+    @Test
+    public void name() {
+        final TaskTypes types = new TaskTypes(4);
+        final Runnable lambda = () -> {
+        };
+        types.of(lambda).started(0);
+        types.of(new Tagged("tag")).started(0);
+        final Map<String, TaskTypes.Summary> summaries = byName(types);
+        assertEquals(2, summaries.size());
+        assertEquals(1, summaries.get("tag").getStarted());
+        summaries.remove("tag");
+        final String name = summaries.keySet().iterator().next();
+        assertEquals(-1, name.indexOf('/'), name);
+    }
+
+    private static Map<String, TaskTypes.Summary> byName(final TaskTypes types) {
+        final Map<String, TaskTypes.Summary> result = new HashMap<>();
+        for (final TaskTypes.Summary summary : types.summarize()) {
+            result.put(summary.getName(), summary);
+        }
+        return result;
+    }
+
+    private static final class Tagged
+        implements
+            Runnable,
+            TaskType {
+
+        private final String mType;
+
+        Tagged(final String type) {
+            mType = type;
+        }
+
+        @Override
+        public String getTaskType() {
+            return mType;
+        }
+
+        @Override
+        public void run() {
+            // nothing
+        }
+    }
+}
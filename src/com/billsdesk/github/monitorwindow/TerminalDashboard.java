@@ -0,0 +1,436 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+
+/**
+ * Draws the pools of a {@link PoolSampler} as a dashboard of ANSI text, for hosts without a display
+ * where a {@link MonitorWindow} can't be opened, e.g. over an SSH session. Each pool is a row with
+ * the threads, queued and active bars of its monitor colored by the thresholds set on the sampler,
+ * and its submitted and completed counts. The pools at the worst status come first, those which
+ * don't fit the screen are counted on the last row.
+ * <p>
+ * The screen is drawn into a grid of cells and only the cells which changed since the previous
+ * refresh are written, a quiet pool costs nothing and a busy one the few cells of its bars and
+ * counts. Refreshes run on a thread of their own, independent of the sampling rate.
+ *
+ * <pre>
+ * final TerminalDashboard dashboard = new TerminalDashboard(sampler, System.out);
+ * dashboard.setSize(160, 50).start(250, TimeUnit.MILLISECONDS);
+ * </pre>
+ *
+ * @author Bill
+ */
+public class TerminalDashboard
+    implements
+        PoolSampler.Listener {
+
+    private static final String              CSI          = "\u001b[";
+    // SGR foreground of NOTSET, GOOD, WARNING, ALERT and CRISIS, as ThresholdData.COLOR
+    private static final byte[]              STATUS_COLOR = {
+                                                             39, 32, 33, 31, 90
+    };
+    private static final byte                DEFAULT      = 39;
+    private static final byte                DIM          = 90;
+    // a full block then the eighths of one, narrowest first
+    private static final char                FULL         = '\u2588';
+    private static final String              EIGHTHS      = "\u258f\u258e\u258d\u258c"
+                                                            + "\u258b\u258a\u2589";
+    private static final char                EMPTY        = '\u00b7';
+    private static final int                 NAME         = 16;
+    private static final int                 VALUE        = 5;
+    private static final int                 COUNT        = 13;
+    private static final DateTimeFormatter   TIME         = DateTimeFormatter
+        .ofPattern("HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+
+    private final PoolSampler                mSampler;
+    private final Writer                     mOut;
+    private final Map<Integer, PoolSnapshot> mLatest      = new ConcurrentSkipListMap<>();
+    private volatile double                  mScale       = 1;
+    // refresh only, guarded by this
+    private final StringBuilder              mText        = new StringBuilder(8192);
+    private final List<PoolSnapshot>         mPools       = new ArrayList<>();
+    private int                              mColumns     = 120;
+    private int                              mRows        = 40;
+    private char[]                           mCells;
+    private byte[]                           mColors;
+    private char[]                           mShownCells;
+    private byte[]                           mShownColors;
+    private byte                             mColor;
+    private boolean                          mEntered;
+    private boolean                          mClear;
+    @Nullable
+    private Thread                           mThread;
+
+    /**
+     * Create the dashboard and start listening to the sampler.
+     *
+     * @param sampler
+     *            sampler providing the snapshots
+     * @param out
+     *            terminal, e.g. System.out, written as UTF-8
+     */
+    public TerminalDashboard(final PoolSampler sampler, final OutputStream out) {
+        mSampler = sampler;
+        mOut = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        resize();
+        mSampler.addListener(this);
+    }
+
+    /**
+     * Set the size of the terminal, the whole screen is drawn again at the next refresh.
+     *
+     * @param columns
+     *            columns, at least 60. Default 120.
+     * @param rows
+     *            rows, at least 4. Default 40.
+     * @return this
+     */
+    public synchronized TerminalDashboard setSize(final int columns, final int rows) {
+        mColumns = Math.max(60, columns);
+        mRows = Math.max(4, rows);
+        resize();
+        return this;
+    }
+
+    /**
+     * @param scale
+     *            scale of the core pool size for the full width of a bar, as
+     *            {@link MonitorWindow#options(long, double, double, double)}. Default 1.0.
+     * @return this
+     */
+    public TerminalDashboard setScale(final double scale) {
+        mScale = scale;
+        return this;
+    }
+
+    /**
+     * Refresh the screen at a fixed rate on a daemon thread until {@link #stop()}.
+     *
+     * @param period
+     *            time between refreshes, e.g. 250ms
+     * @param unit
+     *            unit of period
+     * @return this
+     */
+    public synchronized TerminalDashboard start(final long period, final TimeUnit unit) {
+        final long nanos = unit.toNanos(period);
+        final Thread thread = new Thread(() -> {
+            long next = System.nanoTime();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    refresh();
+                    next += nanos;
+                    final long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } else {
+                        // too slow for the period, no burst of refreshes to catch up
+                        next = System.nanoTime();
+                    }
+                }
+            } catch (final InterruptedException error) {
+                // Ignore
+            } catch (final IOException error) {
+                // the terminal has gone, e.g. the session was closed
+                mSampler.removeListener(this);
+            }
+        }, "Dashboard");
+        thread.setDaemon(true);
+        thread.start();
+        mThread = thread;
+        return this;
+    }
+
+    /**
+     * Stop refreshing and listening to the sampler, and give the terminal back as it was.
+     *
+     * @throws InterruptedException
+     *             interrupted waiting for the refresh thread
+     */
+    public void stop() throws InterruptedException {
+        mSampler.removeListener(this);
+        final Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+        synchronized (this) {
+            if (mEntered) {
+                mEntered = false;
+                try {
+                    // default colors, cursor shown, main screen
+                    mOut.write(CSI + "0m" + CSI + "?25h" + CSI + "?1049l");
+                    mOut.flush();
+                } catch (final IOException error) {
+                    // the terminal has gone
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sampled(final List<PoolSnapshot> snapshots) {
+        for (final PoolSnapshot snapshot : snapshots) {
+            if (snapshot.isShutdown()) {
+                mLatest.remove(snapshot.getId());
+            } else {
+                mLatest.put(snapshot.getId(), snapshot);
+            }
+        }
+    }
+
+    /**
+     * Draw the latest snapshots and write the cells which changed.
+     *
+     * @throws IOException
+     *             failed to write
+     */
+    public synchronized void refresh() throws IOException {
+        mText.setLength(0);
+        if (!mEntered) {
+            // alternate screen so the shell's screen comes back on stop, cursor hidden
+            mText.append(CSI).append("?1049h").append(CSI).append("?25l").append(CSI).append("2J");
+            mText.append(CSI).append("0m");
+            mColor = DEFAULT;
+            mEntered = true;
+        } else if (mClear) {
+            mText.append(CSI).append("2J");
+        }
+        mClear = false;
+        draw();
+        diff();
+        if (mText.length() > 0) {
+            mOut.append(mText);
+            mOut.flush();
+        }
+    }
+
+    /**
+     * Allocate the cells for the size, nothing shown so everything is written.
+     */
+    private void resize() {
+        final int size = mColumns * mRows;
+        mCells = new char[size];
+        mColors = new byte[size];
+        mShownCells = new char[size];
+        mShownColors = new byte[size];
+        // what the old size left outside the new one is cleared
+        mClear = true;
+    }
+
+    /**
+     * Draw the screen into the cells.
+     */
+    private void draw() {
+        Arrays.fill(mCells, ' ');
+        Arrays.fill(mColors, DEFAULT);
+        mPools.clear();
+        mPools.addAll(mLatest.values());
+        long latest = 0;
+        for (final PoolSnapshot pool : mPools) {
+            latest = Math.max(latest, pool.getTimestamp());
+        }
+        // worst status first, then in the order registered
+        mPools.sort((first, second) -> {
+            final int status = Integer.compare(status(second), status(first));
+            return status != 0 ? status : Integer.compare(first.getId(), second.getId());
+        });
+        final int bar = (mColumns - NAME - 3 * (VALUE + 2) - 2 * COUNT - 2) / 3;
+        final int title = put(0, 0, "Thread pools ", DEFAULT);
+        final int count = putLong(0, title, 0, mPools.size(), DEFAULT);
+        if (latest != 0) {
+            put(0, count + 1, TIME.format(Instant.ofEpochMilli(latest)), DIM);
+        }
+        put(1, NAME, "Threads", DIM);
+        put(1, NAME + bar + VALUE + 2, "Queued", DIM);
+        put(1, NAME + 2 * (bar + VALUE + 2), "Active", DIM);
+        put(1, mColumns - 2 * COUNT + COUNT - "Tasks".length(), "Tasks", DIM);
+        put(1, mColumns - "Completed".length(), "Completed", DIM);
+        final int visible = Math.min(mPools.size(), mRows - 3);
+        for (int i = 0; i < visible; i++) {
+            drawPool(i + 2, mPools.get(i), bar);
+        }
+        if (visible < mPools.size()) {
+            final int more = putLong(mRows - 1, put(mRows - 1, 0, "+", DIM), 0,
+                                     mPools.size() - visible, DIM);
+            put(mRows - 1, more, " more", DIM);
+        }
+    }
+
+    private void drawPool(final int row, final PoolSnapshot pool, final int bar) {
+        final ThresholdData threshold = mSampler.getThreshold(pool.getId());
+        final Long capacity = pool.getExtras().get(ThreadPoolSource.CAPACITY);
+        double axis = Math.max(pool.getCorePoolSize() * mScale, pool.getThreads());
+        if (capacity != null) {
+            axis = Math.max(axis, capacity);
+        }
+        put(row, 0, pool.getName(), DEFAULT);
+        int column = NAME;
+        final int[] values = {
+            pool.getCorePoolSize(), pool.getQueued(), pool.getActive()
+        };
+        for (final int value : values) {
+            final byte color = threshold == null ? DEFAULT
+                                                 : STATUS_COLOR[threshold.getStatus(value)];
+            putBar(row, column, bar, axis <= 0 ? 0 : value / axis, color);
+            putLong(row, column + bar + 1, VALUE, value, color);
+            column += bar + VALUE + 2;
+        }
+        putLong(row, mColumns - 2 * COUNT, COUNT, pool.getTaskCount(), DEFAULT);
+        putLong(row, mColumns - COUNT, COUNT, pool.getCompletedCount(), DEFAULT);
+    }
+
+    private int status(final PoolSnapshot pool) {
+        final ThresholdData threshold = mSampler.getThreshold(pool.getId());
+        return threshold == null ? ThresholdData.NOTSET
+                                 : Math.max(threshold.getStatus(pool.getQueued()),
+                                            threshold.getStatus(pool.getActive()));
+    }
+
+    /**
+     * Compare the cells with those shown and append the changes, moving the cursor only over
+     * unchanged runs long enough to be cheaper to skip than to write again.
+     */
+    private void diff() {
+        for (int row = 0; row < mRows; row++) {
+            final int start = row * mColumns;
+            int column = 0;
+            while (column < mColumns) {
+                if (same(start + column)) {
+                    column++;
+                    continue;
+                }
+                mText.append(CSI).append(row + 1).append(';').append(column + 1).append('H');
+                int end = column;
+                while (end < mColumns) {
+                    if (same(start + end)) {
+                        int gap = end;
+                        while (gap < mColumns && gap - end < 8 && same(start + gap)) {
+                            gap++;
+                        }
+                        if (gap == mColumns || gap - end >= 8) {
+                            break;
+                        }
+                    }
+                    final int cell = start + end;
+                    if (mColors[cell] != mColor) {
+                        mColor = mColors[cell];
+                        mText.append(CSI).append(mColor).append('m');
+                    }
+                    mText.append(mCells[cell]);
+                    mShownCells[cell] = mCells[cell];
+                    mShownColors[cell] = mColors[cell];
+                    end++;
+                }
+                column = end;
+            }
+        }
+    }
+
+    private boolean same(final int cell) {
+        return mCells[cell] == mShownCells[cell] && mColors[cell] == mShownColors[cell];
+    }
+
+    /**
+     * @return the column after the text, clipped at the right edge
+     */
+    private int put(final int row, final int column, final String text, final byte color) {
+        final int end = Math.min(mColumns, column + text.length());
+        for (int i = column; i < end; i++) {
+            mCells[row * mColumns + i] = text.charAt(i - column);
+            mColors[row * mColumns + i] = color;
+        }
+        return end;
+    }
+
+    /**
+     * Put a number with thousands separators without allocating.
+     *
+     * @param row
+     *            row
+     * @param column
+     *            first column
+     * @param width
+     *            width the number is right aligned in, 0 to left align
+     * @param value
+     *            value, not negative
+     * @param color
+     *            color
+     * @return the column after the number
+     */
+    private int putLong(final int row,
+                        final int column,
+                        final int width,
+                        final long value,
+                        final byte color) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        final int length = digits + (digits - 1) / 3;
+        final int end = column + Math.max(width, length);
+        long rest = value;
+        int position = end - 1;
+        for (int digit = 0; digit < digits; digit++) {
+            if (digit > 0 && digit % 3 == 0) {
+                putChar(row, position--, ',', color);
+            }
+            putChar(row, position--, (char) ('0' + rest % 10), color);
+            rest /= 10;
+        }
+        return end;
+    }
+
+    private void putChar(final int row, final int column, final char value, final byte color) {
+        if (column >= 0 && column < mColumns) {
+            mCells[row * mColumns + column] = value;
+            mColors[row * mColumns + column] = color;
+        }
+    }
+
+    /**
+     * Put a bar in eighths of a cell.
+     *
+     * @param fraction
+     *            filled part of the width, clipped to 0 to 1
+     */
+    private void putBar(final int row,
+                        final int column,
+                        final int width,
+                        final double fraction,
+                        final byte color) {
+        final int eighths = (int) Math.round(Math.max(0, Math.min(1, fraction)) * width * 8);
+        for (int i = 0; i < width; i++) {
+            final int filled = eighths - i * 8;
+            if (filled >= 8) {
+                putChar(row, column + i, FULL, color);
+            } else if (filled > 0) {
+                putChar(row, column + i, EIGHTHS.charAt(filled - 1), color);
+            } else {
+                putChar(row, column + i, EMPTY, DIM);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.JStatusComponent.ThresholdData;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class TerminalDashboardTest {
+
+    @Test
+    public void differential() throws IOException, InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final MonitoredThreadPoolExecutor executor =
+                MonitorWindow.getNamedMonitoredExecutor(null, 2, 2, "T1");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TerminalDashboard dashboard = new TerminalDashboard(sampler, out).setSize(80, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final int id = sampler.register("T1", executor);
+            sampler.setThreshold(id, new ThresholdData(0, "T1", 1, 2, -1));
+            sampler.sample();
+            dashboard.refresh();
+            final String first = out.toString(StandardCharsets.UTF_8);
+            assertTrue(first.startsWith("\u001b[?1049h"));
+            assertTrue(first.contains("T1"));
+            assertTrue(first.contains("Completed"));
+            // 2 core threads is at the alert threshold, drawn red
+            assertTrue(first.contains("\u001b[31m\u2588"));
+
+            out.reset();
+            dashboard.refresh();
+            assertEquals(0, out.size());
+
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> Latches.await(release));
+            }
+            while (executor.getRunning() < 2) {
+                Thread.sleep(10);
+            }
+            sampler.sample();
+            dashboard.refresh();
+            final String changed = out.toString(StandardCharsets.UTF_8);
+            assertFalse(changed.contains("T1"));
+            assertFalse(changed.contains("Completed"));
+            assertTrue(changed.length() < first.length() / 2, changed);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            dashboard.stop();
+        }
+        assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("\u001b[?1049l"));
+    }
+
+    @Test
+    public void overflow() throws IOException, InterruptedException {
+        final PoolSampler sampler = new PoolSampler();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TerminalDashboard dashboard = new TerminalDashboard(sampler, out).setSize(60, 5);
+        final MonitoredThreadPoolExecutor[] executors = new MonitoredThreadPoolExecutor[4];
+        try {
+            for (int i = 0; i < executors.length; i++) {
+                executors[i] = MonitorWindow.getNamedMonitoredExecutor(null, 1, 1, "O" + i);
+                sampler.register("O" + i, executors[i]);
+            }
+            sampler.sample();
+            dashboard.refresh();
+            // 2 rows of pools fit between the headings and the last row
+            final String text = out.toString(StandardCharsets.UTF_8);
+            assertTrue(text.contains("O0"));
+            assertTrue(text.contains("O1"));
+            assertFalse(text.contains("O2"));
+            assertTrue(text.contains("+2 more"));
+        } finally {
+            for (final MonitoredThreadPoolExecutor executor : executors) {
+                if (executor != null) {
+                    executor.shutdown();
+                }
+            }
+            dashboard.stop();
+        }
+    }
+}
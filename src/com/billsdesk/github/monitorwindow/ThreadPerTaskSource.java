@@ -0,0 +1,150 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Source of an executor which starts a thread per task, e.g. the virtual thread per task executor
+ * of JDK 21, read from its {@link CountingThreadFactory}. There is no core size and no queue, the
+ * core size is the peak of the live threads, which scales the axis, and the threads and active
+ * counts are the live threads. Every task starts a thread, the task and completed counts are the
+ * threads started and finished, their rates are the {@link PoolRates} of the pool. The run time is
+ * the lifetime of the threads. Adds:
+ * <ul>
+ * <li>{@value #PINNED}: total time pinned to a carrier thread</li>
+ * <li>{@value #BLOCKED}: total time blocked on a monitor or parked, e.g. on a semaphore</li>
+ * </ul>
+ * The pinned and blocked times are only counted while {@link BlockingEvents} watch the threads.
+ *
+ * <pre>
+ * final CountingThreadFactory threads = new CountingThreadFactory(Thread.ofVirtual().factory());
+ * final ExecutorService executor = Executors.newThreadPerTaskExecutor(threads);
+ * sampler.register("Requests", new ThreadPerTaskSource(executor, threads));
+ * </pre>
+ *
+ * @author Bill
+ */
+public class ThreadPerTaskSource
+    implements
+        PoolSource {
+
+    public static final String          PINNED  = "pinned" + PoolSnapshot.NANOS;
+    public static final String          BLOCKED = "blocked" + PoolSnapshot.NANOS;
+
+    private final ExecutorService       mExecutor;
+    private final CountingThreadFactory mThreads;
+    // used only by the sampler thread
+    private int                         mPeak;
+
+    /**
+     * @param executor
+     *            executor starting a thread per task
+     * @param threads
+     *            factory of the executor
+     */
+    public ThreadPerTaskSource(final ExecutorService executor,
+                               final CountingThreadFactory threads) {
+        mExecutor = executor;
+        mThreads = threads;
+    }
+
+    @Override
+    public ExecutorService getExecutor() {
+        return mExecutor;
+    }
+
+    public CountingThreadFactory getThreadFactory() {
+        return mThreads;
+    }
+
+    /**
+     * @param snapshot
+     *            snapshot of any pool, sampled or replayed
+     * @return true if the snapshot is of a thread per task executor, which queues nothing
+     */
+    public static boolean isThreadPerTask(final PoolSnapshot snapshot) {
+        return snapshot.getExtras().containsKey(PINNED);
+    }
+
+    @Override
+    public PoolSnapshot sample(final int id, final String name) {
+        final long nanoTime = System.nanoTime();
+        final int live = mThreads.getLive();
+        final long started = mThreads.getStarted();
+        final long completed = mThreads.getCompleted();
+        mPeak = Math.max(mPeak, live);
+        final Map<String, Long> extras = new LinkedHashMap<>(4);
+        extras.put(PINNED, mThreads.getPinned());
+        extras.put(BLOCKED, mThreads.getBlocked());
+        return new PoolSnapshot(id,
+                name,
+                System.currentTimeMillis(),
+                nanoTime,
+                Math.max(1, mPeak),
+                live,
+                0,
+                live,
+                started,
+                completed,
+                mExecutor.isShutdown(),
+                null,
+                mThreads.getLifetime().summarize(),
+                extras);
+    }
+
+    /**
+     * Create a factory of virtual threads named prefix followed by a number.
+     *
+     * @param prefix
+     *            prefix of the thread names
+     * @return the factory or null if the JDK has no virtual threads
+     */
+    @Nullable
+    public static ThreadFactory virtualThreadFactory(final String prefix) {
+        try {
+            // Thread.ofVirtual().name(prefix, 1).factory(), JDK 21 and later
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> type = Class.forName("java.lang.Thread$Builder");
+            final Object named = type.getMethod("name", String.class, long.class)
+                                     .invoke(builder, prefix, 1L);
+            return (ThreadFactory) type.getMethod("factory").invoke(named);
+        } catch (final ReflectiveOperationException | RuntimeException error) {
+            return null;
+        }
+    }
+
+    /**
+     * Create an executor which starts a thread from the factory for every task. Uses
+     * Executors.newThreadPerTaskExecutor on JDK 21 and later, otherwise a pool without idle
+     * threads which starts a thread whenever none is free, almost always one per task.
+     *
+     * @param threads
+     *            factory of the threads
+     * @return executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(final ThreadFactory threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor",
+                                                               ThreadFactory.class)
+                                                    .invoke(null, threads);
+        } catch (final NoSuchMethodException | IllegalAccessException error) {
+            return new ThreadPoolExecutor(0,
+                    Integer.MAX_VALUE,
+                    0,
+                    TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    threads);
+        } catch (final InvocationTargetException error) {
+            throw new IllegalStateException(error.getCause());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.billsdesk.github.monitorwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+
+/**
+ * @author Bill
+ */
+@TestMethodOrder(MethodOrderer.Alphanumeric.class)
+public class ThreadPerTaskSourceTest {
+
+    @Test
+    public void counts() throws InterruptedException {
+        final ThreadFactoryHolder holder = new ThreadFactoryHolder("V1");
+        final ExecutorService executor = ThreadPerTaskSource.newThreadPerTaskExecutor(holder.mThreads);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final PoolSampler sampler = new PoolSampler();
+            // the samples are milliseconds apart
+            sampler.setHistoryStep(0, TimeUnit.MILLISECONDS);
+            sampler.register("V1", new ThreadPerTaskSource(executor, holder.mThreads));
+            sampler.sample();
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> Latches.await(release));
+            }
+            while (holder.mThreads.getLive() < 4) {
+                Thread.sleep(10);
+            }
+            final PoolSnapshot running = sampler.sample().get(0);
+            assertEquals(4, running.getThreads());
+            assertEquals(4, running.getActive());
+            assertEquals(4, running.getCorePoolSize());
+            assertEquals(0, running.getQueued());
+            assertEquals(4, running.getTaskCount());
+
+            release.countDown();
+            while (holder.mThreads.getCompleted() < 4) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(20);
+            final PoolSnapshot done = sampler.sample().get(0);
+            assertEquals(0, done.getThreads());
+            // the peak keeps the axis
+            assertEquals(4, done.getCorePoolSize());
+            assertEquals(4, done.getCompletedCount());
+            assertEquals(4, done.getRunTime().getCount());
+            assertTrue(ThreadPerTaskSource.isThreadPerTask(done));
+            final PoolRates rates = sampler.getRates(done.getId());
+            assertTrue(rates.getArrivalRate() > 0, rates.toString());
+            assertTrue(rates.getCompletionRate() > 0, rates.toString());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blocked() throws InterruptedException {
+        final ThreadFactoryHolder holder = new ThreadFactoryHolder("V2");
+        final ExecutorService executor = ThreadPerTaskSource.newThreadPerTaskExecutor(holder.mThreads);
+        final Semaphore permits = new Semaphore(0);
+        try (BlockingEvents blocking = new BlockingEvents(Duration.ofMillis(1))) {
+            blocking.watch(holder.mNamed.getPrefix(), holder.mThreads);
+            blocking.start();
+            executor.execute(() -> {
+                try {
+                    permits.tryAcquire(100, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // the stream delivers about once a second
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (holder.mThreads.getBlocked() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(holder.mThreads.getBlocked() >= TimeUnit.MILLISECONDS.toNanos(90));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static final class ThreadFactoryHolder {
+
+        private final NamedThreadFactory    mNamed;
+        private final CountingThreadFactory mThreads;
+
+        private ThreadFactoryHolder(final String name) {
+            mNamed = new NamedThreadFactory(name);
+            mThreads = new CountingThreadFactory(mNamed);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.annotation.Nullable;
+
+import com.billsdesk.github.monitorwindow.MonitorWindow.NamedThreadFactory;
+
+/**
+ * Source of a ThreadPoolExecutor. A {@link MonitoredThreadPoolExecutor} is read from its lock-free
+ * counters and latency histograms, any other from the executor's getters which take its main lock.
+ * Adds:
+ * <ul>
+ * <li>{@value #CAPACITY}: capacity of a bounded queue, 0 for a SynchronousQueue</li>
+ * <li>{@value #REJECTED}: tasks rejected or discarded, a total, MonitoredThreadPoolExecutor only
+ * </li>
+ * <li>{@value #CALLER_RUNS}: rejected tasks run by the submitter, a total,
+ * MonitoredThreadPoolExecutor only</li>
+ * <li>{@value #CPU}: CPU time of the pool's threads in nanoseconds, a total, threads created by a
+ * {@link MonitorWindow.NamedThreadFactory} only</li>
+ * <li>{@value #ALLOCATED}: bytes allocated by the pool's threads, a total, where the JVM measures
+ * it</li>
+ * </ul>
+ *
+ * @author Bill
+ */
+public class ThreadPoolSource
+    implements
+        PoolSource {
+
+    public static final String       CAPACITY    = "capacity";
+    public static final String       REJECTED    = "rejected";
+    public static final String       CALLER_RUNS = "caller runs";
+    public static final String       CPU         = "cpu" + PoolSnapshot.NANOS;
+    public static final String       ALLOCATED   = "allocated";
+
+    private final ThreadPoolExecutor mExecutor;
+    private final int                mCapacity;
+
+    public ThreadPoolSource(final ThreadPoolExecutor executor) {
+        mExecutor = executor;
+        // the queue of an executor can't be replaced, its capacity is read once
+        final BlockingQueue<Runnable> queue = executor.getQueue();
+        final int remaining = queue.remainingCapacity();
+        mCapacity = remaining == Integer.MAX_VALUE ? -1 : queue.size() + remaining;
+    }
+
+    @Override
+    public ThreadPoolExecutor getExecutor() {
+        return mExecutor;
+    }
+
+    @Override
+    public PoolSnapshot sample(final int id, final String name) {
+        if (mExecutor instanceof MonitoredThreadPoolExecutor) {
+            return sampleCounters(id, name, (MonitoredThreadPoolExecutor) mExecutor);
+        }
+        // fallback for executors we don't own, each getter takes the executor's main lock
+        return new PoolSnapshot(id,
+                name,
+                System.currentTimeMillis(),
+                System.nanoTime(),
+                mExecutor.getCorePoolSize(),
+                mExecutor.getPoolSize(),
+                mExecutor.getQueue().size(),
+                mExecutor.getActiveCount(),
+                mExecutor.getTaskCount(),
+                mExecutor.getCompletedTaskCount(),
+                mExecutor.isShutdown() || mExecutor.isTerminated(),
+                null,
+                null,
+                extras());
+    }
+
+    /**
+     * @return metrics particular to the executor and its queue
+     */
+    protected Map<String, Long> extras() {
+        final boolean monitored = mExecutor instanceof MonitoredThreadPoolExecutor;
+        final ThreadUsage usage = usage(mExecutor.getThreadFactory());
+        if (mCapacity < 0 && !monitored && usage == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Long> extras = new LinkedHashMap<>(8);
+        if (monitored) {
+            final MonitoredThreadPoolExecutor executor = (MonitoredThreadPoolExecutor) mExecutor;
+            extras.put(REJECTED, executor.getRejected());
+            extras.put(CALLER_RUNS, executor.getCallerRuns());
+        }
+        if (mCapacity >= 0) {
+            extras.put(CAPACITY, (long) mCapacity);
+        }
+        if (usage != null) {
+            final long cpu = usage.getCpuTime();
+            if (cpu >= 0) {
+                extras.put(CPU, cpu);
+            }
+            final long allocated = usage.getAllocatedBytes();
+            if (allocated >= 0) {
+                extras.put(ALLOCATED, allocated);
+            }
+        }
+        return extras;
+    }
+
+    /**
+     * @param factory
+     *            thread factory of the executor, the factory can be replaced at any time
+     * @return usage of the threads or null if they are not tracked
+     */
+    @Nullable
+    private static ThreadUsage usage(final ThreadFactory factory) {
+        final ThreadFactory named = factory instanceof CountingThreadFactory
+            ? ((CountingThreadFactory) factory).getFactory()
+            : factory;
+        return named instanceof NamedThreadFactory ? ((NamedThreadFactory) named).getUsage()
+                                                   : null;
+    }
+
+    /**
+     * Read the counters maintained by the executor hooks, no lock is taken.
+     *
+     * @param id
+     *            id of the pool
+     * @param name
+     *            name of the pool
+     * @param executor
+     *            executor
+     * @return snapshot
+     */
+    private PoolSnapshot sampleCounters(final int id,
+                                        final String name,
+                                        final MonitoredThreadPoolExecutor executor) {
+        return new PoolSnapshot(id,
+                name,
+                System.currentTimeMillis(),
+                System.nanoTime(),
+                executor.getCorePoolSize(),
+                executor.getLiveThreads(),
+                executor.getQueued(),
+                executor.getRunning(),
+                executor.getSubmitted(),
+                executor.getCompleted(),
+                executor.isShutdown() || executor.isTerminated(),
+                executor.getQueueWait().summarize(),
+                executor.getRunTime().summarize(),
+                extras());
+    }
+}
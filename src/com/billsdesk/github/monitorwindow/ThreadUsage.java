@@ -0,0 +1,120 @@
+package com.billsdesk.github.monitorwindow;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CPU time and allocated bytes of the threads of one pool. The threads are added by the factory
+ * creating them, {@link MonitorWindow.NamedThreadFactory}, so a sample reads only the threads of
+ * the pool rather than every thread of the JVM. A thread adds its own totals when it exits, the
+ * usage of a pool whose threads time out is not lost.
+ * <p>
+ * The allocated bytes are read with com.sun.management.ThreadMXBean where the JVM supports it,
+ * otherwise they are -1. The CPU time is -1 if the JVM does not measure it.
+ *
+ * @author Bill
+ */
+public final class ThreadUsage {
+
+    private static final ThreadMXBean THREADS          = ManagementFactory.getThreadMXBean();
+
+    private final Set<Thread>         mLive            = ConcurrentHashMap.newKeySet();
+    private final LongAdder           mExitedCpu       = new LongAdder();
+    private final LongAdder           mExitedAllocated = new LongAdder();
+
+    /**
+     * @return true if the JVM measures the CPU time of threads
+     */
+    public static boolean isCpuTimeSupported() {
+        return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * @return true if the JVM measures the bytes allocated by threads
+     */
+    public static boolean isAllocatedSupported() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemorySupported()
+               && threads.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Wrap the runnable of a new thread so the thread is tracked while it runs.
+     *
+     * @param runnable
+     *            runnable of the thread
+     * @return runnable to create the thread with
+     */
+    public Runnable track(final Runnable runnable) {
+        return () -> {
+            final Thread thread = Thread.currentThread();
+            mLive.add(thread);
+            try {
+                runnable.run();
+            } finally {
+                // the JVM forgets a thread once it has exited, keep what it used. Removed first,
+                // a sample in between reads a little less rather than the thread twice.
+                mLive.remove(thread);
+                if (isCpuTimeSupported()) {
+                    mExitedCpu.add(THREADS.getCurrentThreadCpuTime());
+                }
+                if (isAllocatedSupported()) {
+                    mExitedAllocated.add(allocatedBytes(thread));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return threads being tracked
+     */
+    public int getLive() {
+        return mLive.size();
+    }
+
+    /**
+     * @return nanoseconds of CPU used by the threads, live and exited, or -1 if not measured
+     */
+    public long getCpuTime() {
+        if (!isCpuTimeSupported()) {
+            return -1;
+        }
+        long total = mExitedCpu.sum();
+        for (final Thread thread : mLive) {
+            // -1 if the thread exited since
+            total += Math.max(0, THREADS.getThreadCpuTime(thread.getId()));
+        }
+        return total;
+    }
+
+    /**
+     * @return bytes allocated by the threads, live and exited, or -1 if not measured
+     */
+    public long getAllocatedBytes() {
+        if (!isAllocatedSupported()) {
+            return -1;
+        }
+        long total = mExitedAllocated.sum();
+        for (final Thread thread : mLive) {
+            total += Math.max(0, allocatedBytes(thread));
+        }
+        return total;
+    }
+
+    /**
+     * Only called once {@link #isAllocatedSupported()}.
+     *
+     * @param thread
+     *            thread
+     * @return bytes allocated by the thread or -1 if it has exited
+     */
+    private static long allocatedBytes(final Thread thread) {
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(thread.getId());
+    }
+}